@@ -0,0 +1,41 @@
+#!/bin/bash
+# Runs the same slow-dependency load against the platform and virtual thread execution modes.
+# Needs Java 21+, k6 and a local MongoDB; team-service is replaced by slow-team-service.py.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+DELAY=${DELAY:-1.0}
+VUS=${VUS:-1000}
+DURATION=${DURATION:-60s}
+
+./mvnw -q -DskipTests package
+JAR=$(ls target/changeservice-*.jar | head -1)
+
+python3 loadtest/slow-team-service.py 8099 "$DELAY" &
+STUB=$!
+trap 'kill $STUB 2>/dev/null || true' EXIT
+
+for MODE in platform virtual; do
+    # Virtual threads that block in a synchronized block pin their carrier on Java 21-23, log each time it happens
+    JVM_OPTS=""
+    if [ "$MODE" = virtual ]; then
+        JVM_OPTS="-Djdk.tracePinnedThreads=short"
+    fi
+    java $JVM_OPTS -jar "$JAR" \
+        --changeservice.execution.mode=$MODE \
+        --spring.cloud.consul.enabled=false \
+        --spring.cloud.discovery.client.simple.instances.team-service[0].uri=http://localhost:8099 \
+        > "target/loadtest-$MODE.log" 2>&1 &
+    APP=$!
+    until curl -sf http://localhost:8080/actuator/health > /dev/null; do sleep 1; done
+
+    echo "=== $MODE threads, ${VUS} concurrent users, ${DELAY}s team-service latency ==="
+    k6 run --quiet -e VUS="$VUS" -e DURATION="$DURATION" loadtest/hierarchy-cfr.js
+
+    kill $APP
+    wait $APP 2>/dev/null || true
+done
+
+echo "=== pinned virtual threads ==="
+echo "$(grep -c '^Thread\[#' target/loadtest-virtual.log || true) pinned stacks logged, most frequent pinning frames:"
+grep '<== monitors' target/loadtest-virtual.log | sort | uniq -c | sort -rn | head -10 || true
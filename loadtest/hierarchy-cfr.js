@@ -0,0 +1,16 @@
+import http from 'k6/http';
+import { check } from 'k6';
+
+// A fresh hierarchy id per request misses the hierarchy cache, so every request waits on the slow team-service
+export const options = {
+    vus: __ENV.VUS ? parseInt(__ENV.VUS) : 1000,
+    duration: __ENV.DURATION || '60s',
+};
+
+const baseUrl = __ENV.BASE_URL || 'http://localhost:8080';
+
+export default function () {
+    const id = `load-${__VU}-${__ITER}`;
+    const res = http.get(`${baseUrl}/api/v1/changerequest/hierarchy/${id}/cfr`);
+    check(res, { 'status is 200': (r) => r.status === 200 });
+}
@@ -0,0 +1,27 @@
+#!/usr/bin/env python3
+# Stand-in for team-service that answers hierarchy lookups after a fixed delay
+import json
+import sys
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+PORT = int(sys.argv[1]) if len(sys.argv) > 1 else 8099
+DELAY_SECONDS = float(sys.argv[2]) if len(sys.argv) > 2 else 1.0
+
+
+class Handler(BaseHTTPRequestHandler):
+    def do_GET(self):
+        slug = self.path.rstrip('/').split('/')[-1]
+        time.sleep(DELAY_SECONDS)
+        body = json.dumps([slug]).encode()
+        self.send_response(200)
+        self.send_header('Content-Type', 'application/json')
+        self.send_header('Content-Length', str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def log_message(self, format, *args):
+        pass
+
+
+ThreadingHTTPServer(('', PORT), Handler).serve_forever()
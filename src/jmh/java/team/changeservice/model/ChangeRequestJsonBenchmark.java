@@ -0,0 +1,98 @@
+package team.changeservice.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import team.changeservice.json.FastJsonModule;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeRequestJsonBenchmark
+    {
+    private static final TypeReference<List<ChangeRequest>> CHANGE_REQUEST_LIST = new TypeReference<List<ChangeRequest>>() {};
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    //jackson is the default bean serializer, fast adds the hand written serializers the service registers
+    @Param({"jackson", "fast"})
+    public String serializer;
+
+    private ObjectMapper objectMapper;
+    private List<ChangeRequest> changeRequests;
+    private List<ChangeFailureRate> changeFailureRates;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException
+        {
+        //Configured the way Spring Boot configures the mapper used by the controllers
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_EMPTY)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        objectMapper = "fast".equals(serializer)
+                ? builder.modules(new ParameterNamesModule(), new FastJsonModule()).build()
+                : builder.modules(new ParameterNamesModule()).build();
+
+        Instant start = Instant.parse("2021-01-01T09:00:00Z");
+        changeRequests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Instant created = start.plus(i, ChronoUnit.MINUTES);
+            changeRequests.add(new ChangeRequest("CHG" + (1000000 + i), "Deploy release " + i + " of the payments service",
+                    "app-" + (i % 50), Date.from(created), Date.from(created.plus(1, ChronoUnit.HOURS)),
+                    Date.from(created.plus(2, ChronoUnit.HOURS)), Date.from(created.plus(3, ChronoUnit.HOURS)),
+                    i % 7 == 0, "servicenow"));
+        }
+        json = objectMapper.writeValueAsBytes(changeRequests);
+
+        changeFailureRates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            changeFailureRates.add(new ChangeFailureRate("app-" + i, Date.from(start.plus(i % 90, ChronoUnit.DAYS)),
+                    (i % 40) * 2.5, i % 120, DORALevel.values()[i % DORALevel.values().length]));
+        }
+        }
+
+    @Benchmark
+    public byte[] serialise() throws IOException
+        {
+        return objectMapper.writeValueAsBytes(changeRequests);
+        }
+
+    @Benchmark
+    public byte[] serialiseChangeFailureRates() throws IOException
+        {
+        return objectMapper.writeValueAsBytes(changeFailureRates);
+        }
+
+    @Benchmark
+    public List<ChangeRequest> deserialise() throws IOException
+        {
+        return objectMapper.readValue(json, CHANGE_REQUEST_LIST);
+        }
+    }
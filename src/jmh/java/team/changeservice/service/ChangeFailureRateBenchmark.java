@@ -0,0 +1,205 @@
+package team.changeservice.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.DORALevel;
+import team.changeservice.model.DailyChangeRollup;
+import team.changeservice.repo.DailyChangeRollupRepo;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeFailureRateBenchmark
+    {
+    private static final int APPLICATIONS = 50;
+    //A year of reporting dates plus the 90 day window in front of the first
+    private static final int HISTORY_DAYS = 365 + ChangeRequestServiceImpl.CFR_WINDOW_DAYS;
+    private static final LocalDate LAST_DAY = LocalDate.of(2021, 3, 31);
+
+    //Change requests spread over the history of all the applications
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<ChangeRequest> changeRequests;
+    private ChangeRequestServiceImpl service;
+    private List<String> applicationIds;
+    private Date reportingDate;
+    private Date seriesFrom;
+    private BigDecimal eliteCfr;
+    private BigDecimal lowCfr;
+
+    @Setup
+    public void setUp()
+        {
+        Random random = new Random(42);
+        Instant firstDay = LAST_DAY.minusDays(HISTORY_DAYS - 1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        changeRequests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Instant created = firstDay.plus(random.nextInt(HISTORY_DAYS * 24 * 60), ChronoUnit.MINUTES);
+            changeRequests.add(new ChangeRequest("CHG" + (1000000 + i), "Deploy release " + i, "app-" + random.nextInt(APPLICATIONS),
+                    Date.from(created), Date.from(created), Date.from(created), Date.from(created), random.nextInt(10) == 0, "servicenow"));
+        }
+        GeneratedRollups rollups = new GeneratedRollups(rollUp(changeRequests).values());
+
+        //The calculations only read the rollups, the other collaborators are never called
+        service = new ChangeRequestServiceImpl(null, rollupRepo(rollups), null, null, ReadRouting.primaryOnly(), 1000, 100, 1000, Duration.ofSeconds(2), 25, 4);
+        applicationIds = new ArrayList<>();
+        for (int i = 0; i < APPLICATIONS; i++) {
+            applicationIds.add("app-" + i);
+        }
+        reportingDate = Date.from(LAST_DAY.atTime(14, 30).toInstant(ZoneOffset.UTC));
+        seriesFrom = Date.from(LAST_DAY.minusDays(364).atStartOfDay(ZoneOffset.UTC).toInstant());
+        eliteCfr = new BigDecimal("0.12");
+        lowCfr = new BigDecimal("0.31");
+        }
+
+    //Buckets change requests into daily rollups the way a store does before writing them
+    private static Map<String, DailyChangeRollup> rollUp(List<ChangeRequest> changeRequests)
+        {
+        Map<String, DailyChangeRollup> rollups = new HashMap<>();
+        for (ChangeRequest changeRequest : changeRequests) {
+            ChangeRequestState state = ChangeRequestState.of(changeRequest);
+            Date day = DailyChangeRollup.dayOf(state.getClosed());
+            String id = DailyChangeRollup.idOf(state.getApplicationId(), day);
+            int failed = Boolean.TRUE.equals(state.getFailed()) ? 1 : 0;
+            rollups.merge(id, new DailyChangeRollup(id, state.getApplicationId(), day, 1, failed), (a, b) ->
+                    new DailyChangeRollup(id, a.getApplicationId(), day, a.getTotal() + b.getTotal(), a.getFailed() + b.getFailed()));
+        }
+        return rollups;
+        }
+
+    //The rollups of each application by day, read with the same range and grouping as the Mongo queries in DailyChangeRollupRepoCustomImpl
+    private static class GeneratedRollups
+        {
+        private final Map<String, NavigableMap<Date, DailyChangeRollup>> byApplication = new HashMap<>();
+
+        GeneratedRollups(Collection<DailyChangeRollup> rollups)
+            {
+            rollups.forEach(rollup -> byApplication.computeIfAbsent(rollup.getApplicationId(), id -> new TreeMap<>()).put(rollup.getDay(), rollup));
+            }
+
+        List<DailyChangeRollup> findDays(String applicationId, Date fromDay, Date toDay)
+            {
+            return new ArrayList<>(byApplication.getOrDefault(applicationId, new TreeMap<>()).subMap(fromDay, true, toDay, true).values());
+            }
+
+        List<ChangeCounts> sumChanges(Collection<String> applicationIds, Date fromDay, Date toDay)
+            {
+            Map<String, ChangeCounts> counts = new LinkedHashMap<>();
+            for (String applicationId : applicationIds) {
+                int total = 0;
+                int failed = 0;
+                for (DailyChangeRollup rollup : findDays(applicationId, fromDay, toDay)) {
+                    total += rollup.getTotal();
+                    failed += rollup.getFailed();
+                }
+                if (total > 0) {
+                    counts.put(applicationId, new ChangeCounts(applicationId, total, failed));
+                }
+            }
+            return new ArrayList<>(counts.values());
+            }
+        }
+
+    @SuppressWarnings("unchecked")
+    private static DailyChangeRollupRepo rollupRepo(GeneratedRollups rollups)
+        {
+        return (DailyChangeRollupRepo) Proxy.newProxyInstance(DailyChangeRollupRepo.class.getClassLoader(), new Class<?>[]{DailyChangeRollupRepo.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findDays")) {
+                        return rollups.findDays((String) args[0], (Date) args[1], (Date) args[2]);
+                    }
+                    if (method.getName().equals("sumChanges") && args[0] instanceof String) {
+                        List<ChangeCounts> counts = rollups.sumChanges(List.of((String) args[0]), (Date) args[1], (Date) args[2]);
+                        return counts.isEmpty() ? new ChangeCounts((String) args[0], 0, 0) : counts.get(0);
+                    }
+                    if (method.getName().equals("sumChanges")) {
+                        return rollups.sumChanges((Collection<String>) args[0], (Date) args[1], (Date) args[2]);
+                    }
+                    throw new IllegalStateException(method.getName() + " reads nothing the benchmark generated");
+                });
+        }
+
+    @Benchmark
+    public Map<String, DailyChangeRollup> rollUpChangeRequests()
+        {
+        return rollUp(changeRequests);
+        }
+
+    @Benchmark
+    public ChangeFailureRate calculateChangeFailureRate()
+        {
+        return service.calculateChangeFailureRate("app-0", reportingDate);
+        }
+
+    @Benchmark
+    public List<ChangeFailureRate> calculateChangeFailureRates()
+        {
+        return service.calculateChangeFailureRates(applicationIds, reportingDate);
+        }
+
+    @Benchmark
+    public List<ChangeFailureRate> calculateChangeFailureRateSeriesForAYear()
+        {
+        return service.calculateChangeFailureRateSeries("app-0", seriesFrom, reportingDate);
+        }
+
+    @Benchmark
+    public DORALevel findDORAPerfLevelElite()
+        {
+        return ChangeRequestServiceImpl.findDORAPerfLevel(eliteCfr);
+        }
+
+    @Benchmark
+    public DORALevel findDORAPerfLevelLow()
+        {
+        return ChangeRequestServiceImpl.findDORAPerfLevel(lowCfr);
+        }
+
+    @Benchmark
+    public Date getStartDate()
+        {
+        return ChangeRequestServiceImpl.getStartDate(reportingDate, ChangeRequestServiceImpl.CFR_WINDOW_DAYS - 1);
+        }
+
+    @Benchmark
+    public Date getEndDate()
+        {
+        return ChangeRequestServiceImpl.getEndDate(reportingDate);
+        }
+    }
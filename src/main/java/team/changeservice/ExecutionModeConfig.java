@@ -0,0 +1,54 @@
+package team.changeservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@ConditionalOnProperty(name = "changeservice.execution.mode", havingValue = "virtual")
+public class ExecutionModeConfig implements WebMvcConfigurer, DisposableBean
+    {
+    private static final Logger log = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    private final ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+
+    //The build still targets Java 11, so the virtual thread factory is looked up at runtime rather than linked
+    static ExecutorService newVirtualThreadPerTaskExecutor()
+        {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("changeservice.execution.mode=virtual needs Java 21 or later, running on " + Runtime.version(), e);
+        }
+        }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer()
+        {
+        log.warn("Handling requests on virtual threads, an experimental mode with no recorded load results. "
+                + "Tomcat and the Mongo driver block inside synchronized blocks, which pins carrier threads before Java 24 (running {})", Runtime.version());
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+        }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer)
+        {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+        }
+
+    @Override
+    public void destroy()
+        {
+        virtualThreadExecutor.shutdown();
+        }
+    }
@@ -1,26 +1,58 @@
 package team.changeservice.controller.v1;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import team.changeservice.model.ApplicationVersion;
+import team.changeservice.model.BulkStoreResult;
 import team.changeservice.model.ChangeFailureRate;
 import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestDeleteResult;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.ingest.AsyncIngestService;
+import team.changeservice.ingest.ChangeRequestImporter;
+import team.changeservice.ingest.ImportFormat;
+import team.changeservice.ingest.IngestQueueFullException;
+import team.changeservice.model.HierarchyChangeFailureRate;
+import team.changeservice.model.ImportResult;
+import team.changeservice.model.IngestTicket;
+import team.changeservice.model.InvalidCursorException;
+import team.changeservice.model.InvalidFieldsException;
+import team.changeservice.model.WriteStatus;
 import team.changeservice.service.ChangeRequestService;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Validated
 @RestController
@@ -28,22 +60,83 @@ import java.util.*;
 @Api
 public class ChangeRequestControllerV1
     {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_SERIES_DAYS = 731;
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final String CSV = "text/csv";
 
     private final ChangeRequestService changeRequestService;
+    private final AsyncIngestService asyncIngestService;
+    private final ChangeRequestImporter changeRequestImporter;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ChangeRequestControllerV1(ChangeRequestService changeRequestService)
+    public ChangeRequestControllerV1(ChangeRequestService changeRequestService, AsyncIngestService asyncIngestService, ChangeRequestImporter changeRequestImporter, ObjectMapper objectMapper)
         {
         this.changeRequestService = changeRequestService;
+        this.asyncIngestService = asyncIngestService;
+        this.changeRequestImporter = changeRequestImporter;
+        this.objectMapper = objectMapper;
         }
 
         @PostMapping("")
         @ResponseStatus(HttpStatus.CREATED)
         @ApiOperation(value = "Store a list of change requests", notes = "Store a list of change requests", response = ChangeRequest.class, responseContainer = "List")
         public List<ChangeRequest> store(@RequestBody @NotEmpty(message = "Input change requests list cannot be empty.") List<@Valid ChangeRequest> changeRequests){
-                List<ChangeRequest> output = new ArrayList<>();
-                changeRequests.forEach(c -> output.add(changeRequestService.store(c)));
-                return output;
+                //Stored in chunks like the bulk endpoint, the counts written and left unchanged are logged by storeAll. Only the error of
+                //the first failure goes back, as a single store did, but every other change request has been written by then.
+                BulkStoreResult result = changeRequestService.storeAll(changeRequests);
+                result.getResults().stream()
+                        .filter(r -> r.getStatus() == WriteStatus.FAILED)
+                        .findFirst()
+                        .ifPresent(failed -> {
+                            throw new DataIntegrityViolationException(failed.getError());
+                        });
+                return changeRequests;
+        }
+
+        //Any request with a Prefer header lands here, and is only queued if respond-async is among its preferences
+        @PostMapping(value = "", headers = "Prefer")
+        @ApiOperation(value = "Queue a list of change requests to be stored in the background", notes = "Sent with a Prefer header including respond-async (e.g. Prefer: respond-async, wait=5) the change requests are validated and queued, and a ticket is returned with status 202. The Location header points at the ticket status. Returns 429 with a Retry-After header when the queue is full. Without respond-async they are stored straight away as without a Prefer header", response = IngestTicket.class)
+        public ResponseEntity<?> storeAsync(@RequestHeader HttpHeaders headers, @RequestBody @NotEmpty(message = "Input change requests list cannot be empty.") List<@Valid ChangeRequest> changeRequests){
+                if (!PreferHeader.prefers(headers.get("Prefer"), RESPOND_ASYNC)) {
+                    return ResponseEntity.status(HttpStatus.CREATED).body(store(changeRequests));
+                }
+                if (changeRequests.size() > asyncIngestService.getCapacity()) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Cannot queue more than " + asyncIngestService.getCapacity() + " change requests at once.");
+                }
+                IngestTicket ticket = asyncIngestService.submit(changeRequests);
+                return ResponseEntity.accepted()
+                    .location(ServletUriComponentsBuilder.fromCurrentRequestUri().path("/ingest/{ticketId}").buildAndExpand(ticket.getTicketId()).toUri())
+                    .header("Preference-Applied", RESPOND_ASYNC)
+                    .body(ticket);
+        }
+
+        @GetMapping("/ingest/{ticketId}")
+        @ApiOperation(value = "Get the progress of change requests queued with Prefer: respond-async", notes = "Tickets are kept for changeservice.ingest.ticket-ttl after they are submitted", response = IngestTicket.class)
+        public ResponseEntity<IngestTicket> ingestStatus(@PathVariable @ApiParam(value = "The ticket id", required = true) String ticketId){
+                return ResponseEntity.of(asyncIngestService.getTicket(ticketId));
+        }
+
+        @PostMapping("/bulk")
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Bulk store a list of change requests", notes = "Store a large list of change requests using chunked, unordered bulk writes and report the outcome of each change request", response = BulkStoreResult.class)
+        public BulkStoreResult storeAll(@RequestBody @NotEmpty(message = "Input change requests list cannot be empty.") List<@Valid ChangeRequest> changeRequests){
+                return changeRequestService.storeAll(changeRequests);
+        }
+
+        @PostMapping(value = "/import", consumes = NdjsonResponseBody.NDJSON)
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Import newline delimited JSON change requests", notes = "Streams the request body, one change request per line, into bulk writes. Invalid lines are rejected and reported without stopping the import", response = ImportResult.class)
+        public ImportResult importNdjson(InputStream body) throws IOException {
+                return changeRequestImporter.importChangeRequests(body, ImportFormat.NDJSON);
+        }
+
+        @PostMapping(value = "/import", consumes = CSV)
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Import CSV change requests", notes = "Streams the request body into bulk writes. The header row names the change request field in each column. Invalid rows are rejected and reported without stopping the import", response = ImportResult.class)
+        public ImportResult importCsv(InputStream body) throws IOException {
+                return changeRequestImporter.importChangeRequests(body, ImportFormat.CSV);
         }
 
         @ExceptionHandler(ConstraintViolationException.class)
@@ -59,12 +152,79 @@ public class ChangeRequestControllerV1
             }
             return new ResponseEntity<>(errorMessage, HttpStatus.BAD_REQUEST);
         }
+
+        @ExceptionHandler(IngestQueueFullException.class)
+        public ResponseEntity<String> handle(IngestQueueFullException ingestQueueFullException) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ingestQueueFullException.getRetryAfter().getSeconds())))
+                .body(ingestQueueFullException.getMessage());
+        }
+
+        @ExceptionHandler(InvalidCursorException.class)
+        public ResponseEntity<String> handle(InvalidCursorException invalidCursorException) {
+            return new ResponseEntity<>(invalidCursorException.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+
+        @ExceptionHandler(InvalidFieldsException.class)
+        public ResponseEntity<String> handle(InvalidFieldsException invalidFieldsException) {
+            return new ResponseEntity<>(invalidFieldsException.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+
+        @ExceptionHandler(QueryTimeoutException.class)
+        public ResponseEntity<String> handle(QueryTimeoutException queryTimeoutException) {
+            return new ResponseEntity<>(queryTimeoutException.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        private static ResponseEntity<List<ChangeRequest>> page(ChangeRequestPage page) {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.hasNext()) {
+                response.header(NEXT_CURSOR_HEADER, page.getNext().encode());
+            }
+            return response.body(page.getChangeRequests());
+        }
+
+        private ResponseEntity<StreamingResponseBody> ndjson(Supplier<Stream<ChangeRequest>> changeRequests) {
+            return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonResponseBody.NDJSON))
+                .body(new NdjsonResponseBody(objectMapper, changeRequests));
+        }
+
+        private static long startOfToday() {
+            return LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        //Dashboards poll the same applications all day. If nothing has been written to the application since the client's copy
+        //the answer is a 304 worked out from its version alone, without reading change requests or rollups.
+        //The representation tells apart responses that share a URL and version, e.g. JSON and NDJSON or yesterday's and today's default date.
+        //The ETag is weak because the same version is sent gzipped or not, and Tomcat doesn't compress responses with a strong one.
+        private <T> T ifModified(ServletWebRequest request, String applicationId, String representation, Supplier<T> response) {
+            return ifModified(request, applicationId, representation, -1, response);
+        }
+
+        //Responses that default to yesterday's date also change at midnight, which is as far back as their Last-Modified can go
+        private <T> T ifModified(ServletWebRequest request, String applicationId, String representation, long notModifiedBefore, Supplier<T> response) {
+            Optional<ApplicationVersion> version = changeRequestService.getApplicationVersion(applicationId);
+            String etag = "W/\"" + version.map(ApplicationVersion::getVersion).orElse(0L) + "-" + representation + "\"";
+            long lastModified = Math.max(notModifiedBefore, version.map(v -> v.getLastModified().getTime()).orElse(-1L));
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            if (request.checkNotModified(etag, lastModified)) {
+                return null;
+            }
+            return response.get();
+        }
     
         @GetMapping("")
         @ResponseStatus(HttpStatus.OK)
-        @ApiOperation(value = "List all change requests", notes = "List all change requests", response = ChangeRequest.class, responseContainer = "List")
-        public List<ChangeRequest> list(){
-            return changeRequestService.list();
+        @ApiOperation(value = "List all change requests", notes = "List change requests a page at a time, ordered by closed date then id. The X-Next-Cursor response header holds the cursor for the next page and is absent on the last page", response = ChangeRequest.class, responseContainer = "List")
+        public ResponseEntity<List<ChangeRequest>> list(@RequestParam(required = false) @ApiParam(value = "The continuation token returned in the X-Next-Cursor header of the previous page") String cursor, @RequestParam(required = false) @Min(1) @ApiParam(value = "The maximum number of change requests to return") Integer limit, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields){
+            return page(changeRequestService.list(cursor, limit, ChangeRequestFields.parse(fields)));
+        }
+
+        @GetMapping(value = "", produces = NdjsonResponseBody.NDJSON)
+        @ApiOperation(value = "Stream all change requests", notes = "Stream every change request as newline delimited JSON, ordered by closed date then id")
+        public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields){
+            ChangeRequestFields projection = ChangeRequestFields.parse(fields);
+            return ndjson(() -> changeRequestService.streamAll(projection));
         }
 
         @GetMapping("/{id}")
@@ -78,43 +238,119 @@ public class ChangeRequestControllerV1
         @ResponseStatus(HttpStatus.OK)
         @ApiOperation(value = "Delete a specific change request specified by it's id")
         public String delete(@PathVariable String id) { return changeRequestService.delete(id); }
+
+        @PostMapping("/delete")
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Delete a list of change requests by id", notes = "Deletes every change request in the list with a single query and returns how many were deleted", response = ChangeRequestDeleteResult.class)
+        public ChangeRequestDeleteResult deleteAll(@RequestBody @NotEmpty(message = "Input change request id list cannot be empty.") @Size(max = 10000, message = "Input change request id list cannot contain more than 10000 ids.") List<@NotBlank String> ids){
+            return new ChangeRequestDeleteResult(changeRequestService.deleteAll(ids));
+        }
+
+        @DeleteMapping("")
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Delete the change requests matching a filter", notes = "Deletes every change request for an application and/or source, optionally limited to those closed between two dates, with a single query. At least one of applicationId and source is required", response = ChangeRequestDeleteResult.class)
+        public ChangeRequestDeleteResult deleteMatching(@RequestParam(required = false) @ApiParam(value = "The application id") String applicationId, @RequestParam(required = false) @ApiParam(value = "The source system") String source, @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The first closed date to delete in ISO Date format YYYY-MM-dd") LocalDate from, @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The last closed date to delete in ISO Date format YYYY-MM-dd") LocalDate to){
+            if (applicationId == null && source == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "An applicationId or source is required to delete change requests.");
+            }
+            Date closedFrom = from == null ? null : Date.from(from.atStartOfDay(ZoneOffset.UTC).toInstant());
+            Date closedTo = to == null ? null : Date.from(to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+            return new ChangeRequestDeleteResult(changeRequestService.deleteMatching(applicationId, source, closedFrom, closedTo));
+        }
     
         @GetMapping("/application/{id}")
-        @ResponseStatus(HttpStatus.OK)
-        @ApiOperation(value = "Get all change requests associated with an application id", response = ChangeRequest.class, responseContainer = "List")
-        public List<ChangeRequest> listForApp(@PathVariable @ApiParam(value = "The application id", required = true) String id){
-            return changeRequestService.listAllForApplication(id);
+        @ApiOperation(value = "Get all change requests associated with an application id", notes = "Carries a weak ETag and a Last-Modified that change whenever the application's change requests do, If-None-Match and If-Modified-Since are answered with 304", response = ChangeRequest.class, responseContainer = "List")
+        public ResponseEntity<List<ChangeRequest>> listForApp(@PathVariable @ApiParam(value = "The application id", required = true) String id, @RequestParam(required = false) @ApiParam(value = "The continuation token returned in the X-Next-Cursor header of the previous page") String cursor, @RequestParam(required = false) @Min(1) @ApiParam(value = "The maximum number of change requests to return") Integer limit, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields, ServletWebRequest request){
+            ChangeRequestFields projection = ChangeRequestFields.parse(fields);
+            return ifModified(request, id, "json", () -> page(changeRequestService.listForApplication(id, cursor, limit, projection)));
+        }
+
+        @GetMapping(value = "/application/{id}", produces = NdjsonResponseBody.NDJSON)
+        @ApiOperation(value = "Stream all change requests associated with an application id as newline delimited JSON")
+        public ResponseEntity<StreamingResponseBody> streamForApp(@PathVariable @ApiParam(value = "The application id", required = true) String id, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields, ServletWebRequest request){
+            ChangeRequestFields projection = ChangeRequestFields.parse(fields);
+            return ifModified(request, id, "ndjson", () -> ndjson(() -> changeRequestService.streamForApplication(id, projection)));
         }
 
         @GetMapping("/hierarchy/{id}")
         @ResponseStatus(HttpStatus.OK)
         @ApiOperation(value = "Get all change requests associated with a hierarchy", response = ChangeRequest.class, responseContainer = "List")
-        public List<ChangeRequest> listForHierarchy(@PathVariable @ApiParam(value = "The application id", required = true) String id){
-            return changeRequestService.listAllForHierarchy(id);
+        public ResponseEntity<List<ChangeRequest>> listForHierarchy(@PathVariable @ApiParam(value = "The application id", required = true) String id, @RequestParam(required = false) @ApiParam(value = "The continuation token returned in the X-Next-Cursor header of the previous page") String cursor, @RequestParam(required = false) @Min(1) @ApiParam(value = "The maximum number of change requests to return") Integer limit, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields){
+            return page(changeRequestService.listForHierarchy(id, cursor, limit, ChangeRequestFields.parse(fields)));
+        }
+
+        @GetMapping(value = "/hierarchy/{id}", produces = NdjsonResponseBody.NDJSON)
+        @ApiOperation(value = "Stream all change requests associated with a hierarchy as newline delimited JSON")
+        public ResponseEntity<StreamingResponseBody> streamForHierarchy(@PathVariable @ApiParam(value = "The application id", required = true) String id, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields){
+            ChangeRequestFields projection = ChangeRequestFields.parse(fields);
+            return ndjson(() -> changeRequestService.streamForHierarchy(id, projection));
         }
 
         @GetMapping("/application/{id}/date/{date}")
-        @ResponseStatus(HttpStatus.OK)
         @ApiOperation(value = "Get all change requests associated with an application id for a specific date", response = ChangeRequest.class, responseContainer = "List")
-        public List<ChangeRequest> listForAppAndDate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date){
+        public ResponseEntity<List<ChangeRequest>> listForAppAndDate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date, @RequestParam(required = false) @ApiParam(value = "The continuation token returned in the X-Next-Cursor header of the previous page") String cursor, @RequestParam(required = false) @Min(1) @ApiParam(value = "The maximum number of change requests to return") Integer limit, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields, ServletWebRequest request){
             Date reportingDate = Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant());
-            return changeRequestService.listAllForApplication(id, reportingDate);
+            ChangeRequestFields projection = ChangeRequestFields.parse(fields);
+            return ifModified(request, id, "json", () -> page(changeRequestService.listForApplication(id, reportingDate, cursor, limit, projection)));
+        }
+
+        @GetMapping(value = "/application/{id}/date/{date}", produces = NdjsonResponseBody.NDJSON)
+        @ApiOperation(value = "Stream all change requests associated with an application id for a specific date as newline delimited JSON")
+        public ResponseEntity<StreamingResponseBody> streamForAppAndDate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date, @RequestParam(required = false) @ApiParam(value = "Comma separated change request fields to return, changeRequestId and closed are always included. Defaults to every field") String fields, ServletWebRequest request){
+            Date reportingDate = Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant());
+            ChangeRequestFields projection = ChangeRequestFields.parse(fields);
+            return ifModified(request, id, "ndjson", () -> ndjson(() -> changeRequestService.streamForApplication(id, reportingDate, projection)));
         }
 
         @GetMapping("/application/{id}/cfr")
+        @ApiOperation(value = "Calculate change failure rate over the last 90 days for an application", notes = "Carries a weak ETag and a Last-Modified, If-None-Match and If-Modified-Since are answered with 304 until the application is written to or the day changes", response = ChangeRequest.class)
+        public ChangeFailureRate calculateChangeFailureRate(@PathVariable @ApiParam(value = "The application id", required = true) String id, ServletWebRequest request){
+            LocalDate reportingDay = LocalDate.now().minusDays(1);
+            Date reportingDate = Date.from(reportingDay.atStartOfDay(ZoneOffset.UTC).toInstant());
+            return ifModified(request, id, "cfr-" + reportingDay, startOfToday(), () -> changeRequestService.calculateChangeFailureRate(id, reportingDate));
+        }
+
+        @PostMapping("/application/cfr")
         @ResponseStatus(HttpStatus.OK)
-        @ApiOperation(value = "Calculate change failure rate over the last 90 days for an application", response = ChangeRequest.class)
-        public ChangeFailureRate calculateChangeFailureRate(@PathVariable @ApiParam(value = "The application id", required = true) String id){
-            ZonedDateTime date = LocalDate.now().minusDays(1).atStartOfDay(ZoneOffset.UTC);        
-            Date reportingDate = Date.from(date.toInstant());
-            return changeRequestService.calculateChangeFailureRate(id, reportingDate);
+        @ApiOperation(value = "Calculate change failure rate over 90 days for a list of applications", notes = "Calculate change failure rate for every application in the request body with a single query. The reporting date defaults to yesterday", response = ChangeFailureRate.class, responseContainer = "List")
+        public List<ChangeFailureRate> calculateChangeFailureRates(@RequestBody @NotEmpty(message = "Input application id list cannot be empty.") @Size(max = 1000, message = "Input application id list cannot contain more than 1000 ids.") List<@NotBlank String> ids, @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The reporting date in ISO Date format YYYY-MM-dd") LocalDate date){
+            LocalDate reportingDay = date == null ? LocalDate.now().minusDays(1) : date;
+            Date reportingDate = Date.from(reportingDay.atStartOfDay(ZoneOffset.UTC).toInstant());
+            return changeRequestService.calculateChangeFailureRates(ids, reportingDate);
         }
 
-        @GetMapping("/application/{id}/cfr/{date}")
+        @GetMapping("/hierarchy/{id}/cfr")
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Calculate change failure rate over the last 90 days for a hierarchy", notes = "Returns the change failure rate of the hierarchy as a whole and of each application in it", response = HierarchyChangeFailureRate.class)
+        public HierarchyChangeFailureRate calculateHierarchyChangeFailureRate(@PathVariable @ApiParam(value = "The application id at the top of the hierarchy", required = true) String id){
+            Date reportingDate = Date.from(LocalDate.now().minusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+            return changeRequestService.calculateHierarchyChangeFailureRate(id, reportingDate);
+        }
+
+        @GetMapping("/hierarchy/{id}/cfr/{date}")
         @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Calculate change failure rate over 90 days for a hierarchy from a given date", notes = "Returns the change failure rate of the hierarchy as a whole and of each application in it", response = HierarchyChangeFailureRate.class)
+        public HierarchyChangeFailureRate calculateHierarchyChangeFailureRate(@PathVariable @ApiParam(value = "The application id at the top of the hierarchy", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The reporting date in ISO Date format YYYY-MM-dd", required = true) LocalDate date){
+            Date reportingDate = Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant());
+            return changeRequestService.calculateHierarchyChangeFailureRate(id, reportingDate);
+        }
+
+        @GetMapping("/application/{id}/cfr/series")
+        @ApiOperation(value = "Calculate the rolling 90 day change failure rate for every day in a date range", notes = "The range defaults to the year ending yesterday and can span at most 731 days", response = ChangeFailureRate.class, responseContainer = "List")
+        public List<ChangeFailureRate> calculateChangeFailureRateSeries(@PathVariable @ApiParam(value = "The application id", required = true) String id, @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The first reporting date in ISO Date format YYYY-MM-dd") LocalDate from, @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The last reporting date in ISO Date format YYYY-MM-dd") LocalDate to, ServletWebRequest request){
+            LocalDate toDay = to == null ? LocalDate.now().minusDays(1) : to;
+            LocalDate fromDay = from == null ? toDay.minusDays(364) : from;
+            if (fromDay.isAfter(toDay) || fromDay.plusDays(MAX_SERIES_DAYS).isBefore(toDay.plusDays(1))) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Series must run forwards and span at most " + MAX_SERIES_DAYS + " days.");
+            }
+            return ifModified(request, id, "cfr-" + fromDay + "-" + toDay, to == null ? startOfToday() : -1, () -> changeRequestService.calculateChangeFailureRateSeries(id,
+                    Date.from(fromDay.atStartOfDay(ZoneOffset.UTC).toInstant()), Date.from(toDay.atStartOfDay(ZoneOffset.UTC).toInstant())));
+        }
+
+        @GetMapping("/application/{id}/cfr/{date}")
         @ApiOperation(value = "Calculate change failure rate over 90 days for an application from a given date", response = ChangeRequest.class)
-        public ChangeFailureRate calculateChangeFailureRate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date){
+        public ChangeFailureRate calculateChangeFailureRate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date, ServletWebRequest request){
             Date reportingDate = Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant());
-            return changeRequestService.calculateChangeFailureRate(id, reportingDate);
+            return ifModified(request, id, "cfr", () -> changeRequestService.calculateChangeFailureRate(id, reportingDate));
         }
     }
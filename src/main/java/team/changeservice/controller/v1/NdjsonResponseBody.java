@@ -0,0 +1,45 @@
+package team.changeservice.controller.v1;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+class NdjsonResponseBody implements StreamingResponseBody
+    {
+    static final String NDJSON = "application/x-ndjson";
+    private static final int FLUSH_EVERY = 100;
+
+    private final ObjectMapper objectMapper;
+    private final Supplier<? extends Stream<?>> source;
+
+    NdjsonResponseBody(ObjectMapper objectMapper, Supplier<? extends Stream<?>> source)
+        {
+        this.objectMapper = objectMapper;
+        this.source = source;
+        }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException
+        {
+        try (Stream<?> stream = source.get();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            Iterator<?> values = stream.iterator();
+            long written = 0;
+            while (values.hasNext()) {
+                generator.writeObject(values.next());
+                generator.writeRaw('\n');
+                // Flush the first line straight away so the client sees data before the first full batch
+                if (++written % FLUSH_EVERY == 1) {
+                    generator.flush();
+                }
+            }
+        }
+        }
+    }
@@ -0,0 +1,53 @@
+package team.changeservice.controller.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Reads Prefer request headers (RFC 7240): each is a comma separated list of preferences, a token with an optional =value and
+//optional ;parameters. Preference names are case insensitive and values can be quoted strings holding commas or semicolons.
+final class PreferHeader
+    {
+    private PreferHeader()
+        {
+        }
+
+    static boolean prefers(List<String> headerValues, String preference)
+        {
+        if (headerValues == null) {
+            return false;
+        }
+        for (String headerValue : headerValues) {
+            for (String element : splitOutsideQuotes(headerValue, ',')) {
+                String name = splitOutsideQuotes(element, ';').get(0);
+                int equals = name.indexOf('=');
+                if (equals >= 0) {
+                    name = name.substring(0, equals);
+                }
+                if (name.trim().equalsIgnoreCase(preference)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+        }
+
+    private static List<String> splitOutsideQuotes(String value, char separator)
+        {
+        List<String> parts = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (quoted && c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && c == separator) {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+        }
+    }
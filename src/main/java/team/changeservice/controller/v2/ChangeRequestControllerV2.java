@@ -0,0 +1,86 @@
+package team.changeservice.controller.v2;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.service.ReactiveChangeRequestService;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+@RestController
+@RequestMapping(value = "/api/v2/changerequest")
+@Api
+public class ChangeRequestControllerV2
+    {
+
+    private final ReactiveChangeRequestService changeRequestService;
+
+    @Autowired
+    public ChangeRequestControllerV2(ReactiveChangeRequestService changeRequestService)
+        {
+        this.changeRequestService = changeRequestService;
+        }
+
+        @GetMapping(value = "", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Stream all change requests", notes = "Streams as newline delimited JSON by default, ask for application/json to get a single array", response = ChangeRequest.class, responseContainer = "List")
+        public Flux<ChangeRequest> list(){
+            return changeRequestService.list();
+        }
+
+        @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Get a specific change request specified by it's id", response = ChangeRequest.class)
+        public Mono<ChangeRequest> show(@PathVariable @ApiParam(value = "The change request id", required = true) String id){
+            return changeRequestService.get(id);
+        }
+
+        @GetMapping(value = "/application/{id}", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Stream all change requests associated with an application id", response = ChangeRequest.class, responseContainer = "List")
+        public Flux<ChangeRequest> listForApp(@PathVariable @ApiParam(value = "The application id", required = true) String id){
+            return changeRequestService.listForApplication(id);
+        }
+
+        @GetMapping(value = "/hierarchy/{id}", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Stream all change requests associated with a hierarchy", response = ChangeRequest.class, responseContainer = "List")
+        public Flux<ChangeRequest> listForHierarchy(@PathVariable @ApiParam(value = "The application id", required = true) String id){
+            return changeRequestService.listForHierarchy(id);
+        }
+
+        @GetMapping(value = "/application/{id}/date/{date}", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Stream all change requests associated with an application id for a specific date", response = ChangeRequest.class, responseContainer = "List")
+        public Flux<ChangeRequest> listForAppAndDate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date){
+            Date reportingDate = Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant());
+            return changeRequestService.listForApplication(id, reportingDate);
+        }
+
+        @GetMapping(value = "/application/{id}/cfr", produces = MediaType.APPLICATION_JSON_VALUE)
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Calculate change failure rate over the last 90 days for an application", response = ChangeFailureRate.class)
+        public Mono<ChangeFailureRate> calculateChangeFailureRate(@PathVariable @ApiParam(value = "The application id", required = true) String id){
+            Date reportingDate = Date.from(LocalDate.now().minusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+            return changeRequestService.calculateChangeFailureRate(id, reportingDate);
+        }
+
+        @GetMapping(value = "/application/{id}/cfr/{date}", produces = MediaType.APPLICATION_JSON_VALUE)
+        @ResponseStatus(HttpStatus.OK)
+        @ApiOperation(value = "Calculate change failure rate over 90 days for an application from a given date", response = ChangeFailureRate.class)
+        public Mono<ChangeFailureRate> calculateChangeFailureRate(@PathVariable @ApiParam(value = "The application id", required = true) String id, @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) @ApiParam(value = "The change requests closed date in ISO Date format YYYY-MM-dd", required = true) LocalDate date){
+            Date reportingDate = Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant());
+            return changeRequestService.calculateChangeFailureRate(id, reportingDate);
+        }
+    }
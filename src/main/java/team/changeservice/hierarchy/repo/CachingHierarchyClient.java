@@ -0,0 +1,45 @@
+package team.changeservice.hierarchy.repo;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+
+@Primary
+@Component
+public class CachingHierarchyClient implements HierarchyClient
+    {
+    private final LoadingCache<String, Collection<String>> cache;
+
+    @Autowired
+    public CachingHierarchyClient(@Qualifier("teamServiceHierarchyClient") HierarchyClient hierarchyClient,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${changeservice.hierarchy.cache.maximum-size:1000}") long maximumSize,
+                                  @Value("${changeservice.hierarchy.cache.refresh-after-write:1h}") Duration refreshAfterWrite,
+                                  @Value("${changeservice.hierarchy.cache.expire-after-write:7d}") Duration expireAfterWrite)
+        {
+        //Entries older than refreshAfterWrite are still served while a reload runs in the background,
+        //expireAfterWrite is the hard limit on how stale a hierarchy can get if team-service is unavailable
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(refreshAfterWrite)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(hierarchyClient::findChildIds);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "hierarchy");
+        }
+
+    @Override
+    public Collection<String> findChildIds(String slug)
+        {
+        return cache.get(slug);
+        }
+    }
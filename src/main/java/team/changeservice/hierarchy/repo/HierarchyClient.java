@@ -7,7 +7,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 
 import java.util.Collection;
 
-@FeignClient(value = "team-service")
+@FeignClient(value = "team-service", qualifiers = "teamServiceHierarchyClient", primary = false)
 public interface HierarchyClient
     {
         @RequestMapping(method = RequestMethod.GET, value = "/v2/hierarchy/children/ids/{slug}")
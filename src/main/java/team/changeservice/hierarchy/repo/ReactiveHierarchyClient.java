@@ -0,0 +1,10 @@
+package team.changeservice.hierarchy.repo;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface ReactiveHierarchyClient
+    {
+        Mono<Collection<String>> findChildIds(String slug);
+    }
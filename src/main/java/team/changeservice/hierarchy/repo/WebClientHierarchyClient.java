@@ -0,0 +1,54 @@
+package team.changeservice.hierarchy.repo;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+
+@Component
+public class WebClientHierarchyClient implements ReactiveHierarchyClient
+    {
+    private static final ParameterizedTypeReference<Collection<String>> CHILD_IDS = new ParameterizedTypeReference<Collection<String>>() {};
+
+    private final AsyncLoadingCache<String, Collection<String>> cache;
+
+    @Autowired
+    public WebClientHierarchyClient(WebClient.Builder webClientBuilder,
+                                    ReactorLoadBalancerExchangeFilterFunction loadBalancerFilter,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${changeservice.hierarchy.base-url:http://team-service}") String baseUrl,
+                                    @Value("${changeservice.hierarchy.cache.maximum-size:1000}") long maximumSize,
+                                    @Value("${changeservice.hierarchy.cache.refresh-after-write:1h}") Duration refreshAfterWrite,
+                                    @Value("${changeservice.hierarchy.cache.expire-after-write:7d}") Duration expireAfterWrite)
+        {
+        WebClient webClient = webClientBuilder.baseUrl(baseUrl).filter(loadBalancerFilter).build();
+        //Same refresh-ahead policy as CachingHierarchyClient, but loads complete on the WebClient's event loop
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(refreshAfterWrite)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync((slug, executor) -> webClient.get()
+                        .uri("/v2/hierarchy/children/ids/{slug}", slug)
+                        .retrieve()
+                        .bodyToMono(CHILD_IDS)
+                        .toFuture());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "hierarchy.reactive");
+        }
+
+    @Override
+    public Mono<Collection<String>> findChildIds(String slug)
+        {
+        return Mono.fromFuture(cache.get(slug));
+        }
+    }
@@ -0,0 +1,229 @@
+package team.changeservice.ingest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestWriteResult;
+import team.changeservice.model.IngestStatus;
+import team.changeservice.model.IngestTicket;
+import team.changeservice.model.WriteStatus;
+import team.changeservice.service.ChangeRequestService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+//Accepts change requests into a bounded in-memory queue and writes them in the background, coalescing whatever
+//has queued up into bulk writes. Anything still queued when the service is killed (rather than shut down) is lost.
+@Service
+public class AsyncIngestService implements DisposableBean
+    {
+    private static final Logger log = LoggerFactory.getLogger(AsyncIngestService.class);
+    static final String METRIC_PREFIX = "changeservice.ingest.";
+
+    private final ChangeRequestService changeRequestService;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration retryAfter;
+    private final Semaphore permits;
+    private final BlockingDeque<QueuedChangeRequest> queue = new LinkedBlockingDeque<>();
+    private final Cache<String, Ticket> tickets;
+    private final Counter drained;
+    private final Counter rejected;
+    private final ExecutorService writer;
+    private volatile boolean running = true;
+
+    private static final class QueuedChangeRequest
+        {
+        private final ChangeRequest changeRequest;
+        private final Ticket ticket;
+        private final int index;
+
+        private QueuedChangeRequest(ChangeRequest changeRequest, Ticket ticket, int index)
+            {
+            this.changeRequest = changeRequest;
+            this.ticket = ticket;
+            this.index = index;
+            }
+        }
+
+    private static final class Ticket
+        {
+        private final String ticketId = UUID.randomUUID().toString();
+        private final Date submitted = new Date();
+        private final ChangeRequestWriteResult[] results;
+        private final AtomicInteger remaining;
+        private volatile Date completed;
+
+        private Ticket(int size)
+            {
+            this.results = new ChangeRequestWriteResult[size];
+            this.remaining = new AtomicInteger(size);
+            }
+
+        private void complete(int index, ChangeRequestWriteResult result)
+            {
+            results[index] = result;
+            if (remaining.decrementAndGet() == 0) {
+                completed = new Date();
+            }
+            }
+
+        private IngestTicket snapshot()
+            {
+            Date completedAt = completed;
+            if (completedAt == null) {
+                return new IngestTicket(ticketId, IngestStatus.QUEUED, results.length, results.length - remaining.get(), submitted, null, null);
+            }
+            return new IngestTicket(ticketId, IngestStatus.COMPLETED, results.length, results.length, submitted, completedAt,
+                    new BulkStoreResult(Arrays.asList(results)));
+            }
+        }
+
+    @Autowired
+    public AsyncIngestService(ChangeRequestService changeRequestService, MeterRegistry meterRegistry,
+                              @Value("${changeservice.ingest.queue-capacity:10000}") int capacity,
+                              @Value("${changeservice.bulk.chunk-size:1000}") int batchSize,
+                              @Value("${changeservice.ingest.retry-after:5s}") Duration retryAfter,
+                              @Value("${changeservice.ingest.ticket-ttl:1h}") Duration ticketTtl)
+        {
+        this.changeRequestService = changeRequestService;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.retryAfter = retryAfter;
+        //One permit per queued change request, handed back once it has been written
+        this.permits = new Semaphore(capacity);
+        this.tickets = Caffeine.newBuilder().expireAfterWrite(ticketTtl).build();
+        Gauge.builder(METRIC_PREFIX + "queue.depth", queue, BlockingDeque::size)
+                .description("The number of change requests waiting to be written")
+                .register(meterRegistry);
+        this.drained = Counter.builder(METRIC_PREFIX + "drained")
+                .description("The number of queued change requests written")
+                .register(meterRegistry);
+        this.rejected = Counter.builder(METRIC_PREFIX + "rejected")
+                .description("The number of change requests turned away because the queue was full")
+                .register(meterRegistry);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingest-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.execute(this::drain);
+        }
+
+    public int getCapacity()
+        {
+        return capacity;
+        }
+
+    public IngestTicket submit(List<ChangeRequest> changeRequests)
+        {
+        if (!running || !permits.tryAcquire(changeRequests.size())) {
+            rejected.increment(changeRequests.size());
+            throw new IngestQueueFullException(changeRequests.size(), permits.availablePermits(), retryAfter);
+        }
+        Ticket ticket = new Ticket(changeRequests.size());
+        tickets.put(ticket.ticketId, ticket);
+        for (int i = 0; i < changeRequests.size(); i++) {
+            queue.add(new QueuedChangeRequest(changeRequests.get(i), ticket, i));
+        }
+        log.info("Queued {} change requests under ticket {}", changeRequests.size(), ticket.ticketId);
+        return ticket.snapshot();
+        }
+
+    public Optional<IngestTicket> getTicket(String ticketId)
+        {
+        return Optional.ofNullable(tickets.getIfPresent(ticketId)).map(Ticket::snapshot);
+        }
+
+    private void drain()
+        {
+        List<QueuedChangeRequest> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedChangeRequest first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+        }
+
+    //Takes whatever else is already queued, up to a batch. A change request queued twice ends the batch
+    //so the later version is written after the earlier one rather than racing it in the same bulk write.
+    private void fill(List<QueuedChangeRequest> batch)
+        {
+        Set<String> ids = new HashSet<>();
+        ids.add(batch.get(0).changeRequest.getChangeRequestId());
+        QueuedChangeRequest next;
+        while (batch.size() < batchSize && (next = queue.poll()) != null) {
+            if (!ids.add(next.changeRequest.getChangeRequestId())) {
+                queue.offerFirst(next);
+                return;
+            }
+            batch.add(next);
+        }
+        }
+
+    private void write(List<QueuedChangeRequest> batch)
+        {
+        List<ChangeRequestWriteResult> results;
+        try {
+            results = changeRequestService.storeAll(batch.stream().map(q -> q.changeRequest).collect(Collectors.toList())).getResults();
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} queued change requests", batch.size(), e);
+            results = batch.stream()
+                    .map(q -> new ChangeRequestWriteResult(q.changeRequest.getChangeRequestId(), WriteStatus.FAILED, e.getMessage()))
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).ticket.complete(batch.get(i).index, results.get(i));
+        }
+        permits.release(batch.size());
+        drained.increment(batch.size());
+        }
+
+    @Override
+    public void destroy() throws InterruptedException
+        {
+        //Stop taking new work and give the writer a chance to empty the queue before the context closes
+        running = false;
+        writer.shutdown();
+        if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Shut down with {} change requests still queued, they have not been written", queue.size());
+            writer.shutdownNow();
+        }
+        }
+    }
@@ -0,0 +1,278 @@
+package team.changeservice.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.WriteConcern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestWriteResult;
+import team.changeservice.model.ImportRejection;
+import team.changeservice.model.ImportResult;
+import team.changeservice.model.WriteStatus;
+import team.changeservice.service.ChangeRequestService;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+//Streams change requests out of an NDJSON or CSV file and stores them in large unordered bulk writes,
+//holding no more than one batch in memory however big the file is
+@Service
+public class ChangeRequestImporter
+    {
+    private static final Logger log = LoggerFactory.getLogger(ChangeRequestImporter.class);
+
+    private final ChangeRequestService changeRequestService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchSize;
+    private final WriteConcern writeConcern;
+    private final int maxReportedRejections;
+
+    private static final class Row
+        {
+        private final long line;
+        private final JsonNode changeRequest;
+        private final String error;
+
+        private Row(long line, JsonNode changeRequest, String error)
+            {
+            this.line = line;
+            this.changeRequest = changeRequest;
+            this.error = error;
+            }
+        }
+
+    private interface RowReader extends Closeable
+        {
+        //The next row, or null at the end of the input
+        Row next() throws IOException;
+        }
+
+    private static final class Tally
+        {
+        private long read;
+        private long inserted;
+        private long replaced;
+        private long unchanged;
+        private long failed;
+        private long rejected;
+        private final List<ImportRejection> rejections = new ArrayList<>();
+        }
+
+    @Autowired
+    public ChangeRequestImporter(ChangeRequestService changeRequestService, ObjectMapper objectMapper, Validator validator,
+                                 @Value("${changeservice.import.batch-size:10000}") int batchSize,
+                                 @Value("${changeservice.import.write-concern:}") String writeConcern,
+                                 @Value("${changeservice.import.max-reported-rejections:1000}") int maxReportedRejections)
+        {
+        this.changeRequestService = changeRequestService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchSize = batchSize;
+        this.writeConcern = writeConcern(writeConcern);
+        this.maxReportedRejections = maxReportedRejections;
+        }
+
+    //Blank means the client's default write concern
+    static WriteConcern writeConcern(String name)
+        {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        WriteConcern writeConcern = WriteConcern.valueOf(name);
+        if (writeConcern == null) {
+            throw new IllegalArgumentException("Unknown write concern " + name + ", expected one of W1, W2, W3, MAJORITY or JOURNALED");
+        }
+        //Unacknowledged writes can't say which change requests were inserted, replaced or failed
+        if (!writeConcern.isAcknowledged()) {
+            throw new IllegalArgumentException("Imports need an acknowledged write concern, not " + name);
+        }
+        return writeConcern;
+        }
+
+    public ImportResult importChangeRequests(InputStream input, ImportFormat format) throws IOException
+        {
+        long started = System.nanoTime();
+        Tally tally = new Tally();
+        List<ChangeRequest> batch = new ArrayList<>(batchSize);
+        List<Long> lines = new ArrayList<>(batchSize);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        //Spreadsheet exports often start with a byte order mark
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        try (RowReader rows = format == ImportFormat.CSV ? csv(reader) : ndjson(reader)) {
+            Row row;
+            while ((row = rows.next()) != null) {
+                tally.read++;
+                ChangeRequest changeRequest = accept(row, tally);
+                if (changeRequest == null) {
+                    continue;
+                }
+                batch.add(changeRequest);
+                lines.add(row.line);
+                if (batch.size() == batchSize) {
+                    write(batch, lines, tally, started);
+                    batch = new ArrayList<>(batchSize);
+                    lines = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, lines, tally, started);
+        }
+
+        ImportResult result = new ImportResult(tally.read, tally.inserted, tally.replaced, tally.unchanged, tally.failed, tally.rejected,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), tally.rejections);
+        log.info("Imported {} {} rows in {}ms ({}/s): {} inserted, {} replaced, {} unchanged, {} failed, {} rejected", result.getRead(), format,
+                result.getDurationMillis(), result.getChangeRequestsPerSecond(), result.getInserted(), result.getReplaced(), result.getUnchanged(),
+                result.getFailed(), result.getRejected());
+        return result;
+        }
+
+    private ChangeRequest accept(Row row, Tally tally)
+        {
+        if (row.error != null) {
+            reject(tally, row.line, null, row.error);
+            return null;
+        }
+        String changeRequestId = row.changeRequest.path("changeRequestId").asText(null);
+        ChangeRequest changeRequest;
+        try {
+            changeRequest = objectMapper.treeToValue(row.changeRequest, ChangeRequest.class);
+        } catch (JsonProcessingException e) {
+            reject(tally, row.line, changeRequestId, e.getOriginalMessage());
+            return null;
+        }
+        List<String> violations = validator.validate(changeRequest).stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.toList());
+        if (!violations.isEmpty()) {
+            reject(tally, row.line, changeRequestId, String.join(", ", violations));
+            return null;
+        }
+        return changeRequest;
+        }
+
+    private void write(List<ChangeRequest> batch, List<Long> lines, Tally tally, long started)
+        {
+        BulkStoreResult result = changeRequestService.storeAll(batch, writeConcern, batchSize);
+        tally.inserted += result.getInserted();
+        tally.replaced += result.getReplaced();
+        tally.unchanged += result.getUnchanged();
+        tally.failed += result.getFailed();
+        for (int i = 0; i < batch.size(); i++) {
+            ChangeRequestWriteResult written = result.getResults().get(i);
+            if (written.getStatus() == WriteStatus.FAILED) {
+                report(tally, new ImportRejection(lines.get(i), written.getChangeRequestId(), written.getError()));
+            }
+        }
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        log.info("Import progress: {} rows read, {}/s", tally.read, tally.read * 1000 / elapsedMillis);
+        }
+
+    private void reject(Tally tally, long line, String changeRequestId, String error)
+        {
+        tally.rejected++;
+        report(tally, new ImportRejection(line, changeRequestId, error));
+        }
+
+    //Every rejection is counted, only the first few are kept so a badly broken file can't use up the heap
+    private void report(Tally tally, ImportRejection rejection)
+        {
+        if (tally.rejections.size() < maxReportedRejections) {
+            tally.rejections.add(rejection);
+        }
+        }
+
+    private RowReader ndjson(BufferedReader reader)
+        {
+        return new RowReader()
+            {
+            private long line;
+
+            @Override
+            public Row next() throws IOException
+                {
+                String text;
+                do {
+                    text = reader.readLine();
+                    line++;
+                    if (text == null) {
+                        return null;
+                    }
+                } while (text.isBlank());
+                try {
+                    return new Row(line, objectMapper.readTree(text), null);
+                } catch (JsonProcessingException e) {
+                    return new Row(line, null, e.getOriginalMessage());
+                }
+                }
+
+            @Override
+            public void close() throws IOException
+                {
+                reader.close();
+                }
+            };
+        }
+
+    //The header row names the change request fields in each column, empty values are left out
+    private RowReader csv(BufferedReader reader) throws IOException
+        {
+        CsvRecordReader records = new CsvRecordReader(reader);
+        List<String> header = records.next();
+        if (header == null) {
+            header = new ArrayList<>();
+        }
+        ChangeRequestFields.parse(String.join(",", header));
+        List<String> columns = header.stream().map(String::trim).collect(Collectors.toList());
+        return new RowReader()
+            {
+            @Override
+            public Row next() throws IOException
+                {
+                List<String> record = records.next();
+                if (record == null) {
+                    return null;
+                }
+                if (record.size() != columns.size()) {
+                    return new Row(records.getLine(), null, "Expected " + columns.size() + " columns, found " + record.size());
+                }
+                ObjectNode changeRequest = objectMapper.createObjectNode();
+                for (int i = 0; i < columns.size(); i++) {
+                    if (!record.get(i).isEmpty()) {
+                        changeRequest.put(columns.get(i), record.get(i));
+                    }
+                }
+                return new Row(records.getLine(), changeRequest, null);
+                }
+
+            @Override
+            public void close() throws IOException
+                {
+                records.close();
+                }
+            };
+        }
+    }
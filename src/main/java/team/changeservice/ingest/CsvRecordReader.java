@@ -0,0 +1,84 @@
+package team.changeservice.ingest;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//Reads RFC 4180 CSV a record at a time: comma separated, fields optionally quoted with " and quotes escaped by doubling them.
+//A quoted field can span lines, so a record's line is the line it starts on.
+class CsvRecordReader implements Closeable
+    {
+    private final BufferedReader reader;
+    private long nextLine = 1;
+    private long line;
+
+    CsvRecordReader(BufferedReader reader)
+        {
+        this.reader = reader;
+        }
+
+    //The next record, or null at the end of the input. Blank lines are skipped.
+    List<String> next() throws IOException
+        {
+        String text;
+        do {
+            text = reader.readLine();
+            line = nextLine++;
+            if (text == null) {
+                return null;
+            }
+        } while (text.isEmpty());
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == text.length()) {
+                if (!quoted) {
+                    fields.add(field.toString());
+                    return fields;
+                }
+                text = reader.readLine();
+                nextLine++;
+                if (text == null) {
+                    throw new IOException("Unterminated quoted field in the record starting on line " + line);
+                }
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < text.length() && text.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        }
+
+    long getLine()
+        {
+        return line;
+        }
+
+    @Override
+    public void close() throws IOException
+        {
+        reader.close();
+        }
+    }
@@ -0,0 +1,24 @@
+package team.changeservice.ingest;
+
+import java.util.Locale;
+
+public enum ImportFormat
+    {
+        NDJSON,
+        CSV;
+
+    public static ImportFormat fromFileName(String fileName)
+        {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Cannot tell the format of " + fileName + " from its extension, set changeservice.import.format to NDJSON or CSV");
+        }
+    }
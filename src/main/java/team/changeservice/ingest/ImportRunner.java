@@ -0,0 +1,66 @@
+package team.changeservice.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import team.changeservice.model.ImportResult;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+//Command line mode: imports changeservice.import.file once the application has started and then exits,
+//with status 0 if every change request was stored and 1 if any were rejected or failed
+@Component
+@ConditionalOnProperty(name = "changeservice.import.file")
+public class ImportRunner implements ApplicationRunner
+    {
+    private static final Logger log = LoggerFactory.getLogger(ImportRunner.class);
+
+    private final ChangeRequestImporter changeRequestImporter;
+    private final ApplicationContext applicationContext;
+    private final Path file;
+    private final ImportFormat format;
+
+    @Autowired
+    public ImportRunner(ChangeRequestImporter changeRequestImporter, ApplicationContext applicationContext,
+                        @Value("${changeservice.import.file}") String file,
+                        @Value("${changeservice.import.format:}") String format)
+        {
+        this.changeRequestImporter = changeRequestImporter;
+        this.applicationContext = applicationContext;
+        this.file = Paths.get(file);
+        this.format = format.isBlank() ? ImportFormat.fromFileName(this.file.getFileName().toString()) : ImportFormat.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException
+        {
+        log.info("Importing {} change requests from {}", format, file);
+        ImportResult result;
+        try (InputStream input = open(file)) {
+            result = changeRequestImporter.importChangeRequests(input, format);
+        }
+        result.getRejections().forEach(rejection -> log.warn("Line {} ({}) not imported: {}", rejection.getLine(), rejection.getChangeRequestId(), rejection.getError()));
+        int exitCode = result.getRejected() + result.getFailed() == 0 ? 0 : 1;
+        System.exit(SpringApplication.exit(applicationContext, () -> exitCode));
+        }
+
+    private static InputStream open(Path file) throws IOException
+        {
+        InputStream input = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz") ? new GZIPInputStream(input, 1 << 16) : input;
+        }
+    }
@@ -0,0 +1,19 @@
+package team.changeservice.ingest;
+
+import java.time.Duration;
+
+public class IngestQueueFullException extends RuntimeException
+    {
+    private final Duration retryAfter;
+
+    public IngestQueueFullException(int requested, int available, Duration retryAfter)
+        {
+        super("Ingest queue is full: " + requested + " change requests submitted, room for " + available);
+        this.retryAfter = retryAfter;
+        }
+
+    public Duration getRetryAfter()
+        {
+        return retryAfter;
+        }
+    }
@@ -0,0 +1,62 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import team.changeservice.model.ChangeFailureRate;
+
+import java.io.IOException;
+
+class ChangeFailureRateSerializer extends FastJsonSerializer<ChangeFailureRate>
+    {
+    private static final SerializableString APPLICATION_ID = name("applicationId");
+    private static final SerializableString REPORTING_DATE = name("reportingDate");
+    private static final SerializableString CHANGE_FAILURE_RATE_PERCENT = name("changeFailureRatePercent");
+    private static final SerializableString CHANGE_REQUEST_COUNT = name("changeRequestCount");
+    private static final SerializableString DORA_LEVEL = name("doraLevel");
+
+    ChangeFailureRateSerializer(JsonSerializer<?> fallback)
+        {
+        super(ChangeFailureRate.class, fallback);
+        }
+
+    @Override
+    boolean write(ChangeFailureRate rate, JsonGenerator gen, SerializerProvider provider, Inclusion inclusion) throws IOException
+        {
+        if (!formattable(rate.getReportingDate())) {
+            return false;
+        }
+        gen.writeStartObject(rate);
+        writeString(gen, APPLICATION_ID, rate.getApplicationId(), inclusion);
+        //The reportingDate is annotated yyyy-MM-dd
+        if (rate.getReportingDate() == null) {
+            writeNull(gen, REPORTING_DATE, inclusion);
+        } else {
+            char[] buffer = new char[DATE_LENGTH];
+            formatDate(rate.getReportingDate().getTime(), buffer);
+            gen.writeFieldName(REPORTING_DATE);
+            gen.writeString(buffer, 0, DATE_LENGTH);
+        }
+        if (rate.getChangeFailureRatePercent() == null) {
+            writeNull(gen, CHANGE_FAILURE_RATE_PERCENT, inclusion);
+        } else {
+            gen.writeFieldName(CHANGE_FAILURE_RATE_PERCENT);
+            gen.writeNumber(rate.getChangeFailureRatePercent());
+        }
+        if (rate.getChangeRequestCount() == null) {
+            writeNull(gen, CHANGE_REQUEST_COUNT, inclusion);
+        } else {
+            gen.writeFieldName(CHANGE_REQUEST_COUNT);
+            gen.writeNumber(rate.getChangeRequestCount());
+        }
+        if (rate.getDoraLevel() == null) {
+            writeNull(gen, DORA_LEVEL, inclusion);
+        } else {
+            gen.writeFieldName(DORA_LEVEL);
+            gen.writeString(rate.getDoraLevel().name());
+        }
+        gen.writeEndObject();
+        return true;
+        }
+    }
@@ -0,0 +1,67 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import team.changeservice.model.ChangeRequest;
+
+import java.io.IOException;
+import java.util.Date;
+
+class ChangeRequestSerializer extends FastJsonSerializer<ChangeRequest>
+    {
+    private static final SerializableString CHANGE_REQUEST_ID = name("changeRequestId");
+    private static final SerializableString DESCRIPTION = name("description");
+    private static final SerializableString APPLICATION_ID = name("applicationId");
+    private static final SerializableString CREATED = name("created");
+    private static final SerializableString STARTED = name("started");
+    private static final SerializableString FINISHED = name("finished");
+    private static final SerializableString CLOSED = name("closed");
+    private static final SerializableString FAILED = name("failed");
+    private static final SerializableString SOURCE = name("source");
+
+    ChangeRequestSerializer(JsonSerializer<?> fallback)
+        {
+        super(ChangeRequest.class, fallback);
+        }
+
+    @Override
+    boolean write(ChangeRequest changeRequest, JsonGenerator gen, SerializerProvider provider, Inclusion inclusion) throws IOException
+        {
+        if (!formattable(changeRequest.getCreated()) || !formattable(changeRequest.getStarted())
+                || !formattable(changeRequest.getFinished()) || !formattable(changeRequest.getClosed())) {
+            return false;
+        }
+        //One buffer for the four dates of the change request
+        char[] buffer = new char[DATE_TIME_LENGTH];
+        gen.writeStartObject(changeRequest);
+        writeString(gen, CHANGE_REQUEST_ID, changeRequest.getChangeRequestId(), inclusion);
+        writeString(gen, DESCRIPTION, changeRequest.getDescription(), inclusion);
+        writeString(gen, APPLICATION_ID, changeRequest.getApplicationId(), inclusion);
+        writeDate(gen, CREATED, changeRequest.getCreated(), inclusion, buffer);
+        writeDate(gen, STARTED, changeRequest.getStarted(), inclusion, buffer);
+        writeDate(gen, FINISHED, changeRequest.getFinished(), inclusion, buffer);
+        writeDate(gen, CLOSED, changeRequest.getClosed(), inclusion, buffer);
+        if (changeRequest.getFailed() == null) {
+            writeNull(gen, FAILED, inclusion);
+        } else {
+            gen.writeFieldName(FAILED);
+            gen.writeBoolean(changeRequest.getFailed());
+        }
+        writeString(gen, SOURCE, changeRequest.getSource(), inclusion);
+        gen.writeEndObject();
+        return true;
+        }
+
+    private static void writeDate(JsonGenerator gen, SerializableString name, Date date, Inclusion inclusion, char[] buffer) throws IOException
+        {
+        if (date == null) {
+            writeNull(gen, name, inclusion);
+            return;
+        }
+        formatDateTime(date.getTime(), buffer);
+        gen.writeFieldName(name);
+        gen.writeString(buffer, 0, DATE_TIME_LENGTH);
+        }
+    }
@@ -0,0 +1,35 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import org.springframework.stereotype.Component;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+
+//Registered on the application's ObjectMapper by Spring Boot. Wraps the default serializers of the classes returned in bulk
+//so the controllers, NDJSON streams and exports all write them through the hand written path.
+@Component
+public class FastJsonModule extends SimpleModule
+    {
+    public FastJsonModule()
+        {
+        super("FastJsonModule");
+        setSerializerModifier(new BeanSerializerModifier()
+            {
+            @Override
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer)
+                {
+                if (beanDesc.getBeanClass() == ChangeRequest.class) {
+                    return new ChangeRequestSerializer(serializer);
+                }
+                if (beanDesc.getBeanClass() == ChangeFailureRate.class) {
+                    return new ChangeFailureRateSerializer(serializer);
+                }
+                return serializer;
+                }
+            });
+        }
+    }
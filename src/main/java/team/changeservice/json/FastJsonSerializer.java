@@ -0,0 +1,180 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.TimeZone;
+
+//Writes a model class field by field instead of through bean introspection, producing exactly what the default serializer
+//would under the settings the service runs with. Any other mapper setup is handed to the default serializer.
+abstract class FastJsonSerializer<T> extends StdSerializer<T> implements ResolvableSerializer
+    {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long DAY = 86_400_000L;
+    //The default date format switches to the Julian calendar before 1582, so only Gregorian four digit years are written here
+    private static final long MIN_DATE = LocalDate.of(1583, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    private static final long MAX_DATE = LocalDate.of(10000, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    static final int DATE_LENGTH = 10;
+    static final int DATE_TIME_LENGTH = 29;
+
+    private final JsonSerializer<Object> fallback;
+
+    @SuppressWarnings("unchecked")
+    FastJsonSerializer(Class<T> type, JsonSerializer<?> fallback)
+        {
+        super(type);
+        this.fallback = (JsonSerializer<Object>) fallback;
+        }
+
+    //How nulls and empty strings are written: ALWAYS writes nulls, NON_NULL and NON_ABSENT leave them out, NON_EMPTY also leaves out ""
+    enum Inclusion
+        {
+        ALWAYS,
+        NON_NULL,
+        NON_EMPTY
+        }
+
+    abstract boolean write(T value, JsonGenerator gen, SerializerProvider provider, Inclusion inclusion) throws IOException;
+
+    @Override
+    public void serialize(T value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+        Inclusion inclusion = inclusion(provider);
+        if (inclusion == null || !write(value, gen, provider, inclusion)) {
+            fallback.serialize(value, gen, provider);
+        }
+        }
+
+    @Override
+    public void serializeWithType(T value, JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException
+        {
+        fallback.serializeWithType(value, gen, provider, typeSer);
+        }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException
+        {
+        if (fallback instanceof ResolvableSerializer) {
+            ((ResolvableSerializer) fallback).resolve(provider);
+        }
+        }
+
+    //Null when the mapper is set up in a way only the default serializer handles
+    private Inclusion inclusion(SerializerProvider provider)
+        {
+        SerializationConfig config = provider.getConfig();
+        if (provider.getActiveView() != null
+                || config.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                || config.isEnabled(SerializationFeature.WRITE_ENUMS_USING_TO_STRING)
+                || config.isEnabled(SerializationFeature.WRITE_ENUMS_USING_INDEX)
+                || config.isEnabled(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                || config.getDateFormat().getClass() != StdDateFormat.class
+                || !((StdDateFormat) config.getDateFormat()).isColonIncludedInTimeZone()
+                || !UTC.hasSameRules(config.getTimeZone())) {
+            return null;
+        }
+        switch (config.getDefaultPropertyInclusion(handledType()).getValueInclusion()) {
+            case ALWAYS:
+            case USE_DEFAULTS:
+                return Inclusion.ALWAYS;
+            case NON_NULL:
+            case NON_ABSENT:
+                return Inclusion.NON_NULL;
+            case NON_EMPTY:
+                return Inclusion.NON_EMPTY;
+            default:
+                return null;
+        }
+        }
+
+    static void writeString(JsonGenerator gen, SerializableString name, String value, Inclusion inclusion) throws IOException
+        {
+        if (value == null) {
+            writeNull(gen, name, inclusion);
+        } else if (!value.isEmpty() || inclusion != Inclusion.NON_EMPTY) {
+            gen.writeFieldName(name);
+            gen.writeString(value);
+        }
+        }
+
+    static void writeNull(JsonGenerator gen, SerializableString name, Inclusion inclusion) throws IOException
+        {
+        if (inclusion == Inclusion.ALWAYS) {
+            gen.writeFieldName(name);
+            gen.writeNull();
+        }
+        }
+
+    static boolean formattable(Date date)
+        {
+        return date == null || (date.getTime() >= MIN_DATE && date.getTime() < MAX_DATE);
+        }
+
+    //yyyy-MM-dd'T'HH:mm:ss.SSS+00:00, the default date format in UTC, written into the caller's buffer
+    static void formatDateTime(long millis, char[] buffer)
+        {
+        formatDate(millis, buffer);
+        int millisOfDay = (int) Math.floorMod(millis, DAY);
+        buffer[10] = 'T';
+        digits(buffer, 11, millisOfDay / 3_600_000, 2);
+        buffer[13] = ':';
+        digits(buffer, 14, millisOfDay / 60_000 % 60, 2);
+        buffer[16] = ':';
+        digits(buffer, 17, millisOfDay / 1000 % 60, 2);
+        buffer[19] = '.';
+        digits(buffer, 20, millisOfDay % 1000, 3);
+        buffer[23] = '+';
+        buffer[24] = '0';
+        buffer[25] = '0';
+        buffer[26] = ':';
+        buffer[27] = '0';
+        buffer[28] = '0';
+        }
+
+    //yyyy-MM-dd in UTC, working the civil date out from the day number rather than through a Calendar
+    static void formatDate(long millis, char[] buffer)
+        {
+        long days = Math.floorDiv(millis, DAY) + 719_468;
+        long era = Math.floorDiv(days, 146_097);
+        int dayOfEra = (int) (days - era * 146_097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = (int) (era * 400 + yearOfEra) + (month <= 2 ? 1 : 0);
+        digits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        digits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        digits(buffer, 8, day, 2);
+        }
+
+    private static void digits(char[] buffer, int offset, int value, int width)
+        {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        }
+
+    static SerializableString name(String name)
+        {
+        return new SerializedString(name);
+        }
+    }
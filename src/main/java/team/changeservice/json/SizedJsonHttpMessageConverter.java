@@ -0,0 +1,109 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+//Takes the place of Spring Boot's JSON converter. Tomcat only applies server.compression.min-response-size to responses with a
+//Content-Length, without one every JSON response is gzipped however small. So a response is held back until it is finished or
+//passes changeservice.json.buffer-limit: one that finishes first is sent with its length, a larger one is streamed on from there
+//without, and is compressed as it is well past the threshold anyway. JSON lists of whole applications can be any size, so
+//nothing more than the limit is ever held. NDJSON and CSV streams don't go through here and are always compressed.
+@Component
+public class SizedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter
+    {
+    private final int bufferLimit;
+
+    @Autowired
+    public SizedJsonHttpMessageConverter(ObjectMapper objectMapper, @Value("${changeservice.json.buffer-limit:64KB}") DataSize bufferLimit)
+        {
+        super(objectMapper);
+        this.bufferLimit = (int) bufferLimit.toBytes();
+        }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException
+        {
+        SpillingOutputStream body = new SpillingOutputStream(outputMessage, bufferLimit);
+        super.writeInternal(object, type, new HttpOutputMessage()
+            {
+            @Override
+            public OutputStream getBody()
+                {
+                return body;
+                }
+
+            @Override
+            public HttpHeaders getHeaders()
+                {
+                return outputMessage.getHeaders();
+                }
+            });
+        body.finish();
+        }
+
+    //Buffers what is written until it would pass the limit, then sends the buffer and everything after it straight on.
+    //The headers go out with the first byte sent, so the length can only be set on a response that never spilled.
+    private static final class SpillingOutputStream extends OutputStream
+        {
+        private final HttpOutputMessage outputMessage;
+        private final int limit;
+        private ByteArrayOutputStream buffer;
+        private OutputStream body;
+
+        SpillingOutputStream(HttpOutputMessage outputMessage, int limit)
+            {
+            this.outputMessage = outputMessage;
+            this.limit = limit;
+            this.buffer = new ByteArrayOutputStream(Math.min(limit, 8192));
+            }
+
+        @Override
+        public void write(int b) throws IOException
+            {
+            write(new byte[]{(byte) b}, 0, 1);
+            }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException
+            {
+            if (body == null && buffer.size() + length > limit) {
+                body = outputMessage.getBody();
+                buffer.writeTo(body);
+                buffer = null;
+            }
+            if (body != null) {
+                body.write(bytes, offset, length);
+            } else {
+                buffer.write(bytes, offset, length);
+            }
+            }
+
+        //Jackson flushes once it has written the value, which is only passed on once the response is being streamed
+        @Override
+        public void flush() throws IOException
+            {
+            if (body != null) {
+                body.flush();
+            }
+            }
+
+        void finish() throws IOException
+            {
+            if (body == null) {
+                outputMessage.getHeaders().setContentLength(buffer.size());
+                buffer.writeTo(outputMessage.getBody());
+            }
+            }
+        }
+    }
@@ -0,0 +1,54 @@
+package team.changeservice.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.config.MeterFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Every application gets its own time series until maxApplicationIds have been seen,
+//calls for any application after that are reported under applicationId=other so a large estate can't swamp Prometheus
+class ApplicationIdTagLimiter implements MeterFilter
+    {
+    static final String OTHER = "other";
+
+    private final String metricPrefix;
+    private final int maxApplicationIds;
+    private final Set<String> applicationIds = ConcurrentHashMap.newKeySet();
+
+    ApplicationIdTagLimiter(String metricPrefix, int maxApplicationIds)
+        {
+        this.metricPrefix = metricPrefix;
+        this.maxApplicationIds = maxApplicationIds;
+        }
+
+    @Override
+    public Meter.Id map(Meter.Id id)
+        {
+        String applicationId = id.getTag(CallMetricsInterceptor.APPLICATION_ID_TAG);
+        if (applicationId == null || !id.getName().startsWith(metricPrefix) || CallMetricsInterceptor.NONE.equals(applicationId) || isTracked(applicationId)) {
+            return id;
+        }
+        List<Tag> tags = new ArrayList<>();
+        for (Tag tag : id.getTagsAsIterable()) {
+            tags.add(CallMetricsInterceptor.APPLICATION_ID_TAG.equals(tag.getKey()) ? Tag.of(tag.getKey(), OTHER) : tag);
+        }
+        return id.replaceTags(tags);
+        }
+
+    private boolean isTracked(String applicationId)
+        {
+        if (applicationIds.contains(applicationId)) {
+            return true;
+        }
+        //Concurrent first sightings can take the set a few entries past the limit, which is harmless
+        if (applicationIds.size() < maxApplicationIds) {
+            applicationIds.add(applicationId);
+            return true;
+        }
+        return false;
+        }
+    }
@@ -0,0 +1,26 @@
+package team.changeservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.function.SingletonSupplier;
+
+@Configuration
+public class CallMetricsConfig
+    {
+    //Static and lazy so the post processor doesn't pull the meter registry, and everything it depends on, into existence early
+    @Bean
+    static CallMetricsPostProcessor callMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry)
+        {
+        return new CallMetricsPostProcessor(SingletonSupplier.of(meterRegistry::getObject));
+        }
+
+    @Bean
+    public MeterFilter applicationIdTagLimiter(@Value("${changeservice.metrics.max-application-ids:200}") int maxApplicationIds)
+        {
+        return new ApplicationIdTagLimiter("changeservice.", maxApplicationIds);
+        }
+    }
@@ -0,0 +1,142 @@
+package team.changeservice.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.HierarchyChangeFailureRate;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+//Times every call made through the proxy it is added to and records how many results each call returned,
+//tagged with the class and method called, the exception thrown and the application the call was for
+class CallMetricsInterceptor implements MethodInterceptor
+    {
+    static final String APPLICATION_ID_TAG = "applicationId";
+    static final String NONE = "none";
+    private static final String APPLICATION_ID_PARAMETER = "applicationId";
+    private static final int NO_APPLICATION_ID = -1;
+    private static final ParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+
+    private final Supplier<MeterRegistry> meterRegistry;
+    private final String metricName;
+    private final String className;
+    private final Map<Method, Integer> applicationIdIndexes = new ConcurrentHashMap<>();
+
+    CallMetricsInterceptor(Supplier<MeterRegistry> meterRegistry, String metricName, String className)
+        {
+        this.meterRegistry = meterRegistry;
+        this.metricName = metricName;
+        this.className = className;
+        }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable
+        {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        MeterRegistry registry = meterRegistry.get();
+        Tags tags = Tags.of("class", className, "method", method.getName(), APPLICATION_ID_TAG, applicationIdOf(method, invocation.getArguments()));
+        Timer.Sample sample = Timer.start(registry);
+        String exception = NONE;
+        try {
+            return recordResultSize(registry, tags, invocation.proceed());
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(metricName)
+                    .tags(tags)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(registry));
+        }
+        }
+
+    private String applicationIdOf(Method method, Object[] arguments)
+        {
+        int index = applicationIdIndexes.computeIfAbsent(method, CallMetricsInterceptor::findApplicationIdIndex);
+        if (index != NO_APPLICATION_ID && arguments[index] instanceof String) {
+            return (String) arguments[index];
+        }
+        for (Object argument : arguments) {
+            if (argument instanceof ChangeRequest && ((ChangeRequest) argument).getApplicationId() != null) {
+                return ((ChangeRequest) argument).getApplicationId();
+            }
+        }
+        return NONE;
+        }
+
+    private static int findApplicationIdIndex(Method method)
+        {
+        String[] names = parameterNames.getParameterNames(method);
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (APPLICATION_ID_PARAMETER.equals(names[i])) {
+                    return i;
+                }
+            }
+        }
+        return NO_APPLICATION_ID;
+        }
+
+    private Object recordResultSize(MeterRegistry registry, Tags tags, Object result)
+        {
+        if (result instanceof Stream) {
+            //Streams are consumed after the call returns, so count the elements as they pass and record when the stream is closed
+            AtomicLong count = new AtomicLong();
+            return ((Stream<?>) result).peek(element -> count.incrementAndGet())
+                    .onClose(() -> resultSize(registry, tags).record(count.get()));
+        }
+        long size = sizeOf(result);
+        if (size >= 0) {
+            resultSize(registry, tags).record(size);
+        }
+        return result;
+        }
+
+    private DistributionSummary resultSize(MeterRegistry registry, Tags tags)
+        {
+        return DistributionSummary.builder(metricName + ".results")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(100_000.0)
+                .register(registry);
+        }
+
+    private static long sizeOf(Object result)
+        {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof ChangeRequestPage) {
+            return ((ChangeRequestPage) result).getChangeRequests().size();
+        }
+        if (result instanceof HierarchyChangeFailureRate) {
+            return ((HierarchyChangeFailureRate) result).getApplications().size();
+        }
+        if (result instanceof BulkStoreResult) {
+            return ((BulkStoreResult) result).getResults().size();
+        }
+        return -1;
+        }
+    }
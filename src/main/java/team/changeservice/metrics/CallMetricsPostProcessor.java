@@ -0,0 +1,52 @@
+package team.changeservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.util.ClassUtils;
+import team.changeservice.service.ChangeRequestService;
+
+import java.util.function.Supplier;
+
+//Adds a CallMetricsInterceptor to every blocking Spring Data repository and to the change request service.
+//Reactive repositories are left alone, a timer around them would only measure assembling the pipeline.
+class CallMetricsPostProcessor implements BeanPostProcessor
+    {
+    static final String SERVICE_METRIC = "changeservice.service";
+    static final String REPOSITORY_METRIC = "changeservice.repository";
+
+    private final Supplier<MeterRegistry> meterRegistry;
+
+    CallMetricsPostProcessor(Supplier<MeterRegistry> meterRegistry)
+        {
+        this.meterRegistry = meterRegistry;
+        }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName)
+        {
+        if (bean instanceof RepositoryFactoryBeanSupport) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) -> {
+                        if (!repositoryInformation.isReactiveRepository()) {
+                            proxyFactory.addAdvice(new CallMetricsInterceptor(meterRegistry, REPOSITORY_METRIC,
+                                    repositoryInformation.getRepositoryInterface().getSimpleName()));
+                        }
+                    }));
+        }
+        return bean;
+        }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName)
+        {
+        if (bean instanceof ChangeRequestService) {
+            ProxyFactory proxyFactory = new ProxyFactory(bean);
+            proxyFactory.setInterfaces(ClassUtils.getAllInterfaces(bean));
+            proxyFactory.addAdvice(new CallMetricsInterceptor(meterRegistry, SERVICE_METRIC, ClassUtils.getUserClass(bean).getSimpleName()));
+            return proxyFactory.getProxy();
+        }
+        return bean;
+        }
+    }
@@ -0,0 +1,141 @@
+package team.changeservice.metrics;
+
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//Times every command the driver sends by command name and collection, and logs the filter shape of commands slower than slowCommandThreshold
+class MongoCommandMetricsListener implements CommandListener
+    {
+    private static final Logger log = LoggerFactory.getLogger(MongoCommandMetricsListener.class);
+    static final String METRIC = "mongodb.driver.commands";
+    private static final String NONE = "none";
+    private static final BsonString PLACEHOLDER = new BsonString("?");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration slowCommandThreshold;
+    private final Map<Integer, StartedCommand> inFlight = new ConcurrentHashMap<>();
+
+    private static final class StartedCommand
+        {
+        private final String database;
+        private final String collection;
+        private final BsonDocument shape;
+
+        private StartedCommand(String database, String collection, BsonDocument shape)
+            {
+            this.database = database;
+            this.collection = collection;
+            this.shape = shape;
+            }
+        }
+
+    MongoCommandMetricsListener(MeterRegistry meterRegistry, Duration slowCommandThreshold)
+        {
+        this.meterRegistry = meterRegistry;
+        this.slowCommandThreshold = slowCommandThreshold;
+        }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event)
+        {
+        //The command document is only readable during this callback, so take what the slow command log needs now
+        BsonDocument shape = log.isWarnEnabled() ? shapeOf(event.getCommand()) : null;
+        inFlight.put(event.getRequestId(), new StartedCommand(event.getDatabaseName(), collectionOf(event), shape));
+        }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event)
+        {
+        completed(event, event.getElapsedTime(TimeUnit.NANOSECONDS), "SUCCESS");
+        }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event)
+        {
+        completed(event, event.getElapsedTime(TimeUnit.NANOSECONDS), "FAILED");
+        }
+
+    private void completed(CommandEvent event, long elapsedNanos, String status)
+        {
+        StartedCommand started = inFlight.remove(event.getRequestId());
+        String collection = started == null ? NONE : started.collection;
+        Timer.builder(METRIC)
+                .tag("command", event.getCommandName())
+                .tag("collection", collection)
+                .tag("status", status)
+                .tag("server.address", event.getConnectionDescription().getServerAddress().toString())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        if (started != null && started.shape != null && elapsedNanos >= slowCommandThreshold.toNanos()) {
+            log.warn("Slow mongo command {} on {}.{} took {}ms ({}), shape {}", event.getCommandName(), started.database, collection,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), status, started.shape.toJson());
+        }
+        }
+
+    //Most commands name their collection as the value of the command itself, getMore names it separately
+    static String collectionOf(CommandStartedEvent event)
+        {
+        BsonDocument command = event.getCommand();
+        BsonValue collection = command.get("getMore".equals(event.getCommandName()) ? "collection" : event.getCommandName());
+        return collection != null && collection.isString() ? collection.asString().getValue() : NONE;
+        }
+
+    //The parts of a command that decide which index is used, with every filter value replaced by ? so no data ends up in the log
+    static BsonDocument shapeOf(BsonDocument command)
+        {
+        BsonDocument shape = new BsonDocument();
+        for (String key : new String[]{"filter", "query", "q", "pipeline"}) {
+            if (command.containsKey(key)) {
+                shape.put(key, redact(command.get(key)));
+            }
+        }
+        for (String key : new String[]{"sort", "projection", "hint"}) {
+            if (command.containsKey(key)) {
+                BsonValue value = command.get(key);
+                shape.put(key, value.isDocument() ? value.asDocument().clone() : value);
+            }
+        }
+        for (String key : new String[]{"updates", "deletes"}) {
+            if (command.isArray(key) && !command.getArray(key).isEmpty() && command.getArray(key).get(0).isDocument()) {
+                shape.put(key, shapeOf(command.getArray(key).get(0).asDocument()));
+            }
+        }
+        return shape;
+        }
+
+    private static BsonValue redact(BsonValue value)
+        {
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, child) -> redacted.put(key, redact(child)));
+            return redacted;
+        }
+        //Arrays of sub-expressions ($or, $and, pipelines) keep their structure, arrays of values ($in) collapse to a single ?
+        if (value.isArray() && !value.asArray().isEmpty() && value.asArray().get(0).isDocument()) {
+            BsonArray redacted = new BsonArray();
+            value.asArray().forEach(child -> redacted.add(redact(child)));
+            return redacted;
+        }
+        return PLACEHOLDER;
+        }
+    }
@@ -0,0 +1,25 @@
+package team.changeservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class MongoMetricsConfig
+    {
+    //Applied to both the blocking and the reactive Mongo clients
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoMetricsCustomizer(MeterRegistry meterRegistry,
+                                                                      @Value("${changeservice.mongo.slow-command-threshold:500ms}") Duration slowCommandThreshold)
+        {
+        MongoCommandMetricsListener commandListener = new MongoCommandMetricsListener(meterRegistry, slowCommandThreshold);
+        MongoPoolMetricsListener poolListener = new MongoPoolMetricsListener(meterRegistry);
+        return settings -> settings
+                .addCommandListener(commandListener)
+                .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(poolListener));
+        }
+    }
@@ -0,0 +1,156 @@
+package team.changeservice.metrics;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+//Publishes the size, checked out count and wait queue length of every connection pool the driver opens,
+//and times how long callers wait to check a connection out
+class MongoPoolMetricsListener implements ConnectionPoolListener
+    {
+    static final String METRIC_PREFIX = "mongodb.driver.pool.";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<ServerId, Pool> pools = new ConcurrentHashMap<>();
+
+    private final class Pool
+        {
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger checkedOut = new AtomicInteger();
+        private final AtomicInteger waitQueueSize = new AtomicInteger();
+        //When each waiting checkout started, oldest first. The 4.1 driver's checkout started event carries neither a connection nor an
+        //operation id, and the reactive driver finishes checkouts on other threads than it starts them, so each finished checkout is
+        //matched to the oldest one waiting. The pool hands connections to waiters in turn, and whatever the order, the total and mean
+        //wait come out exact.
+        private final Queue<Long> checkOutStarts = new ConcurrentLinkedQueue<>();
+        private final List<Meter> meters = new ArrayList<>();
+        private final Timer waitTime;
+
+        private Pool(ServerId serverId)
+            {
+            Tags tags = Tags.of("cluster.id", serverId.getClusterId().getValue(), "server.address", serverId.getAddress().toString());
+            meters.add(Gauge.builder(METRIC_PREFIX + "size", size, AtomicInteger::get)
+                    .description("The number of connections currently in the pool")
+                    .tags(tags).register(meterRegistry));
+            meters.add(Gauge.builder(METRIC_PREFIX + "checkedout", checkedOut, AtomicInteger::get)
+                    .description("The number of connections currently in use")
+                    .tags(tags).register(meterRegistry));
+            meters.add(Gauge.builder(METRIC_PREFIX + "waitqueuesize", waitQueueSize, AtomicInteger::get)
+                    .description("The number of callers waiting for a connection")
+                    .tags(tags).register(meterRegistry));
+            waitTime = Timer.builder(METRIC_PREFIX + "wait")
+                    .description("Time spent waiting to check a connection out of the pool")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(meterRegistry);
+            meters.add(waitTime);
+            }
+        }
+
+    MongoPoolMetricsListener(MeterRegistry meterRegistry)
+        {
+        this.meterRegistry = meterRegistry;
+        }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event)
+        {
+        pools.computeIfAbsent(event.getServerId(), Pool::new);
+        }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event)
+        {
+        Pool pool = pools.remove(event.getServerId());
+        if (pool != null) {
+            pool.meters.forEach(meterRegistry::remove);
+        }
+        }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event)
+        {
+        withPool(event.getConnectionId().getServerId(), pool -> pool.size.incrementAndGet());
+        }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event)
+        {
+        withPool(event.getConnectionId().getServerId(), pool -> pool.size.decrementAndGet());
+        }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event)
+        {
+        withPool(event.getServerId(), pool -> {
+            pool.checkOutStarts.add(System.nanoTime());
+            pool.waitQueueSize.incrementAndGet();
+        });
+        }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event)
+        {
+        withPool(event.getConnectionId().getServerId(), pool -> {
+            pool.waitQueueSize.decrementAndGet();
+            pool.checkedOut.incrementAndGet();
+            recordWait(pool);
+        });
+        }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event)
+        {
+        withPool(event.getServerId(), pool -> {
+            pool.waitQueueSize.decrementAndGet();
+            recordWait(pool);
+        });
+        }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event)
+        {
+        withPool(event.getConnectionId().getServerId(), pool -> pool.checkedOut.decrementAndGet());
+        }
+
+    private void recordWait(Pool pool)
+        {
+        Long started = pool.checkOutStarts.poll();
+        if (started != null) {
+            pool.waitTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        }
+
+    private void withPool(ServerId serverId, Consumer<Pool> action)
+        {
+        Pool pool = pools.get(serverId);
+        if (pool != null) {
+            action.accept(pool);
+        }
+        }
+    }
@@ -0,0 +1,66 @@
+package team.changeservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.Objects;
+
+//Counts the writes that have changed an application's change requests, so readers can tell whether anything is new without reading them
+@Document(collection = "applicationVersion")
+public class ApplicationVersion
+    {
+    @Id
+    private final String applicationId;
+    private final long version;
+    private final Date lastModified;
+
+    public ApplicationVersion(String applicationId, long version, Date lastModified)
+        {
+        this.applicationId = applicationId;
+        this.version = version;
+        this.lastModified = lastModified;
+        }
+
+    public String getApplicationId()
+        {
+        return applicationId;
+        }
+
+    public long getVersion()
+        {
+        return version;
+        }
+
+    public Date getLastModified()
+        {
+        return lastModified;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ApplicationVersion that = (ApplicationVersion) o;
+        return version == that.version &&
+                Objects.equals(applicationId, that.applicationId) &&
+                Objects.equals(lastModified, that.lastModified);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(applicationId, version, lastModified);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ApplicationVersion{" +
+                "applicationId='" + applicationId + '\'' +
+                ", version=" + version +
+                ", lastModified=" + lastModified +
+                '}';
+        }
+    }
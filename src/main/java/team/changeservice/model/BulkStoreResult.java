@@ -0,0 +1,83 @@
+package team.changeservice.model;
+
+import java.util.List;
+import java.util.Objects;
+
+public class BulkStoreResult
+    {
+    private final Integer inserted;
+    private final Integer replaced;
+    private final Integer unchanged;
+    private final Integer failed;
+    private final List<ChangeRequestWriteResult> results;
+
+    public BulkStoreResult(List<ChangeRequestWriteResult> results)
+        {
+        this.inserted = count(results, WriteStatus.INSERTED);
+        this.replaced = count(results, WriteStatus.REPLACED);
+        this.unchanged = count(results, WriteStatus.UNCHANGED);
+        this.failed = count(results, WriteStatus.FAILED);
+        this.results = results;
+        }
+
+    private static Integer count(List<ChangeRequestWriteResult> results, WriteStatus status)
+        {
+        return (int) results.stream().filter(r -> r.getStatus() == status).count();
+        }
+
+    public Integer getInserted()
+        {
+        return inserted;
+        }
+
+    public Integer getReplaced()
+        {
+        return replaced;
+        }
+
+    public Integer getUnchanged()
+        {
+        return unchanged;
+        }
+
+    public Integer getFailed()
+        {
+        return failed;
+        }
+
+    public List<ChangeRequestWriteResult> getResults()
+        {
+        return results;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BulkStoreResult that = (BulkStoreResult) o;
+        return Objects.equals(inserted, that.inserted) &&
+                Objects.equals(replaced, that.replaced) &&
+                Objects.equals(unchanged, that.unchanged) &&
+                Objects.equals(failed, that.failed) &&
+                Objects.equals(results, that.results);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(inserted, replaced, unchanged, failed, results);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "BulkStoreResult{" +
+                "inserted=" + inserted +
+                ", replaced=" + replaced +
+                ", unchanged=" + unchanged +
+                ", failed=" + failed +
+                ", results=" + results +
+                '}';
+        }
+    }
@@ -0,0 +1,62 @@
+package team.changeservice.model;
+
+import org.springframework.data.annotation.Id;
+
+import java.util.Objects;
+
+public class ChangeCounts
+    {
+    @Id
+    private final String applicationId;
+    private final int total;
+    private final int failed;
+
+    public ChangeCounts(String applicationId, int total, int failed)
+        {
+        this.applicationId = applicationId;
+        this.total = total;
+        this.failed = failed;
+        }
+
+    public String getApplicationId()
+        {
+        return applicationId;
+        }
+
+    public int getTotal()
+        {
+        return total;
+        }
+
+    public int getFailed()
+        {
+        return failed;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeCounts that = (ChangeCounts) o;
+        return total == that.total &&
+                failed == that.failed &&
+                Objects.equals(applicationId, that.applicationId);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(applicationId, total, failed);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeCounts{" +
+                "applicationId='" + applicationId + '\'' +
+                ", total=" + total +
+                ", failed=" + failed +
+                '}';
+        }
+    }
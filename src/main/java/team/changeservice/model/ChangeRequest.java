@@ -1,12 +1,17 @@
 package team.changeservice.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.util.Date;
 import java.util.Objects;
 
+@Document(collection = "changeRequest")
+@CompoundIndex(name = "applicationId_closed_id", def = "{'applicationId': 1, 'closed': 1, '_id': 1}")
+@CompoundIndex(name = "closed_id", def = "{'closed': 1, '_id': 1}")
 public class ChangeRequest
     {
     @Id
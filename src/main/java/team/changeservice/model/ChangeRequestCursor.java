@@ -0,0 +1,82 @@
+package team.changeservice.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+public class ChangeRequestCursor
+    {
+    private final Date closed;
+    private final String changeRequestId;
+
+    public ChangeRequestCursor(Date closed, String changeRequestId)
+        {
+        this.closed = closed;
+        this.changeRequestId = changeRequestId;
+        }
+
+    public static ChangeRequestCursor after(ChangeRequest changeRequest)
+        {
+        return new ChangeRequestCursor(changeRequest.getClosed(), changeRequest.getChangeRequestId());
+        }
+
+    // Opaque to clients: base64url of "<closed epoch millis>:<changeRequestId>"
+    public static ChangeRequestCursor decode(String cursor)
+        {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            if (separator < 1 || separator == decoded.length() - 1) {
+                throw new InvalidCursorException(cursor);
+            }
+            return new ChangeRequestCursor(new Date(Long.parseLong(decoded.substring(0, separator))), decoded.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(cursor);
+        }
+        }
+
+    public String encode()
+        {
+        String raw = closed.getTime() + ":" + changeRequestId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+    public Date getClosed()
+        {
+        return closed;
+        }
+
+    public String getChangeRequestId()
+        {
+        return changeRequestId;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestCursor that = (ChangeRequestCursor) o;
+        return Objects.equals(closed, that.closed) &&
+                Objects.equals(changeRequestId, that.changeRequestId);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(closed, changeRequestId);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestCursor{" +
+                "closed=" + closed +
+                ", changeRequestId='" + changeRequestId + '\'' +
+                '}';
+        }
+    }
@@ -0,0 +1,41 @@
+package team.changeservice.model;
+
+import java.util.Objects;
+
+public class ChangeRequestDeleteResult
+    {
+    private final Long deleted;
+
+    public ChangeRequestDeleteResult(Long deleted)
+        {
+        this.deleted = deleted;
+        }
+
+    public Long getDeleted()
+        {
+        return deleted;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestDeleteResult that = (ChangeRequestDeleteResult) o;
+        return Objects.equals(deleted, that.deleted);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(deleted);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestDeleteResult{" +
+                "deleted=" + deleted +
+                '}';
+        }
+    }
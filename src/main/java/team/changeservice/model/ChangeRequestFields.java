@@ -0,0 +1,75 @@
+package team.changeservice.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+public class ChangeRequestFields
+    {
+    static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(
+            "changeRequestId", "description", "applicationId", "created", "started", "finished", "closed", "failed", "source"));
+    // Pages are keyed on these, so they are fetched whatever was asked for
+    private static final List<String> REQUIRED = Arrays.asList("changeRequestId", "closed");
+
+    public static final ChangeRequestFields ALL = new ChangeRequestFields(new LinkedHashSet<>(NAMES));
+
+    private final Set<String> names;
+
+    private ChangeRequestFields(Set<String> names)
+        {
+        this.names = Collections.unmodifiableSet(names);
+        }
+
+    // A comma separated list of field names, null or empty for every field
+    public static ChangeRequestFields parse(String fields)
+        {
+        if (fields == null || fields.trim().isEmpty()) {
+            return ALL;
+        }
+        Set<String> requested = new LinkedHashSet<>(REQUIRED);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!NAMES.contains(name)) {
+                throw new InvalidFieldsException(name);
+            }
+            requested.add(name);
+        }
+        return requested.size() == NAMES.size() ? ALL : new ChangeRequestFields(requested);
+        }
+
+    public boolean isAll()
+        {
+        return names.size() == NAMES.size();
+        }
+
+    public Set<String> getNames()
+        {
+        return names;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestFields that = (ChangeRequestFields) o;
+        return Objects.equals(names, that.names);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(names);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestFields{" +
+                "names=" + names +
+                '}';
+        }
+    }
@@ -0,0 +1,91 @@
+package team.changeservice.model;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+
+//Selects change requests by id, or by application, source and a closed date range. Null criteria match everything.
+public class ChangeRequestFilter
+    {
+    private final Collection<String> changeRequestIds;
+    private final String applicationId;
+    private final String source;
+    private final Date closedFrom;
+    private final Date closedTo;
+
+    private ChangeRequestFilter(Collection<String> changeRequestIds, String applicationId, String source, Date closedFrom, Date closedTo)
+        {
+        this.changeRequestIds = changeRequestIds;
+        this.applicationId = applicationId;
+        this.source = source;
+        this.closedFrom = closedFrom;
+        this.closedTo = closedTo;
+        }
+
+    public static ChangeRequestFilter ofIds(Collection<String> changeRequestIds)
+        {
+        return new ChangeRequestFilter(changeRequestIds, null, null, null, null);
+        }
+
+    //closedFrom is inclusive and closedTo exclusive
+    public static ChangeRequestFilter of(String applicationId, String source, Date closedFrom, Date closedTo)
+        {
+        return new ChangeRequestFilter(null, applicationId, source, closedFrom, closedTo);
+        }
+
+    public Collection<String> getChangeRequestIds()
+        {
+        return changeRequestIds;
+        }
+
+    public String getApplicationId()
+        {
+        return applicationId;
+        }
+
+    public String getSource()
+        {
+        return source;
+        }
+
+    public Date getClosedFrom()
+        {
+        return closedFrom;
+        }
+
+    public Date getClosedTo()
+        {
+        return closedTo;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestFilter that = (ChangeRequestFilter) o;
+        return Objects.equals(changeRequestIds, that.changeRequestIds) &&
+                Objects.equals(applicationId, that.applicationId) &&
+                Objects.equals(source, that.source) &&
+                Objects.equals(closedFrom, that.closedFrom) &&
+                Objects.equals(closedTo, that.closedTo);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(changeRequestIds, applicationId, source, closedFrom, closedTo);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestFilter{" +
+                "changeRequestIds=" + changeRequestIds +
+                ", applicationId='" + applicationId + '\'' +
+                ", source='" + source + '\'' +
+                ", closedFrom=" + closedFrom +
+                ", closedTo=" + closedTo +
+                '}';
+        }
+    }
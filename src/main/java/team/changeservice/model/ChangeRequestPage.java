@@ -0,0 +1,56 @@
+package team.changeservice.model;
+
+import java.util.List;
+import java.util.Objects;
+
+public class ChangeRequestPage
+    {
+    private final List<ChangeRequest> changeRequests;
+    private final ChangeRequestCursor next;
+
+    public ChangeRequestPage(List<ChangeRequest> changeRequests, ChangeRequestCursor next)
+        {
+        this.changeRequests = changeRequests;
+        this.next = next;
+        }
+
+    public List<ChangeRequest> getChangeRequests()
+        {
+        return changeRequests;
+        }
+
+    public ChangeRequestCursor getNext()
+        {
+        return next;
+        }
+
+    public boolean hasNext()
+        {
+        return next != null;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestPage that = (ChangeRequestPage) o;
+        return Objects.equals(changeRequests, that.changeRequests) &&
+                Objects.equals(next, that.next);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(changeRequests, next);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestPage{" +
+                "changeRequests=" + changeRequests +
+                ", next=" + next +
+                '}';
+        }
+    }
@@ -0,0 +1,130 @@
+package team.changeservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+public class ChangeRequestState
+    {
+    @Id
+    private final String changeRequestId;
+    private final String applicationId;
+    private final Date closed;
+    private final Boolean failed;
+    private final String contentHash;
+
+    public ChangeRequestState(String changeRequestId, String applicationId, Date closed, Boolean failed)
+        {
+        this(changeRequestId, applicationId, closed, failed, null);
+        }
+
+    @PersistenceConstructor
+    public ChangeRequestState(String changeRequestId, String applicationId, Date closed, Boolean failed, String contentHash)
+        {
+        this.changeRequestId = changeRequestId;
+        this.applicationId = applicationId;
+        this.closed = closed;
+        this.failed = failed;
+        this.contentHash = contentHash;
+        }
+
+    public static ChangeRequestState of(ChangeRequest changeRequest)
+        {
+        return new ChangeRequestState(changeRequest.getChangeRequestId(), changeRequest.getApplicationId(), changeRequest.getClosed(), changeRequest.getFailed(),
+                contentHashOf(changeRequest));
+        }
+
+    //SHA-256 of every field, stored next to the change request so a resend of an identical payload can be spotted without reading it back.
+    //Each value is length prefixed so neighbouring fields can't run into each other, null is distinct from empty.
+    public static String contentHashOf(ChangeRequest changeRequest)
+        {
+        StringBuilder content = new StringBuilder();
+        append(content, changeRequest.getChangeRequestId());
+        append(content, changeRequest.getDescription());
+        append(content, changeRequest.getApplicationId());
+        append(content, changeRequest.getCreated());
+        append(content, changeRequest.getStarted());
+        append(content, changeRequest.getFinished());
+        append(content, changeRequest.getClosed());
+        append(content, changeRequest.getFailed());
+        append(content, changeRequest.getSource());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        }
+
+    private static void append(StringBuilder content, Object value)
+        {
+        if (value == null) {
+            content.append('-');
+            return;
+        }
+        String text = value instanceof Date ? String.valueOf(((Date) value).getTime()) : value.toString();
+        content.append(text.length()).append(':').append(text);
+        }
+
+    public String getChangeRequestId()
+        {
+        return changeRequestId;
+        }
+
+    public String getApplicationId()
+        {
+        return applicationId;
+        }
+
+    public Date getClosed()
+        {
+        return closed;
+        }
+
+    public Boolean getFailed()
+        {
+        return failed;
+        }
+
+    public String getContentHash()
+        {
+        return contentHash;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestState that = (ChangeRequestState) o;
+        return Objects.equals(changeRequestId, that.changeRequestId) &&
+                Objects.equals(applicationId, that.applicationId) &&
+                Objects.equals(closed, that.closed) &&
+                Objects.equals(failed, that.failed) &&
+                Objects.equals(contentHash, that.contentHash);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(changeRequestId, applicationId, closed, failed, contentHash);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestState{" +
+                "changeRequestId='" + changeRequestId + '\'' +
+                ", applicationId='" + applicationId + '\'' +
+                ", closed=" + closed +
+                ", failed=" + failed +
+                ", contentHash='" + contentHash + '\'' +
+                '}';
+        }
+    }
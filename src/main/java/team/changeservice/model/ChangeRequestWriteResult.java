@@ -0,0 +1,59 @@
+package team.changeservice.model;
+
+import java.util.Objects;
+
+public class ChangeRequestWriteResult
+    {
+    private final String changeRequestId;
+    private final WriteStatus status;
+    private final String error;
+
+    public ChangeRequestWriteResult(String changeRequestId, WriteStatus status, String error)
+        {
+        this.changeRequestId = changeRequestId;
+        this.status = status;
+        this.error = error;
+        }
+
+    public String getChangeRequestId()
+        {
+        return changeRequestId;
+        }
+
+    public WriteStatus getStatus()
+        {
+        return status;
+        }
+
+    public String getError()
+        {
+        return error;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeRequestWriteResult that = (ChangeRequestWriteResult) o;
+        return Objects.equals(changeRequestId, that.changeRequestId) &&
+                status == that.status &&
+                Objects.equals(error, that.error);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(changeRequestId, status, error);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ChangeRequestWriteResult{" +
+                "changeRequestId='" + changeRequestId + '\'' +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                '}';
+        }
+    }
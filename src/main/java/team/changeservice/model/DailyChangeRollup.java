@@ -0,0 +1,97 @@
+package team.changeservice.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Objects;
+
+@Document(collection = "dailyChangeRollup")
+@CompoundIndex(name = "applicationId_day", def = "{'applicationId': 1, 'day': 1}")
+public class DailyChangeRollup
+    {
+    @Id
+    private final String id;
+    private final String applicationId;
+    private final Date day;
+    private final int total;
+    private final int failed;
+
+    public DailyChangeRollup(String id, String applicationId, Date day, int total, int failed)
+        {
+        this.id = id;
+        this.applicationId = applicationId;
+        this.day = day;
+        this.total = total;
+        this.failed = failed;
+        }
+
+    public static Date dayOf(Date date)
+        {
+        return Date.from(date.toInstant().truncatedTo(ChronoUnit.DAYS));
+        }
+
+    public static String idOf(String applicationId, Date day)
+        {
+        return applicationId + "|" + day.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+        }
+
+    public String getId()
+        {
+        return id;
+        }
+
+    public String getApplicationId()
+        {
+        return applicationId;
+        }
+
+    public Date getDay()
+        {
+        return day;
+        }
+
+    public int getTotal()
+        {
+        return total;
+        }
+
+    public int getFailed()
+        {
+        return failed;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DailyChangeRollup that = (DailyChangeRollup) o;
+        return total == that.total &&
+                failed == that.failed &&
+                Objects.equals(id, that.id) &&
+                Objects.equals(applicationId, that.applicationId) &&
+                Objects.equals(day, that.day);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(id, applicationId, day, total, failed);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "DailyChangeRollup{" +
+                "id='" + id + '\'' +
+                ", applicationId='" + applicationId + '\'' +
+                ", day=" + day +
+                ", total=" + total +
+                ", failed=" + failed +
+                '}';
+        }
+    }
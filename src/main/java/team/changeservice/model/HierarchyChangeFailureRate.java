@@ -0,0 +1,67 @@
+package team.changeservice.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+public class HierarchyChangeFailureRate
+    {
+    private final ChangeFailureRate hierarchy;
+    private final List<ChangeFailureRate> applications;
+    private final List<String> timedOut;
+
+    public HierarchyChangeFailureRate(ChangeFailureRate hierarchy, List<ChangeFailureRate> applications)
+        {
+        this(hierarchy, applications, Collections.emptyList());
+        }
+
+    public HierarchyChangeFailureRate(ChangeFailureRate hierarchy, List<ChangeFailureRate> applications, List<String> timedOut)
+        {
+        this.hierarchy = hierarchy;
+        this.applications = applications;
+        this.timedOut = timedOut;
+        }
+
+    public ChangeFailureRate getHierarchy()
+        {
+        return hierarchy;
+        }
+
+    public List<ChangeFailureRate> getApplications()
+        {
+        return applications;
+        }
+
+    //Applications whose changes weren't summed within the time budget, they are missing from applications and the hierarchy totals
+    public List<String> getTimedOut()
+        {
+        return timedOut;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HierarchyChangeFailureRate that = (HierarchyChangeFailureRate) o;
+        return Objects.equals(hierarchy, that.hierarchy) &&
+                Objects.equals(applications, that.applications) &&
+                Objects.equals(timedOut, that.timedOut);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(hierarchy, applications, timedOut);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "HierarchyChangeFailureRate{" +
+                "hierarchy=" + hierarchy +
+                ", applications=" + applications +
+                ", timedOut=" + timedOut +
+                '}';
+        }
+    }
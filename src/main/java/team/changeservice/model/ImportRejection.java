@@ -0,0 +1,59 @@
+package team.changeservice.model;
+
+import java.util.Objects;
+
+public class ImportRejection
+    {
+    private final Long line;
+    private final String changeRequestId;
+    private final String error;
+
+    public ImportRejection(Long line, String changeRequestId, String error)
+        {
+        this.line = line;
+        this.changeRequestId = changeRequestId;
+        this.error = error;
+        }
+
+    public Long getLine()
+        {
+        return line;
+        }
+
+    public String getChangeRequestId()
+        {
+        return changeRequestId;
+        }
+
+    public String getError()
+        {
+        return error;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ImportRejection that = (ImportRejection) o;
+        return Objects.equals(line, that.line) &&
+                Objects.equals(changeRequestId, that.changeRequestId) &&
+                Objects.equals(error, that.error);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(line, changeRequestId, error);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ImportRejection{" +
+                "line=" + line +
+                ", changeRequestId='" + changeRequestId + '\'' +
+                ", error='" + error + '\'' +
+                '}';
+        }
+    }
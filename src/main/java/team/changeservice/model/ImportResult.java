@@ -0,0 +1,114 @@
+package team.changeservice.model;
+
+import java.util.List;
+import java.util.Objects;
+
+public class ImportResult
+    {
+    private final Long read;
+    private final Long inserted;
+    private final Long replaced;
+    private final Long unchanged;
+    private final Long failed;
+    private final Long rejected;
+    private final Long durationMillis;
+    private final Long changeRequestsPerSecond;
+    private final List<ImportRejection> rejections;
+
+    public ImportResult(Long read, Long inserted, Long replaced, Long unchanged, Long failed, Long rejected, Long durationMillis, List<ImportRejection> rejections)
+        {
+        this.read = read;
+        this.inserted = inserted;
+        this.replaced = replaced;
+        this.unchanged = unchanged;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.durationMillis = durationMillis;
+        this.changeRequestsPerSecond = read * 1000 / Math.max(1, durationMillis);
+        this.rejections = rejections;
+        }
+
+    public Long getRead()
+        {
+        return read;
+        }
+
+    public Long getInserted()
+        {
+        return inserted;
+        }
+
+    public Long getReplaced()
+        {
+        return replaced;
+        }
+
+    public Long getUnchanged()
+        {
+        return unchanged;
+        }
+
+    public Long getFailed()
+        {
+        return failed;
+        }
+
+    public Long getRejected()
+        {
+        return rejected;
+        }
+
+    public Long getDurationMillis()
+        {
+        return durationMillis;
+        }
+
+    public Long getChangeRequestsPerSecond()
+        {
+        return changeRequestsPerSecond;
+        }
+
+    public List<ImportRejection> getRejections()
+        {
+        return rejections;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ImportResult that = (ImportResult) o;
+        return Objects.equals(read, that.read) &&
+                Objects.equals(inserted, that.inserted) &&
+                Objects.equals(replaced, that.replaced) &&
+                Objects.equals(unchanged, that.unchanged) &&
+                Objects.equals(failed, that.failed) &&
+                Objects.equals(rejected, that.rejected) &&
+                Objects.equals(durationMillis, that.durationMillis) &&
+                Objects.equals(changeRequestsPerSecond, that.changeRequestsPerSecond) &&
+                Objects.equals(rejections, that.rejections);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(read, inserted, replaced, unchanged, failed, rejected, durationMillis, changeRequestsPerSecond, rejections);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "ImportResult{" +
+                "read=" + read +
+                ", inserted=" + inserted +
+                ", replaced=" + replaced +
+                ", unchanged=" + unchanged +
+                ", failed=" + failed +
+                ", rejected=" + rejected +
+                ", durationMillis=" + durationMillis +
+                ", changeRequestsPerSecond=" + changeRequestsPerSecond +
+                ", rejections=" + rejections +
+                '}';
+        }
+    }
@@ -0,0 +1,7 @@
+package team.changeservice.model;
+
+public enum IngestStatus
+    {
+        QUEUED,
+        COMPLETED;
+    }
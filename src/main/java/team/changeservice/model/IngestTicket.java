@@ -0,0 +1,96 @@
+package team.changeservice.model;
+
+import java.util.Date;
+import java.util.Objects;
+
+public class IngestTicket
+    {
+    private final String ticketId;
+    private final IngestStatus status;
+    private final Integer size;
+    private final Integer written;
+    private final Date submitted;
+    private final Date completed;
+    private final BulkStoreResult result;
+
+    public IngestTicket(String ticketId, IngestStatus status, Integer size, Integer written, Date submitted, Date completed, BulkStoreResult result)
+        {
+        this.ticketId = ticketId;
+        this.status = status;
+        this.size = size;
+        this.written = written;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.result = result;
+        }
+
+    public String getTicketId()
+        {
+        return ticketId;
+        }
+
+    public IngestStatus getStatus()
+        {
+        return status;
+        }
+
+    public Integer getSize()
+        {
+        return size;
+        }
+
+    public Integer getWritten()
+        {
+        return written;
+        }
+
+    public Date getSubmitted()
+        {
+        return submitted;
+        }
+
+    public Date getCompleted()
+        {
+        return completed;
+        }
+
+    public BulkStoreResult getResult()
+        {
+        return result;
+        }
+
+    @Override
+    public boolean equals(Object o)
+        {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IngestTicket that = (IngestTicket) o;
+        return Objects.equals(ticketId, that.ticketId) &&
+                status == that.status &&
+                Objects.equals(size, that.size) &&
+                Objects.equals(written, that.written) &&
+                Objects.equals(submitted, that.submitted) &&
+                Objects.equals(completed, that.completed) &&
+                Objects.equals(result, that.result);
+        }
+
+    @Override
+    public int hashCode()
+        {
+        return Objects.hash(ticketId, status, size, written, submitted, completed, result);
+        }
+
+    @Override
+    public String toString()
+        {
+        return "IngestTicket{" +
+                "ticketId='" + ticketId + '\'' +
+                ", status=" + status +
+                ", size=" + size +
+                ", written=" + written +
+                ", submitted=" + submitted +
+                ", completed=" + completed +
+                ", result=" + result +
+                '}';
+        }
+    }
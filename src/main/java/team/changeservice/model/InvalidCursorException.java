@@ -0,0 +1,9 @@
+package team.changeservice.model;
+
+public class InvalidCursorException extends IllegalArgumentException
+    {
+    public InvalidCursorException(String cursor)
+        {
+        super("Invalid page cursor: " + cursor);
+        }
+    }
@@ -0,0 +1,9 @@
+package team.changeservice.model;
+
+public class InvalidFieldsException extends IllegalArgumentException
+    {
+    public InvalidFieldsException(String field)
+        {
+        super("Unknown change request field: " + field + ", expected any of " + String.join(",", ChangeRequestFields.NAMES));
+        }
+    }
@@ -0,0 +1,9 @@
+package team.changeservice.model;
+
+public enum WriteStatus
+    {
+        INSERTED,
+        REPLACED,
+        UNCHANGED,
+        FAILED;
+    }
@@ -0,0 +1,12 @@
+package team.changeservice.repo;
+
+import java.util.Collection;
+
+public interface ApplicationVersionRepoCustom
+    {
+        //Moves each application on to a new version last modified now, by the database clock so every instance agrees
+        void bump(Collection<String> applicationIds);
+
+        //Every application with a version or with daily rollups, returning how many were moved on
+        long bumpAll();
+    }
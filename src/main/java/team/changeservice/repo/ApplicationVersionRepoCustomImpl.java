@@ -0,0 +1,54 @@
+package team.changeservice.repo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import team.changeservice.model.ApplicationVersion;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ApplicationVersionRepoCustomImpl implements ApplicationVersionRepoCustom
+    {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ApplicationVersionRepoCustomImpl(MongoTemplate mongoTemplate)
+        {
+        this.mongoTemplate = mongoTemplate;
+        }
+
+    @Override
+    public void bump(Collection<String> applicationIds)
+        {
+        if (applicationIds.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ApplicationVersion.class);
+        applicationIds.forEach(applicationId -> bulkOps.upsert(new Query(where("applicationId").is(applicationId)), nextVersion()));
+        bulkOps.execute();
+        }
+
+    //An application that has rollups but was never bumped still answers with version 0, so it is given a version too, or a client
+    //holding a change failure rate worked out before the rebuild would keep being told it hasn't changed
+    @Override
+    public long bumpAll()
+        {
+        long bumped = mongoTemplate.updateMulti(new Query(), nextVersion(), ApplicationVersion.class).getModifiedCount();
+        Set<String> unversioned = new LinkedHashSet<>(mongoTemplate.findDistinct(new Query(), "applicationId", DailyChangeRollup.class, String.class));
+        unversioned.removeAll(mongoTemplate.findDistinct(new Query(), "applicationId", ApplicationVersion.class, String.class));
+        bump(unversioned);
+        return bumped + unversioned.size();
+        }
+
+    private static Update nextVersion()
+        {
+        return new Update().inc("version", 1).currentDate("lastModified");
+        }
+    }
@@ -0,0 +1,31 @@
+package team.changeservice.repo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "changerequestindexes")
+public class ChangeRequestIndexEndpoint
+    {
+    private final ChangeRequestIndexManager indexManager;
+
+    @Autowired
+    public ChangeRequestIndexEndpoint(ChangeRequestIndexManager indexManager)
+        {
+        this.indexManager = indexManager;
+        }
+
+    @ReadOperation
+    public Map<String, Object> indexes()
+        {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("indexes", indexManager.indexReport());
+        map.put("queries", indexManager.queryPlanReport());
+        return map;
+        }
+    }
@@ -0,0 +1,230 @@
+package team.changeservice.repo;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestCursor;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Component
+public class ChangeRequestIndexManager
+    {
+    private static final Logger log = LoggerFactory.getLogger(ChangeRequestIndexManager.class);
+    private static final List<Class<?>> INDEXED_TYPES = Arrays.asList(ChangeRequest.class, DailyChangeRollup.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ChangeRequestIndexManager(MongoTemplate mongoTemplate)
+        {
+        this.mongoTemplate = mongoTemplate;
+        }
+
+    //Called by ChangeRequestStorageManager at startup, once the stored layout matches the mapping
+    public void ensureIndexes()
+        {
+        indexedCollections().forEach(this::ensureIndexes);
+        }
+
+    //The archive takes the same indexes as the change request collection, it is created by the first archival run
+    public void ensureArchiveIndexes()
+        {
+        ensureIndexes(ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION, ChangeRequest.class);
+        }
+
+    private void ensureIndexes(String collection, Class<?> type)
+        {
+        IndexOperations indexOps = mongoTemplate.indexOps(collection);
+        Map<String, Document> existing = existingIndexKeys(collection);
+        for (IndexDefinition index : declaredIndexes(type)) {
+            Document keys = existing.get(nameOf(index));
+            //Mongo refuses to redefine an index under the same name, the old one keeps serving until the storage migration replaces it
+            if (keys != null && !sameKeys(keys, index.getIndexKeys())) {
+                log.warn("Index {} on {} is on {} rather than {}, run the changerequeststorage migration to rebuild it", nameOf(index),
+                        collection, keys.toJson(), index.getIndexKeys().toJson());
+                continue;
+            }
+            log.info("Ensuring index {} on {}", index.getIndexKeys(), collection);
+            indexOps.ensureIndex(index);
+        }
+        }
+
+    //Drops declared indexes whose keys have changed, e.g. after the stored field names were shortened, and builds them again
+    public List<String> rebuildChangedIndexes()
+        {
+        List<String> rebuilt = new ArrayList<>();
+        indexedCollections().forEach((collection, type) -> {
+            IndexOperations indexOps = mongoTemplate.indexOps(collection);
+            Map<String, Document> existing = existingIndexKeys(collection);
+            for (IndexDefinition index : declaredIndexes(type)) {
+                Document keys = existing.get(nameOf(index));
+                if (keys != null && !sameKeys(keys, index.getIndexKeys())) {
+                    log.info("Rebuilding index {} on {} as {}", nameOf(index), collection, index.getIndexKeys());
+                    indexOps.dropIndex(nameOf(index));
+                    indexOps.ensureIndex(index);
+                    rebuilt.add(nameOf(index));
+                }
+            }
+        });
+        return rebuilt;
+        }
+
+    public List<Map<String, Object>> indexReport()
+        {
+        List<Map<String, Object>> report = new ArrayList<>();
+        indexedCollections().forEach((collection, type) -> {
+            Map<String, Document> existing = existingIndexKeys(collection);
+            for (IndexDefinition index : declaredIndexes(type)) {
+                String name = nameOf(index);
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("collection", collection);
+                entry.put("name", name);
+                entry.put("keys", index.getIndexKeys());
+                entry.put("present", existing.containsKey(name) && sameKeys(existing.get(name), index.getIndexKeys()));
+                report.add(entry);
+            }
+        });
+        return report;
+        }
+
+    public List<Map<String, Object>> queryPlanReport()
+        {
+        Date now = new Date();
+        List<Map<String, Object>> report = new ArrayList<>();
+        report.add(explain("findByApplicationId", ChangeRequest.class,
+                new Query(where("applicationId").is("explain"))));
+        report.add(explain("findByApplicationIdInOrderByClosedDesc", ChangeRequest.class,
+                new Query(where("applicationId").in("explain1", "explain2")).with(Sort.by(Sort.Direction.DESC, "closed"))));
+        report.add(explain("findByApplicationIdAndClosedBetweenOrderByClosed", ChangeRequest.class,
+                new Query(where("applicationId").is("explain").and("closed").gt(now).lt(now)).with(Sort.by(Sort.Direction.ASC, "closed"))));
+        report.add(explain("findPage", ChangeRequest.class,
+                ChangeRequestRepoCustomImpl.pageQuery(null, null, null, new ChangeRequestCursor(now, "explain"))));
+        report.add(explain("findPageForApplications", ChangeRequest.class,
+                ChangeRequestRepoCustomImpl.pageQuery(Arrays.asList("explain1", "explain2"), now, now, new ChangeRequestCursor(now, "explain"))));
+        report.add(explain("sumChanges", DailyChangeRollup.class,
+                new Query(where("applicationId").is("explain").and("day").gte(now).lte(now))));
+        return report;
+        }
+
+    //Compound index definitions name properties rather than stored fields, so map them in case the field names are shortened
+    private List<IndexDefinition> declaredIndexes(Class<?> type)
+        {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        List<IndexDefinition> indexes = new ArrayList<>();
+        for (IndexDefinition index : IndexResolver.create(mongoTemplate.getConverter().getMappingContext()).resolveIndexFor(type)) {
+            Document keys = queryMapper.getMappedSort(index.getIndexKeys(), entity);
+            Document options = index.getIndexOptions();
+            indexes.add(new IndexDefinition()
+                {
+                @Override
+                public Document getIndexKeys()
+                    {
+                    return keys;
+                    }
+
+                @Override
+                public Document getIndexOptions()
+                    {
+                    return options;
+                    }
+                });
+        }
+        return indexes;
+        }
+
+    //The collections holding each indexed type, the archive only once archival has created it
+    private Map<String, Class<?>> indexedCollections()
+        {
+        Map<String, Class<?>> collections = new LinkedHashMap<>();
+        for (Class<?> type : INDEXED_TYPES) {
+            collections.put(mongoTemplate.getCollectionName(type), type);
+        }
+        if (mongoTemplate.collectionExists(ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION)) {
+            collections.put(ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION, ChangeRequest.class);
+        }
+        return collections;
+        }
+
+    private Map<String, Document> existingIndexKeys(String collection)
+        {
+        Map<String, Document> existing = new HashMap<>();
+        for (Document index : mongoTemplate.getCollection(collection).listIndexes()) {
+            existing.put(index.getString("name"), index.get("key", Document.class));
+        }
+        return existing;
+        }
+
+    private static String nameOf(IndexDefinition index)
+        {
+        return index.getIndexOptions().getString("name");
+        }
+
+    //Key order matters to an index, Document equality ignores it
+    private static boolean sameKeys(Document existing, Document declared)
+        {
+        return new ArrayList<>(existing.keySet()).equals(new ArrayList<>(declared.keySet()))
+                && existing.keySet().stream().allMatch(key -> Objects.equals(direction(existing.get(key)), direction(declared.get(key))));
+        }
+
+    //The server may hand back 1 as a double, special index types like "hashed" are strings
+    private static Object direction(Object value)
+        {
+        return value instanceof Number ? (Object) ((Number) value).intValue() : value;
+        }
+
+    private Map<String, Object> explain(String name, Class<?> type, Query query)
+        {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Document find = new Document("find", mongoTemplate.getCollectionName(type))
+                .append("filter", queryMapper.getMappedObject(query.getQueryObject(), entity))
+                .append("sort", queryMapper.getMappedSort(query.getSortObject(), entity));
+        Document explained = mongoTemplate.getDb().runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+        Document winningPlan = explained.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+
+        List<String> stages = new ArrayList<>();
+        Set<String> indexes = new LinkedHashSet<>();
+        collectStages(winningPlan, stages, indexes);
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("query", name);
+        entry.put("stages", stages);
+        entry.put("indexes", indexes);
+        entry.put("collectionScan", stages.contains("COLLSCAN"));
+        entry.put("winningPlan", winningPlan);
+        return entry;
+        }
+
+    @SuppressWarnings("unchecked")
+    private void collectStages(Document stage, List<String> stages, Set<String> indexes)
+        {
+        stages.add(stage.getString("stage"));
+        if (stage.containsKey("indexName")) {
+            indexes.add(stage.getString("indexName"));
+        }
+        if (stage.containsKey("inputStage")) {
+            collectStages(stage.get("inputStage", Document.class), stages, indexes);
+        }
+        if (stage.containsKey("inputStages")) {
+            for (Document input : (List<Document>) stage.get("inputStages")) {
+                collectStages(input, stages, indexes);
+            }
+        }
+        }
+    }
@@ -9,7 +9,7 @@ import java.util.Date;
 import java.util.List;
 
 @Repository
-public interface ChangeRequestRepo extends MongoRepository<ChangeRequest, String>
+public interface ChangeRequestRepo extends MongoRepository<ChangeRequest, String>, ChangeRequestRepoCustom
     {
         List<ChangeRequest> findByApplicationId(String applicationId);
 
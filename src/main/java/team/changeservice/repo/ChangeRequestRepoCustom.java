@@ -0,0 +1,43 @@
+package team.changeservice.repo;
+
+import com.mongodb.WriteConcern;
+import org.springframework.data.util.CloseableIterator;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestCursor;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.ChangeRequestWriteResult;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+public interface ChangeRequestRepoCustom
+    {
+        //A null write concern uses the client's default
+        List<ChangeRequestWriteResult> bulkUpsert(List<ChangeRequest> changeRequests, WriteConcern writeConcern);
+
+        List<ChangeRequestState> findStates(Collection<String> changeRequestIds);
+
+        //Deletes the change request with a single findAndRemove, returning what the rollups need to know about it or null if there was none
+        ChangeRequestState findAndRemoveState(String changeRequestId);
+
+        //Deletes from the archive as well
+        long deleteMatching(ChangeRequestFilter filter);
+
+        //Empty when archival is turned off
+        Optional<ChangeRequest> findArchivedById(String changeRequestId);
+
+        //Zero when archival is turned off
+        long countArchived();
+
+        //Moves change requests closed before the archive horizon to the archive, batchSize at a time, returning how many were moved
+        long archive(int batchSize);
+
+        CloseableIterator<ChangeRequest> stream(Collection<String> applicationIds, Date closedFrom, Date closedTo, ChangeRequestFields fields);
+
+        ChangeRequestPage findPage(Collection<String> applicationIds, Date closedFrom, Date closedTo, ChangeRequestCursor after, int limit, ChangeRequestFields fields);
+    }
@@ -0,0 +1,340 @@
+package team.changeservice.repo;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestCursor;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.ChangeRequestWriteResult;
+import team.changeservice.model.WriteStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ChangeRequestRepoCustomImpl implements ChangeRequestRepoCustom
+    {
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+    private static final int STREAM_BATCH_SIZE = 1000;
+    //Written by bulkUpsert only, it isn't part of the ChangeRequest mapping so reads never return it
+    static final String CONTENT_HASH = "contentHash";
+    //Change requests closed before the archive horizon, in the same document layout as the change request collection
+    static final String ARCHIVE_COLLECTION = "changeRequestArchive";
+    static final Comparator<ChangeRequest> PAGE_ORDER = Comparator.comparing(ChangeRequest::getClosed).thenComparing(ChangeRequest::getChangeRequestId);
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean archiveEnabled;
+    private final Duration archiveHorizon;
+
+    public ChangeRequestRepoCustomImpl(MongoTemplate mongoTemplate)
+        {
+        this(mongoTemplate, false, Duration.ZERO);
+        }
+
+    @Autowired
+    public ChangeRequestRepoCustomImpl(MongoTemplate mongoTemplate,
+                                       @Value("${changeservice.archive.enabled:false}") boolean archiveEnabled,
+                                       @Value("${changeservice.archive.horizon:400d}") Duration archiveHorizon)
+        {
+        this.mongoTemplate = mongoTemplate;
+        this.archiveEnabled = archiveEnabled;
+        this.archiveHorizon = archiveHorizon;
+        }
+
+    //Nothing closed on or after this day is in the archive. Archival runs a day behind it, so the instances of the service
+    //don't have to agree on the time to the second for one of them to know it can skip the archive.
+    Date hotFrom()
+        {
+        return hotFrom(archiveHorizon);
+        }
+
+    static Date hotFrom(Duration archiveHorizon)
+        {
+        return Date.from(Instant.now().minus(archiveHorizon).atZone(ZoneOffset.UTC).toLocalDate().atStartOfDay(ZoneOffset.UTC).toInstant());
+        }
+
+    Date archiveCutoff()
+        {
+        return Date.from(hotFrom().toInstant().minus(1, ChronoUnit.DAYS));
+        }
+
+    //Whether change requests closed from this date, null for all of them, can be in the archive
+    private boolean spansArchive(Date closedFrom)
+        {
+        return spansArchive(archiveEnabled, archiveHorizon, closedFrom);
+        }
+
+    static boolean spansArchive(boolean archiveEnabled, Duration archiveHorizon, Date closedFrom)
+        {
+        return archiveEnabled && (closedFrom == null || closedFrom.before(hotFrom(archiveHorizon)));
+        }
+
+    @Override
+    public List<ChangeRequestWriteResult> bulkUpsert(List<ChangeRequest> changeRequests, WriteConcern writeConcern)
+        {
+        if (changeRequests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ChangeRequest.class));
+        if (writeConcern != null) {
+            collection = collection.withWriteConcern(writeConcern);
+        }
+        List<ReplaceOneModel<Document>> writes = new ArrayList<>(changeRequests.size());
+        for (ChangeRequest changeRequest : changeRequests) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(changeRequest, document);
+            document.put(CONTENT_HASH, ChangeRequestState.contentHashOf(changeRequest));
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, UPSERT));
+        }
+        List<Object> ids = writes.stream().map(write -> write.getReplacement().get("_id")).collect(Collectors.toList());
+
+        BulkWriteResult result;
+        Map<Integer, String> errors = new HashMap<>();
+        try {
+            result = collection.bulkWrite(writes, UNORDERED);
+        } catch (MongoBulkWriteException e) {
+            result = e.getWriteResult();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                errors.put(error.getIndex(), error.getMessage());
+            }
+        }
+
+        Set<Integer> inserted = new HashSet<>();
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            inserted.add(upsert.getIndex());
+        }
+        //A change request sent again after it was archived moves back to the change request collection
+        if (archiveEnabled) {
+            List<Object> written = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                if (!errors.containsKey(i)) {
+                    written.add(ids.get(i));
+                }
+            }
+            mongoTemplate.getCollection(ARCHIVE_COLLECTION).deleteMany(Filters.in("_id", written));
+        }
+
+        List<ChangeRequestWriteResult> results = new ArrayList<>(changeRequests.size());
+        for (int i = 0; i < changeRequests.size(); i++) {
+            String id = changeRequests.get(i).getChangeRequestId();
+            if (errors.containsKey(i)) {
+                results.add(new ChangeRequestWriteResult(id, WriteStatus.FAILED, errors.get(i)));
+            } else if (inserted.contains(i)) {
+                results.add(new ChangeRequestWriteResult(id, WriteStatus.INSERTED, null));
+            } else {
+                results.add(new ChangeRequestWriteResult(id, WriteStatus.REPLACED, null));
+            }
+        }
+        return results;
+        }
+    
+    @Override
+    public List<ChangeRequestState> findStates(Collection<String> changeRequestIds)
+        {
+        Query query = new Query(where("changeRequestId").in(changeRequestIds));
+        query.fields().include("applicationId").include("closed").include("failed").include(CONTENT_HASH);
+        List<ChangeRequestState> states = mongoTemplate.find(query, ChangeRequestState.class, mongoTemplate.getCollectionName(ChangeRequest.class));
+        if (!archiveEnabled || states.size() == changeRequestIds.size()) {
+            return states;
+        }
+        Set<String> archivedIds = new HashSet<>(changeRequestIds);
+        states.forEach(state -> archivedIds.remove(state.getChangeRequestId()));
+        Query archived = new Query(where("changeRequestId").in(archivedIds));
+        archived.fields().include("applicationId").include("closed").include("failed").include(CONTENT_HASH);
+        List<ChangeRequestState> allStates = new ArrayList<>(states);
+        allStates.addAll(mongoTemplate.find(archived, ChangeRequestState.class, ARCHIVE_COLLECTION));
+        return allStates;
+        }
+
+    @Override
+    public ChangeRequestState findAndRemoveState(String changeRequestId)
+        {
+        Query query = new Query(where("changeRequestId").is(changeRequestId));
+        query.fields().include("applicationId").include("closed").include("failed").include(CONTENT_HASH);
+        ChangeRequestState removed = mongoTemplate.findAndRemove(query, ChangeRequestState.class, mongoTemplate.getCollectionName(ChangeRequest.class));
+        if (removed == null && archiveEnabled) {
+            removed = mongoTemplate.findAndRemove(query, ChangeRequestState.class, ARCHIVE_COLLECTION);
+        }
+        return removed;
+        }
+
+    @Override
+    public long deleteMatching(ChangeRequestFilter filter)
+        {
+        long deleted = mongoTemplate.remove(new Query(criteriaFor(filter)), ChangeRequest.class).getDeletedCount();
+        if (archiveEnabled) {
+            deleted += mongoTemplate.remove(new Query(criteriaFor(filter)), ChangeRequest.class, ARCHIVE_COLLECTION).getDeletedCount();
+        }
+        return deleted;
+        }
+
+    @Override
+    public Optional<ChangeRequest> findArchivedById(String changeRequestId)
+        {
+        if (!archiveEnabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(mongoTemplate.findById(changeRequestId, ChangeRequest.class, ARCHIVE_COLLECTION));
+        }
+
+    @Override
+    public long countArchived()
+        {
+        return archiveEnabled ? mongoTemplate.getCollection(ARCHIVE_COLLECTION).countDocuments() : 0;
+        }
+
+    @Override
+    public long archive(int batchSize)
+        {
+        if (!archiveEnabled) {
+            throw new IllegalStateException("Change request archival is turned off, set changeservice.archive.enabled");
+        }
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(ChangeRequest.class);
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Document filter = queryMapper.getMappedObject(where("closed").lt(archiveCutoff()).getCriteriaObject(), entity);
+        Document sort = queryMapper.getMappedSort(new Document("closed", 1).append("changeRequestId", 1), entity);
+        MongoCollection<Document> changeRequests = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ChangeRequest.class));
+        MongoCollection<Document> archive = mongoTemplate.getCollection(ARCHIVE_COLLECTION);
+
+        //Oldest first, so an interrupted run leaves the archive covering a contiguous stretch of history
+        long archived = 0;
+        while (true) {
+            List<Document> batch = changeRequests.find(filter).sort(sort).limit(batchSize).into(new ArrayList<>());
+            if (batch.isEmpty()) {
+                return archived;
+            }
+            //Replacing by id makes copying again after a failed run harmless
+            archive.bulkWrite(batch.stream().map(document -> new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, UPSERT))
+                    .collect(Collectors.toList()), UNORDERED);
+            //Each delete matches the whole document, so a change request rewritten since it was copied stays where it is
+            long deleted = changeRequests.bulkWrite(batch.stream().map(document -> new DeleteOneModel<Document>(document))
+                    .collect(Collectors.toList()), UNORDERED).getDeletedCount();
+            if (deleted < batch.size()) {
+                List<Object> rewritten = changeRequests.find(Filters.in("_id", batch.stream().map(document -> document.get("_id")).collect(Collectors.toList())))
+                        .projection(Projections.include("_id")).map(document -> document.get("_id")).into(new ArrayList<>());
+                archive.deleteMany(Filters.in("_id", rewritten));
+            }
+            archived += deleted;
+            if (batch.size() < batchSize || deleted == 0) {
+                return archived;
+            }
+        }
+        }
+
+    static Criteria criteriaFor(ChangeRequestFilter filter)
+        {
+        List<Criteria> criteria = new ArrayList<>();
+        if (filter.getChangeRequestIds() != null) {
+            criteria.add(where("changeRequestId").in(filter.getChangeRequestIds()));
+        }
+        if (filter.getApplicationId() != null) {
+            criteria.add(where("applicationId").is(filter.getApplicationId()));
+        }
+        if (filter.getSource() != null) {
+            criteria.add(where("source").is(filter.getSource()));
+        }
+        if (filter.getClosedFrom() != null) {
+            criteria.add(where("closed").gte(filter.getClosedFrom()));
+        }
+        if (filter.getClosedTo() != null) {
+            criteria.add(where("closed").lt(filter.getClosedTo()));
+        }
+        return criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria.toArray(new Criteria[0]));
+        }
+
+    @Override
+    public CloseableIterator<ChangeRequest> stream(Collection<String> applicationIds, Date closedFrom, Date closedTo, ChangeRequestFields fields)
+        {
+        Query query = project(pageQuery(applicationIds, closedFrom, closedTo, null), fields);
+        CloseableIterator<ChangeRequest> changeRequests = mongoTemplate.stream(query.cursorBatchSize(STREAM_BATCH_SIZE), ChangeRequest.class);
+        if (!spansArchive(closedFrom)) {
+            return changeRequests;
+        }
+        Query archived = project(pageQuery(applicationIds, closedFrom, closedTo, null), fields);
+        return new MergingCloseableIterator<>(changeRequests,
+                mongoTemplate.stream(archived.cursorBatchSize(STREAM_BATCH_SIZE), ChangeRequest.class, ARCHIVE_COLLECTION), PAGE_ORDER);
+        }
+
+    @Override
+    public ChangeRequestPage findPage(Collection<String> applicationIds, Date closedFrom, Date closedTo, ChangeRequestCursor after, int limit, ChangeRequestFields fields)
+        {
+        // Fetch one extra document to find out whether there is a next page
+        Query query = project(pageQuery(applicationIds, closedFrom, closedTo, after), fields);
+        List<ChangeRequest> changeRequests = mongoTemplate.find(query.limit(limit + 1), ChangeRequest.class);
+        //Pages run forwards in closed order, once the cursor is past the archive horizon the rest of the pages are only in the hot collection
+        Date from = after == null || (closedFrom != null && closedFrom.after(after.getClosed())) ? closedFrom : after.getClosed();
+        if (spansArchive(from)) {
+            Query archived = project(pageQuery(applicationIds, closedFrom, closedTo, after), fields);
+            changeRequests = new ArrayList<>(changeRequests);
+            changeRequests.addAll(mongoTemplate.find(archived.limit(limit + 1), ChangeRequest.class, ARCHIVE_COLLECTION));
+            changeRequests.sort(PAGE_ORDER);
+            changeRequests = changeRequests.subList(0, Math.min(changeRequests.size(), limit + 1));
+        }
+        if (changeRequests.size() <= limit) {
+            return new ChangeRequestPage(changeRequests, null);
+        }
+        List<ChangeRequest> page = new ArrayList<>(changeRequests.subList(0, limit));
+        return new ChangeRequestPage(page, ChangeRequestCursor.after(page.get(limit - 1)));
+        }
+
+    static Query pageQuery(Collection<String> applicationIds, Date closedFrom, Date closedTo, ChangeRequestCursor after)
+        {
+        List<Criteria> criteria = new ArrayList<>();
+        if (applicationIds != null) {
+            criteria.add(where("applicationId").in(applicationIds));
+        }
+        if (closedFrom != null) {
+            criteria.add(where("closed").gte(closedFrom));
+        }
+        if (closedTo != null) {
+            criteria.add(where("closed").lt(closedTo));
+        }
+        if (after != null) {
+            // The plain lower bound lets the index scan start at the cursor, the $or breaks ties on closed by id
+            criteria.add(where("closed").gte(after.getClosed()));
+            criteria.add(new Criteria().orOperator(
+                    where("closed").gt(after.getClosed()),
+                    where("closed").is(after.getClosed()).and("changeRequestId").gt(after.getChangeRequestId())));
+        }
+        Query query = criteria.isEmpty() ? new Query() : new Query(new Criteria().andOperator(criteria.toArray(new Criteria[0])));
+        return query.with(Sort.by(Sort.Direction.ASC, "closed", "changeRequestId"));
+        }
+
+    // Fields left out of the projection are never sent by Mongo or decoded, and come back null on the mapped ChangeRequest
+    private static Query project(Query query, ChangeRequestFields fields)
+        {
+        if (fields != null && !fields.isAll()) {
+            fields.getNames().forEach(query.fields()::include);
+        }
+        return query;
+        }
+    }
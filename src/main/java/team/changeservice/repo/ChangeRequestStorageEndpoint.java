@@ -0,0 +1,34 @@
+package team.changeservice.repo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@Endpoint(id = "changerequeststorage")
+public class ChangeRequestStorageEndpoint
+    {
+    private final ChangeRequestStorageManager storageManager;
+
+    @Autowired
+    public ChangeRequestStorageEndpoint(ChangeRequestStorageManager storageManager)
+        {
+        this.storageManager = storageManager;
+        }
+
+    @ReadOperation
+    public Map<String, Object> storage()
+        {
+        return storageManager.storageReport();
+        }
+
+    @WriteOperation
+    public Map<String, Object> migrate()
+        {
+        return storageManager.migrate();
+        }
+    }
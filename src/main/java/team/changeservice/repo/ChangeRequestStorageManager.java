@@ -0,0 +1,228 @@
+package team.changeservice.repo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import team.changeservice.model.ChangeRequest;
+
+import java.util.*;
+
+//Reports how much space change requests take in each document layout and moves stored documents to the configured one.
+//A document in the other layout reads back with its fields null, so the service moves them before it starts and won't start while any are left.
+@Component
+public class ChangeRequestStorageManager implements SmartInitializingSingleton
+    {
+    private static final Logger log = LoggerFactory.getLogger(ChangeRequestStorageManager.class);
+    static final String TYPE_KEY = "_class";
+    static final String LOCK = "changeRequestStorage";
+    private static final String[] COLLECTION_STATS = {"count", "size", "avgObjSize", "storageSize", "totalIndexSize"};
+    private static final Map<String, String> LONG_NAMES = new LinkedHashMap<>();
+
+    static {
+        CompactFieldNamingStrategy.SHORT_NAMES.forEach((name, shortName) -> LONG_NAMES.put(shortName, name));
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final ChangeRequestIndexManager indexManager;
+    private final JobLock jobLock;
+    private final int sampleSize;
+    private final int migrationBatchSize;
+
+    @Autowired
+    public ChangeRequestStorageManager(MongoTemplate mongoTemplate, ChangeRequestIndexManager indexManager, JobLock jobLock,
+                                       @Value("${changeservice.storage.sample-size:1000}") int sampleSize,
+                                       @Value("${changeservice.storage.migration-batch-size:1000}") int migrationBatchSize)
+        {
+        this.mongoTemplate = mongoTemplate;
+        this.indexManager = indexManager;
+        this.jobLock = jobLock;
+        this.sampleSize = sampleSize;
+        this.migrationBatchSize = migrationBatchSize;
+        }
+
+    //Runs once every bean is created, before the web server starts taking requests and before the startup checks on the rollups.
+    //The indexes are ensured here too, after any migration as they are declared on the field names of the configured layout.
+    @Override
+    public void afterSingletonsInstantiated()
+        {
+        if (countInOtherLayout() > 0) {
+            migrateBeforeStarting();
+        }
+        indexManager.ensureIndexes();
+        }
+
+    private void migrateBeforeStarting()
+        {
+        log.info("Change requests are stored in the {} layout, moving them to the {} layout before starting", layoutName(!isCompact()), layoutName(isCompact()));
+        if (!jobLock.runExclusively(LOCK, this::migrate)) {
+            log.info("Another instance is migrating the change request layout");
+        }
+        long remaining = countInOtherLayout();
+        if (remaining > 0) {
+            throw new IllegalStateException(remaining + " change requests are still stored in the " + layoutName(!isCompact())
+                    + " layout, not starting with changeservice.storage.compact=" + isCompact() + " until they are migrated");
+        }
+        }
+
+    //Whether the running mapping writes the compact layout, i.e. changeservice.storage.compact is on
+    public boolean isCompact()
+        {
+        return !"applicationId".equals(mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(ChangeRequest.class).getRequiredPersistentProperty("applicationId").getFieldName());
+        }
+
+    public Map<String, Object> storageReport()
+        {
+        String name = mongoTemplate.getCollectionName(ChangeRequest.class);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("layout", layoutName(isCompact()));
+
+        Map<String, Object> collection = new LinkedHashMap<>();
+        if (mongoTemplate.collectionExists(name)) {
+            Document stats = mongoTemplate.getDb().runCommand(new Document("collStats", name));
+            for (String key : COLLECTION_STATS) {
+                collection.put(key, stats.get(key));
+            }
+        }
+        report.put("collection", collection);
+
+        Map<String, Object> documents = new LinkedHashMap<>();
+        documents.put("standard", mongoTemplate.getCollection(name).countDocuments(new Document("applicationId", new Document("$exists", true))));
+        documents.put("compact", mongoTemplate.getCollection(name).countDocuments(
+                new Document(CompactFieldNamingStrategy.SHORT_NAMES.get("applicationId"), new Document("$exists", true))));
+        report.put("documents", documents);
+
+        //The same documents encoded both ways, this is what the layout saves before block compression
+        long sampled = 0;
+        long standardBytes = 0;
+        long compactBytes = 0;
+        for (Document document : mongoTemplate.getCollection(name).aggregate(
+                Collections.singletonList(new Document("$sample", new Document("size", sampleSize))))) {
+            sampled++;
+            standardBytes += bsonSize(standard(document));
+            compactBytes += bsonSize(compact(document));
+        }
+        Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("documents", sampled);
+        sample.put("standardBytes", standardBytes);
+        sample.put("compactBytes", compactBytes);
+        sample.put("savedPercent", standardBytes == 0 ? 0 : Math.round(100.0 * (standardBytes - compactBytes) / standardBytes));
+        report.put("sample", sample);
+        return report;
+        }
+
+    //Renames the fields of every document still in the other layout, in place on the server and a batch at a time, then rebuilds the
+    //indexes on them. Safe to run again, or on several instances at once, as each batch only matches documents not yet renamed.
+    public Map<String, Object> migrate()
+        {
+        boolean compact = isCompact();
+        Map<String, String> renames = compact ? CompactFieldNamingStrategy.SHORT_NAMES : LONG_NAMES;
+
+        Document update = new Document("$rename", new Document(new LinkedHashMap<>(renames)));
+        if (compact) {
+            update.append("$unset", new Document(TYPE_KEY, ""));
+        }
+        long migrated = 0;
+        //Archived change requests are read through the same mapping, so they move with the rest
+        for (String collection : changeRequestCollections()) {
+            migrated += migrate(collection, update);
+        }
+        log.info("Moved {} change requests to the {} layout", migrated, layoutName(compact));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("layout", layoutName(compact));
+        report.put("migrated", migrated);
+        report.put("rebuiltIndexes", indexManager.rebuildChangedIndexes());
+        return report;
+        }
+
+    private long migrate(String collectionName, Document update)
+        {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        Document inOtherLayout = inOtherLayout();
+        long toMigrate = collection.countDocuments(inOtherLayout);
+        long migrated = 0;
+        while (true) {
+            List<Object> ids = new ArrayList<>(migrationBatchSize);
+            collection.find(inOtherLayout).projection(new Document("_id", 1)).limit(migrationBatchSize).forEach(document -> ids.add(document.get("_id")));
+            if (ids.isEmpty()) {
+                return migrated;
+            }
+            UpdateResult result = collection.updateMany(new Document("_id", new Document("$in", ids)).append(otherLayoutKey(), new Document("$exists", true)), update);
+            migrated += result.getModifiedCount();
+            log.info("Moved {} of {} change requests in {} to the {} layout", migrated, toMigrate, collectionName, layoutName(isCompact()));
+        }
+        }
+
+    //Change requests stored under the field names of the layout not configured, in the change request collection and the archive
+    long countInOtherLayout()
+        {
+        long count = 0;
+        for (String collection : changeRequestCollections()) {
+            count += mongoTemplate.getCollection(collection).countDocuments(inOtherLayout());
+        }
+        return count;
+        }
+
+    private List<String> changeRequestCollections()
+        {
+        List<String> collections = new ArrayList<>();
+        collections.add(mongoTemplate.getCollectionName(ChangeRequest.class));
+        if (mongoTemplate.collectionExists(ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION)) {
+            collections.add(ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION);
+        }
+        return collections;
+        }
+
+    private Document inOtherLayout()
+        {
+        return new Document(otherLayoutKey(), new Document("$exists", true));
+        }
+
+    private String otherLayoutKey()
+        {
+        return isCompact() ? "applicationId" : CompactFieldNamingStrategy.SHORT_NAMES.get("applicationId");
+        }
+
+    private static String layoutName(boolean compact)
+        {
+        return compact ? "compact" : "standard";
+        }
+
+    static Document standard(Document document)
+        {
+        Document standard = renamed(document, LONG_NAMES);
+        if (!standard.containsKey(TYPE_KEY)) {
+            standard.append(TYPE_KEY, ChangeRequest.class.getName());
+        }
+        return standard;
+        }
+
+    static Document compact(Document document)
+        {
+        Document compact = renamed(document, CompactFieldNamingStrategy.SHORT_NAMES);
+        compact.remove(TYPE_KEY);
+        return compact;
+        }
+
+    private static Document renamed(Document document, Map<String, String> names)
+        {
+        Document renamed = new Document();
+        document.forEach((key, value) -> renamed.append(names.getOrDefault(key, key), value));
+        return renamed;
+        }
+
+    static int bsonSize(Document document)
+        {
+        return new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+        }
+    }
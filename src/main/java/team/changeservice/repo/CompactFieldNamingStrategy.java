@@ -0,0 +1,40 @@
+package team.changeservice.repo;
+
+import org.springframework.data.mapping.PersistentProperty;
+import org.springframework.data.mapping.model.FieldNamingStrategy;
+import org.springframework.data.mapping.model.PropertyNameFieldNamingStrategy;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestState;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Stores change request properties under short keys. Every document repeats its keys, so on a collection of small
+//documents the names are a good share of what is stored and cached. Only the change request collection is affected.
+class CompactFieldNamingStrategy implements FieldNamingStrategy
+    {
+    static final Map<String, String> SHORT_NAMES = new LinkedHashMap<>();
+
+    static {
+        SHORT_NAMES.put("description", "ds");
+        SHORT_NAMES.put("applicationId", "a");
+        SHORT_NAMES.put("created", "cr");
+        SHORT_NAMES.put("started", "st");
+        SHORT_NAMES.put("finished", "fn");
+        SHORT_NAMES.put("closed", "c");
+        SHORT_NAMES.put("failed", "f");
+        SHORT_NAMES.put("source", "s");
+    }
+
+    private static final FieldNamingStrategy DEFAULT = PropertyNameFieldNamingStrategy.INSTANCE;
+
+    @Override
+    public String getFieldName(PersistentProperty<?> property)
+        {
+        Class<?> owner = property.getOwner().getType();
+        if (owner == ChangeRequest.class || owner == ChangeRequestState.class) {
+            return SHORT_NAMES.getOrDefault(property.getName(), DEFAULT.getFieldName(property));
+        }
+        return DEFAULT.getFieldName(property);
+        }
+    }
@@ -0,0 +1,38 @@
+package team.changeservice.repo;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+//Switches change requests to the compact document layout: short field names and no _class key.
+//Documents already stored are moved to it at startup, see ChangeRequestStorageManager.
+@Configuration
+@ConditionalOnProperty(name = "changeservice.storage.compact", havingValue = "true")
+public class CompactStorageConfig
+    {
+    //Static so it is registered before the mapping context and converter it customises are created
+    @Bean
+    static BeanPostProcessor compactStoragePostProcessor()
+        {
+        return new BeanPostProcessor()
+            {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName)
+                {
+                //Field names are fixed when the context first builds each entity, which happens on initialisation
+                if (bean instanceof MongoMappingContext) {
+                    ((MongoMappingContext) bean).setFieldNamingStrategy(new CompactFieldNamingStrategy());
+                }
+                //Nothing stored is polymorphic, so reads never need the type hint
+                if (bean instanceof MappingMongoConverter) {
+                    ((MappingMongoConverter) bean).setTypeMapper(new DefaultMongoTypeMapper(null));
+                }
+                return bean;
+                }
+            };
+        }
+    }
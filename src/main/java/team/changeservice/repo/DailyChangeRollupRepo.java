@@ -0,0 +1,10 @@
+package team.changeservice.repo;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import team.changeservice.model.DailyChangeRollup;
+
+@Repository
+public interface DailyChangeRollupRepo extends MongoRepository<DailyChangeRollup, String>, DailyChangeRollupRepoCustom
+    {
+    }
@@ -0,0 +1,40 @@
+package team.changeservice.repo;
+
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface DailyChangeRollupRepoCustom
+    {
+        void applyChanges(List<ChangeRequestState> removed, List<ChangeRequestState> added);
+
+        //A writer begins changes on the stored and new states of every change request it is about to write, and ends them with the same
+        //states once written, applying what was removed and added. Until then a rebuild leaves the days they fall on to the writer.
+        void beginChanges(Collection<ChangeRequestState> changing);
+
+        void endChanges(Collection<ChangeRequestState> changing, List<ChangeRequestState> removed, List<ChangeRequestState> added);
+
+        ChangeCounts sumChanges(String applicationId, Date fromDay, Date toDay);
+
+        List<ChangeCounts> sumChanges(Collection<String> applicationIds, Date fromDay, Date toDay);
+
+        List<ChangeCounts> sumChanges(Collection<String> applicationIds, Date fromDay, Date toDay, Duration maxTime);
+
+        List<DailyChangeRollup> findDays(String applicationId, Date fromDay, Date toDay);
+
+        long rebuild();
+
+        //The per day rollups of just the change requests matching the filter
+        List<DailyChangeRollup> countDays(ChangeRequestFilter filter);
+
+        void subtract(List<DailyChangeRollup> rollups);
+
+        //Recounts the days of an application after change requests in a closed range were deleted, returning how many it set
+        long recountDays(String applicationId, Date closedFrom, Date closedTo);
+    }
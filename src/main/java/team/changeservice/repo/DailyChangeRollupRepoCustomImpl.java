@@ -0,0 +1,459 @@
+package team.changeservice.repo;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class DailyChangeRollupRepoCustomImpl implements DailyChangeRollupRepoCustom
+    {
+    private static final Logger log = LoggerFactory.getLogger(DailyChangeRollupRepoCustomImpl.class);
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final int RECOUNT_ROUNDS = 3;
+    private static final long RECOUNT_PAUSE_MILLIS = 1000;
+    private static final int DUPLICATE_KEY = 11000;
+    //Bookkeeping kept on each rollup document beside the mapped counts. pending is the number of writers between beginChanges and
+    //endChanges on the day, version goes up with every write and touchedAt, by the database clock, is when a writer last touched it.
+    static final String PENDING = "pending";
+    static final String VERSION = "version";
+    static final String TOUCHED_AT = "touchedAt";
+    static final String REBUILT_AT = "rebuiltAt";
+    private static final Comparator<Document> GROUP_ORDER = Comparator
+            .comparing((Document group) -> group.get("_id", Document.class).getString("applicationId"))
+            .thenComparing(group -> group.get("_id", Document.class).getString("day"));
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean archiveEnabled;
+    private final Duration writeTimeout;
+
+    public DailyChangeRollupRepoCustomImpl(MongoTemplate mongoTemplate)
+        {
+        this(mongoTemplate, false);
+        }
+
+    public DailyChangeRollupRepoCustomImpl(MongoTemplate mongoTemplate, boolean archiveEnabled)
+        {
+        this(mongoTemplate, archiveEnabled, Duration.ofMinutes(10));
+        }
+
+    @Autowired
+    public DailyChangeRollupRepoCustomImpl(MongoTemplate mongoTemplate,
+                                           @Value("${changeservice.archive.enabled:false}") boolean archiveEnabled,
+                                           @Value("${changeservice.rollup.write-timeout:10m}") Duration writeTimeout)
+        {
+        this.mongoTemplate = mongoTemplate;
+        this.archiveEnabled = archiveEnabled;
+        this.writeTimeout = writeTimeout;
+        }
+
+    @Override
+    public void applyChanges(List<ChangeRequestState> removed, List<ChangeRequestState> added)
+        {
+        endChanges(Collections.emptyList(), removed, added);
+        }
+
+    @Override
+    public void beginChanges(Collection<ChangeRequestState> changing)
+        {
+        Map<String, Delta> deltas = new LinkedHashMap<>();
+        changing.forEach(state -> deltaFor(deltas, state).pending = 1);
+        write(deltas);
+        }
+
+    @Override
+    public void endChanges(Collection<ChangeRequestState> changing, List<ChangeRequestState> removed, List<ChangeRequestState> added)
+        {
+        Map<String, Delta> deltas = new LinkedHashMap<>();
+        changing.forEach(state -> deltaFor(deltas, state).pending = -1);
+        removed.forEach(state -> deltaFor(deltas, state).add(state, -1));
+        added.forEach(state -> deltaFor(deltas, state).add(state, 1));
+        write(deltas);
+        }
+
+    //Every write marks the day as touched, so a rebuild running at the same time knows to leave it to the writer. One landing after the
+    //rebuild has set the day also clears its rebuiltAt, so the rebuild recounts it rather than keep a count that may already include it.
+    private void write(Map<String, Delta> deltas)
+        {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyChangeRollup.class);
+        for (Map.Entry<String, Delta> entry : deltas.entrySet()) {
+            Delta delta = entry.getValue();
+            Update update = new Update()
+                    .inc(VERSION, 1)
+                    .currentDate(TOUCHED_AT)
+                    .setOnInsert("applicationId", delta.applicationId)
+                    .setOnInsert("day", delta.day)
+                    .unset(REBUILT_AT);
+            if (delta.pending != 0) {
+                update.inc(PENDING, delta.pending);
+            }
+            //A new day begun by a writer gets its counts from the writer's $inc, or from these if it never adds any
+            if (delta.total == 0 && delta.failed == 0) {
+                update.setOnInsert("total", 0).setOnInsert("failed", 0);
+            } else {
+                update.inc("total", delta.total).inc("failed", delta.failed);
+            }
+            bulkOps.upsert(new Query(where("id").is(entry.getKey())), update);
+        }
+        bulkOps.execute();
+        }
+
+    @Override
+    public ChangeCounts sumChanges(String applicationId, Date fromDay, Date toDay)
+        {
+        List<ChangeCounts> counts = sumChanges(Collections.singletonList(applicationId), fromDay, toDay);
+        return counts.isEmpty() ? new ChangeCounts(applicationId, 0, 0) : counts.get(0);
+        }
+
+    @Override
+    public List<ChangeCounts> sumChanges(Collection<String> applicationIds, Date fromDay, Date toDay)
+        {
+        return mongoTemplate.aggregate(sumChangesAggregation(applicationIds, fromDay, toDay), ChangeCounts.class).getMappedResults();
+        }
+
+    @Override
+    public List<ChangeCounts> sumChanges(Collection<String> applicationIds, Date fromDay, Date toDay, Duration maxTime)
+        {
+        TypedAggregation<DailyChangeRollup> aggregation = sumChangesAggregation(applicationIds, fromDay, toDay)
+                .withOptions(AggregationOptions.builder().maxTime(maxTime).build());
+        try {
+            return mongoTemplate.aggregate(aggregation, ChangeCounts.class).getMappedResults();
+        } catch (UncategorizedMongoDbException e) {
+            if (e.getCause() instanceof MongoExecutionTimeoutException) {
+                throw new QueryTimeoutException("Summing changes for " + applicationIds.size() + " applications took longer than " + maxTime, e);
+            }
+            throw e;
+        }
+        }
+
+    private static TypedAggregation<DailyChangeRollup> sumChangesAggregation(Collection<String> applicationIds, Date fromDay, Date toDay)
+        {
+        return newAggregation(DailyChangeRollup.class,
+                match(where("applicationId").in(applicationIds).and("day").gte(fromDay).lte(toDay)),
+                group("applicationId").sum("total").as("total").sum("failed").as("failed"));
+        }
+
+    @Override
+    public List<DailyChangeRollup> findDays(String applicationId, Date fromDay, Date toDay)
+        {
+        Query query = new Query(where("applicationId").is(applicationId).and("day").gte(fromDay).lte(toDay))
+                .with(Sort.by(Sort.Direction.ASC, "day"));
+        return mongoTemplate.find(query, DailyChangeRollup.class);
+        }
+
+    //Recounts the rollups in place, one day at a time. A day a writer has touched since the rebuild started, or is part way through
+    //writing, is left to the writer in the first pass, which can't tell whether its aggregation saw that write. Those days are recounted
+    //one by one afterwards, each only if nothing wrote to it meanwhile. Callers run one rebuild at a time, and no archival alongside it,
+    //as a change request moving between collections while they are read could be counted twice.
+    @Override
+    public long rebuild()
+        {
+        Date started = serverTime();
+        Date abandonedBefore = new Date(started.getTime() - writeTimeout.toMillis());
+
+        long rows = 0;
+        List<DailyChangeRollup> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+        DailyChangeRollup day = null;
+        try (CloseableIterator<Document> groups = dailyGroupsOfBothTiers()) {
+            while (groups.hasNext()) {
+                DailyChangeRollup next = rollupOf(groups.next());
+                //Both tiers can hold the same day, a change request sent again after archiving moves back
+                if (day != null && day.getId().equals(next.getId())) {
+                    day = plus(day, next);
+                    continue;
+                }
+                if (day != null) {
+                    batch.add(day);
+                }
+                day = next;
+                if (batch.size() == REBUILD_BATCH_SIZE) {
+                    rows += reconcile(batch, started, abandonedBefore);
+                    batch.clear();
+                }
+            }
+        }
+        if (day != null) {
+            batch.add(day);
+        }
+        if (!batch.isEmpty()) {
+            rows += reconcile(batch, started, abandonedBefore);
+        }
+
+        //Days no change request falls on any more
+        Query emptied = new Query(where(REBUILT_AT).ne(started)).addCriteria(idleSince(started, abandonedBefore));
+        long removed = mongoTemplate.remove(emptied, DailyChangeRollup.class).getDeletedCount();
+
+        rows += recountTouchedDays(started, abandonedBefore);
+        log.info("Rebuilt {} daily change rollups, removed {} with no change requests left", rows, removed);
+        return rows;
+        }
+
+    //The daily groups of the change request collection, then merged in order with those of the archive
+    private CloseableIterator<Document> dailyGroupsOfBothTiers()
+        {
+        List<AggregationOperation> operations = new ArrayList<>(dailyGroups());
+        operations.add(context -> new Document("$sort", new Document("_id", 1)));
+        TypedAggregation<ChangeRequest> aggregation = newAggregation(ChangeRequest.class, operations)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        CloseableIterator<Document> groups = mongoTemplate.aggregateStream(aggregation, Document.class);
+        if (!archiveEnabled) {
+            return groups;
+        }
+        return new MergingCloseableIterator<>(groups,
+                mongoTemplate.aggregateStream(aggregation, ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION, Document.class), GROUP_ORDER);
+        }
+
+    //Days no writer has touched since the rebuild started and none is part way through, or whose writer went quiet long enough ago
+    //to have died part way through
+    private static Criteria idleSince(Date started, Date abandonedBefore)
+        {
+        return new Criteria().orOperator(
+                where(TOUCHED_AT).exists(false),
+                where(TOUCHED_AT).lt(started).and(PENDING).not().gt(0),
+                where(TOUCHED_AT).lt(abandonedBefore));
+        }
+
+    //Sets the counts of the days still idle since the rebuild started, returning how many it set
+    private long reconcile(List<DailyChangeRollup> rollups, Date started, Date abandonedBefore)
+        {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyChangeRollup.class);
+        rollups.forEach(rollup -> bulkOps.upsert(new Query(where("id").is(rollup.getId())).addCriteria(idleSince(started, abandonedBefore)), new Update()
+                .set("applicationId", rollup.getApplicationId())
+                .set("day", rollup.getDay())
+                .set("total", rollup.getTotal())
+                .set("failed", rollup.getFailed())
+                .set(PENDING, 0)
+                .set(REBUILT_AT, started)
+                .inc(VERSION, 1)));
+        BulkWriteResult result;
+        try {
+            result = bulkOps.execute();
+        } catch (BulkOperationException e) {
+            //A day that isn't idle fails the filter, the upsert then collides with its document and the day is left for the recount
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            result = e.getResult();
+        }
+        return result.getMatchedCount() + result.getUpserts().size();
+        }
+
+    //Recounts the days the first pass left to their writers, each one set only if no writer has touched it since it was read
+    private long recountTouchedDays(Date started, Date abandonedBefore)
+        {
+        long rows = 0;
+        Query touched = new Query(where(REBUILT_AT).ne(started));
+        String collection = mongoTemplate.getCollectionName(DailyChangeRollup.class);
+        for (int round = 0; round < RECOUNT_ROUNDS; round++) {
+            List<Document> days = mongoTemplate.find(touched, Document.class, collection);
+            if (days.isEmpty()) {
+                return rows;
+            }
+            if (round > 0) {
+                try {
+                    Thread.sleep(RECOUNT_PAUSE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (Document day : days) {
+                Number pending = day.get(PENDING, Number.class);
+                Date touchedAt = day.getDate(TOUCHED_AT);
+                if (pending != null && pending.intValue() > 0 && touchedAt != null && !touchedAt.before(abandonedBefore)) {
+                    continue;
+                }
+                String applicationId = day.getString("applicationId");
+                Date from = day.getDate("day");
+                List<DailyChangeRollup> counts = countDays(ChangeRequestFilter.of(applicationId, null, from, new Date(from.getTime() + 86_400_000L)));
+                int total = counts.stream().mapToInt(DailyChangeRollup::getTotal).sum();
+                int failed = counts.stream().mapToInt(DailyChangeRollup::getFailed).sum();
+                Query unchanged = new Query(where("id").is(day.get("_id")).and(VERSION).is(day.get(VERSION)));
+                Update recount = new Update().set("total", total).set("failed", failed).set(PENDING, 0).set(REBUILT_AT, started).inc(VERSION, 1);
+                rows += mongoTemplate.updateFirst(unchanged, recount, DailyChangeRollup.class).getModifiedCount();
+            }
+        }
+        long left = mongoTemplate.count(touched, DailyChangeRollup.class);
+        if (left > 0) {
+            log.info("Left {} daily change rollups that were being written throughout the rebuild to their writers", left);
+        }
+        return rows;
+        }
+
+    private Date serverTime()
+        {
+        return mongoTemplate.getDb().runCommand(new Document("isMaster", 1)).getDate("localTime");
+        }
+
+    @Override
+    public List<DailyChangeRollup> countDays(ChangeRequestFilter filter)
+        {
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(match(ChangeRequestRepoCustomImpl.criteriaFor(filter)));
+        operations.addAll(dailyGroups());
+        Map<String, DailyChangeRollup> rollups = new LinkedHashMap<>();
+        mongoTemplate.aggregate(newAggregation(ChangeRequest.class, operations), Document.class)
+                .forEach(group -> rollups.merge(rollupOf(group).getId(), rollupOf(group), DailyChangeRollupRepoCustomImpl::plus));
+        //Deleting matching change requests removes them from the archive too
+        if (archiveEnabled) {
+            mongoTemplate.aggregate(newAggregation(ChangeRequest.class, operations), ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION, Document.class)
+                    .forEach(group -> rollups.merge(rollupOf(group).getId(), rollupOf(group), DailyChangeRollupRepoCustomImpl::plus));
+        }
+        return new ArrayList<>(rollups.values());
+        }
+
+    private static DailyChangeRollup plus(DailyChangeRollup a, DailyChangeRollup b)
+        {
+        return new DailyChangeRollup(a.getId(), a.getApplicationId(), a.getDay(), a.getTotal() + b.getTotal(), a.getFailed() + b.getFailed());
+        }
+
+    @Override
+    public void subtract(List<DailyChangeRollup> rollups)
+        {
+        Map<String, Delta> deltas = new LinkedHashMap<>();
+        rollups.forEach(rollup -> deltaFor(deltas, rollup).subtract(rollup));
+        write(deltas);
+        }
+
+    //Sets the days of one application in a closed range, widened to whole days, to a fresh count. The rollups are read before the count
+    //and each day is only set if no writer has touched it since, or is part way through writing it; those are left to the next rebuild.
+    @Override
+    public long recountDays(String applicationId, Date closedFrom, Date closedTo)
+        {
+        Date fromDay = closedFrom == null ? null : DailyChangeRollup.dayOf(closedFrom);
+        Date toDay = closedTo == null ? null : new Date(DailyChangeRollup.dayOf(new Date(closedTo.getTime() - 1)).getTime() + 86_400_000L);
+        Criteria days = where("applicationId").is(applicationId);
+        if (fromDay != null || toDay != null) {
+            days = days.and("day");
+            if (fromDay != null) {
+                days = days.gte(fromDay);
+            }
+            if (toDay != null) {
+                days = days.lt(toDay);
+            }
+        }
+        List<Document> stored = mongoTemplate.find(new Query(days), Document.class, mongoTemplate.getCollectionName(DailyChangeRollup.class));
+        if (stored.isEmpty()) {
+            return 0;
+        }
+        Map<String, DailyChangeRollup> counts = new HashMap<>();
+        countDays(ChangeRequestFilter.of(applicationId, null, fromDay, toDay)).forEach(rollup -> counts.put(rollup.getId(), rollup));
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyChangeRollup.class);
+        for (Document day : stored) {
+            DailyChangeRollup count = counts.get(day.getString("_id"));
+            Query unchanged = new Query(where("id").is(day.get("_id")).and(VERSION).is(day.get(VERSION)).and(PENDING).not().gt(0));
+            bulkOps.updateOne(unchanged, new Update()
+                    .set("total", count == null ? 0 : count.getTotal())
+                    .set("failed", count == null ? 0 : count.getFailed())
+                    .inc(VERSION, 1)
+                    .currentDate(TOUCHED_AT)
+                    .unset(REBUILT_AT));
+        }
+        long recounted = bulkOps.execute().getMatchedCount();
+        if (recounted < stored.size()) {
+            log.info("Left {} daily change rollups of {} that were being written to the next rebuild", stored.size() - recounted, applicationId);
+        }
+        return recounted;
+        }
+
+    //Groups change requests into the total and failed count of each application per UTC day
+    private static List<AggregationOperation> dailyGroups()
+        {
+        //A change request stored in the other layout has no closed field to put it on a day
+        return Arrays.asList(
+                match(where("closed").exists(true)),
+                project("applicationId", "failed").and(DateOperators.dateOf("closed").toString("%Y-%m-%d")).as("day"),
+                group("applicationId", "day")
+                        .count().as("total")
+                        .sum(ConditionalOperators.when(ComparisonOperators.valueOf("failed").equalToValue(true)).then(1).otherwise(0)).as("failed"));
+        }
+
+    private static DailyChangeRollup rollupOf(Document group)
+        {
+        Document key = group.get("_id", Document.class);
+        String applicationId = key.getString("applicationId");
+        Date day = Date.from(LocalDate.parse(key.getString("day")).atStartOfDay(ZoneOffset.UTC).toInstant());
+        return new DailyChangeRollup(DailyChangeRollup.idOf(applicationId, day), applicationId, day, group.getInteger("total"), group.getInteger("failed"));
+        }
+
+    private static Delta deltaFor(Map<String, Delta> deltas, ChangeRequestState state)
+        {
+        Date day = DailyChangeRollup.dayOf(state.getClosed());
+        return deltas.computeIfAbsent(DailyChangeRollup.idOf(state.getApplicationId(), day), id -> new Delta(state.getApplicationId(), day));
+        }
+
+    private static Delta deltaFor(Map<String, Delta> deltas, DailyChangeRollup rollup)
+        {
+        return deltas.computeIfAbsent(rollup.getId(), id -> new Delta(rollup.getApplicationId(), rollup.getDay()));
+        }
+
+    private static class Delta
+        {
+        private final String applicationId;
+        private final Date day;
+        private int total;
+        private int failed;
+        private int pending;
+
+        Delta(String applicationId, Date day)
+            {
+            this.applicationId = applicationId;
+            this.day = day;
+            }
+
+        void add(ChangeRequestState state, int sign)
+            {
+            total += sign;
+            if (Boolean.TRUE.equals(state.getFailed())) {
+                failed += sign;
+            }
+            }
+
+        void subtract(DailyChangeRollup rollup)
+            {
+            total -= rollup.getTotal();
+            failed -= rollup.getFailed();
+            }
+        }
+    }
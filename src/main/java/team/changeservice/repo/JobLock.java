@@ -0,0 +1,98 @@
+package team.changeservice.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+//Leases on named jobs, held in the jobLock collection, so a job every instance schedules on the same cron is run by one of them at a time.
+//The holder renews its lease while the job runs. If an instance dies holding one, another can take it once the lease has run out,
+//so the lease has to be longer than the clocks of the instances are apart.
+@Component
+public class JobLock implements DisposableBean
+    {
+    private static final Logger log = LoggerFactory.getLogger(JobLock.class);
+    static final String COLLECTION = "jobLock";
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration lease;
+    private final ScheduledExecutorService renewer;
+
+    @Autowired
+    public JobLock(MongoTemplate mongoTemplate, @Value("${changeservice.job-lock.lease:5m}") Duration lease)
+        {
+        this.mongoTemplate = mongoTemplate;
+        this.lease = lease;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-lock-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        }
+
+    //Runs the job if no other instance holds the named lock, returning false without running it if one does
+    public boolean runExclusively(String name, Runnable job)
+        {
+        String owner = UUID.randomUUID().toString();
+        if (!acquire(name, owner)) {
+            return false;
+        }
+        long renewEvery = Math.max(1, lease.toMillis() / 3);
+        ScheduledFuture<?> renewal = renewer.scheduleAtFixedRate(() -> renew(name, owner), renewEvery, renewEvery, TimeUnit.MILLISECONDS);
+        try {
+            job.run();
+            return true;
+        } finally {
+            renewal.cancel(false);
+            mongoTemplate.remove(new Query(where("_id").is(name).and("owner").is(owner)), COLLECTION);
+        }
+        }
+
+    private boolean acquire(String name, String owner)
+        {
+        Date now = new Date();
+        Query free = new Query(where("_id").is(name).and("lockedUntil").lte(now));
+        Update take = new Update().set("owner", owner).set("lockedAt", now).set("lockedUntil", new Date(now.getTime() + lease.toMillis()));
+        //When another instance holds the lock the filter matches nothing and the upsert collides with its document
+        try {
+            mongoTemplate.upsert(free, take, COLLECTION);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        }
+
+    private void renew(String name, String owner)
+        {
+        try {
+            Update extend = new Update().set("lockedUntil", new Date(System.currentTimeMillis() + lease.toMillis()));
+            if (mongoTemplate.updateFirst(new Query(where("_id").is(name).and("owner").is(owner)), extend, COLLECTION).getMatchedCount() == 0) {
+                log.warn("Lost the {} job lock, its lease ran out before it could be renewed", name);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew the {} job lock", name, e);
+        }
+        }
+
+    @Override
+    public void destroy()
+        {
+        renewer.shutdownNow();
+        }
+    }
@@ -0,0 +1,62 @@
+package team.changeservice.repo;
+
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+//Interleaves two iterators that are each sorted by the comparator into one sorted iterator, without reading ahead more than one element of each
+class MergingCloseableIterator<T> implements CloseableIterator<T>
+    {
+    private final CloseableIterator<T> first;
+    private final CloseableIterator<T> second;
+    private final Comparator<? super T> comparator;
+    private T nextOfFirst;
+    private T nextOfSecond;
+
+    MergingCloseableIterator(CloseableIterator<T> first, CloseableIterator<T> second, Comparator<? super T> comparator)
+        {
+        this.first = first;
+        this.second = second;
+        this.comparator = comparator;
+        }
+
+    @Override
+    public boolean hasNext()
+        {
+        return nextOfFirst != null || nextOfSecond != null || first.hasNext() || second.hasNext();
+        }
+
+    @Override
+    public T next()
+        {
+        if (nextOfFirst == null && first.hasNext()) {
+            nextOfFirst = first.next();
+        }
+        if (nextOfSecond == null && second.hasNext()) {
+            nextOfSecond = second.next();
+        }
+        if (nextOfFirst == null && nextOfSecond == null) {
+            throw new NoSuchElementException();
+        }
+        T next;
+        if (nextOfSecond == null || (nextOfFirst != null && comparator.compare(nextOfFirst, nextOfSecond) <= 0)) {
+            next = nextOfFirst;
+            nextOfFirst = null;
+        } else {
+            next = nextOfSecond;
+            nextOfSecond = null;
+        }
+        return next;
+        }
+
+    @Override
+    public void close()
+        {
+        try {
+            first.close();
+        } finally {
+            second.close();
+        }
+        }
+    }
@@ -0,0 +1,10 @@
+package team.changeservice.repo;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import team.changeservice.model.ChangeRequest;
+
+@Repository
+public interface ReactiveChangeRequestRepo extends ReactiveMongoRepository<ChangeRequest, String>, ReactiveChangeRequestRepoCustom
+    {
+    }
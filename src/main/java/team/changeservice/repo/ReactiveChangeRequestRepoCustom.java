@@ -0,0 +1,16 @@
+package team.changeservice.repo;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeRequest;
+
+import java.util.Collection;
+import java.util.Date;
+
+public interface ReactiveChangeRequestRepoCustom
+    {
+        //Empty when archival is turned off
+        Mono<ChangeRequest> findArchivedById(String changeRequestId);
+
+        Flux<ChangeRequest> stream(Collection<String> applicationIds, Date closedFrom, Date closedTo);
+    }
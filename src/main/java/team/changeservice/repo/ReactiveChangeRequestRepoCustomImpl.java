@@ -0,0 +1,59 @@
+package team.changeservice.repo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeRequest;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+
+public class ReactiveChangeRequestRepoCustomImpl implements ReactiveChangeRequestRepoCustom
+    {
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final boolean archiveEnabled;
+    private final Duration archiveHorizon;
+
+    public ReactiveChangeRequestRepoCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate)
+        {
+        this(reactiveMongoTemplate, false, Duration.ZERO);
+        }
+
+    @Autowired
+    public ReactiveChangeRequestRepoCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate,
+                                               @Value("${changeservice.archive.enabled:false}") boolean archiveEnabled,
+                                               @Value("${changeservice.archive.horizon:400d}") Duration archiveHorizon)
+        {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.archiveEnabled = archiveEnabled;
+        this.archiveHorizon = archiveHorizon;
+        }
+
+    @Override
+    public Mono<ChangeRequest> findArchivedById(String changeRequestId)
+        {
+        if (!archiveEnabled) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.findById(changeRequestId, ChangeRequest.class, ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION);
+        }
+
+    //Reads the archive under the same horizon as the blocking repository, merging both collections in closed order when it can hold some
+    @Override
+    public Flux<ChangeRequest> stream(Collection<String> applicationIds, Date closedFrom, Date closedTo)
+        {
+        Flux<ChangeRequest> changeRequests = reactiveMongoTemplate.find(ChangeRequestRepoCustomImpl.pageQuery(applicationIds, closedFrom, closedTo, null)
+                .cursorBatchSize(STREAM_BATCH_SIZE), ChangeRequest.class);
+        if (!ChangeRequestRepoCustomImpl.spansArchive(archiveEnabled, archiveHorizon, closedFrom)) {
+            return changeRequests;
+        }
+        Flux<ChangeRequest> archived = reactiveMongoTemplate.find(ChangeRequestRepoCustomImpl.pageQuery(applicationIds, closedFrom, closedTo, null)
+                .cursorBatchSize(STREAM_BATCH_SIZE), ChangeRequest.class, ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION);
+        return Flux.mergeOrdered(ChangeRequestRepoCustomImpl.PAGE_ORDER, changeRequests, archived);
+        }
+    }
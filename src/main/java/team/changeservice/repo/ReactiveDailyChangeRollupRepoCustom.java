@@ -0,0 +1,11 @@
+package team.changeservice.repo;
+
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeCounts;
+
+import java.util.Date;
+
+public interface ReactiveDailyChangeRollupRepoCustom
+    {
+        Mono<ChangeCounts> sumChanges(String applicationId, Date fromDay, Date toDay);
+    }
@@ -0,0 +1,37 @@
+package team.changeservice.repo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ReactiveDailyChangeRollupRepoCustomImpl implements ReactiveDailyChangeRollupRepoCustom
+    {
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    public ReactiveDailyChangeRollupRepoCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate)
+        {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        }
+
+    @Override
+    public Mono<ChangeCounts> sumChanges(String applicationId, Date fromDay, Date toDay)
+        {
+        TypedAggregation<DailyChangeRollup> aggregation = newAggregation(DailyChangeRollup.class,
+                match(where("applicationId").is(applicationId).and("day").gte(fromDay).lte(toDay)),
+                group("applicationId").sum("total").as("total").sum("failed").as("failed"));
+        return reactiveMongoTemplate.aggregate(aggregation, ChangeCounts.class)
+                .next()
+                .defaultIfEmpty(new ChangeCounts(applicationId, 0, 0));
+        }
+    }
@@ -0,0 +1,18 @@
+package team.changeservice.repo;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+@Configuration
+public class ReadRoutingConfig
+    {
+    //Takes the place of the template Spring Boot would create, from the same factory and converter
+    @Bean
+    public MongoTemplate mongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter)
+        {
+        return new ReadRoutingMongoTemplate(mongoDatabaseFactory, mongoConverter);
+        }
+    }
@@ -0,0 +1,52 @@
+package team.changeservice.repo;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.util.function.Supplier;
+
+//A MongoTemplate whose reads follow the read preference bound to the calling thread, so the repositories can serve a reporting
+//query from a secondary without each of their methods taking a read preference. Outside readingFrom everything goes to the primary.
+public class ReadRoutingMongoTemplate extends MongoTemplate
+    {
+    private static final ThreadLocal<ReadPreference> ROUTED = new ThreadLocal<>();
+
+    public ReadRoutingMongoTemplate(MongoDatabaseFactory mongoDbFactory, MongoConverter mongoConverter)
+        {
+        super(mongoDbFactory, mongoConverter);
+        }
+
+    //Cursors opened inside the supplier stay on the member they were opened on, so streams can be consumed after it returns
+    public static <T> T readingFrom(ReadPreference readPreference, Supplier<T> reads)
+        {
+        ReadPreference outer = ROUTED.get();
+        ROUTED.set(readPreference);
+        try {
+            return reads.get();
+        } finally {
+            if (outer == null) {
+                ROUTED.remove();
+            } else {
+                ROUTED.set(outer);
+            }
+        }
+        }
+
+    public static ReadPreference routedReadPreference()
+        {
+        return ROUTED.get();
+        }
+
+    //Every find, stream and aggregate goes through here. Writes ignore the read preference of the collection.
+    @Override
+    protected MongoCollection<Document> prepareCollection(MongoCollection<Document> collection)
+        {
+        ReadPreference routed = ROUTED.get();
+        MongoCollection<Document> prepared = super.prepareCollection(collection);
+        return routed == null ? prepared : prepared.withReadPreference(routed);
+        }
+    }
@@ -0,0 +1,58 @@
+package team.changeservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import team.changeservice.repo.ChangeRequestIndexManager;
+import team.changeservice.repo.ChangeRequestRepo;
+import team.changeservice.repo.JobLock;
+
+@Component
+public class ChangeRequestArchiveJob
+    {
+    private static final Logger log = LoggerFactory.getLogger(ChangeRequestArchiveJob.class);
+
+    private final ChangeRequestRepo changeRequestRepo;
+    private final ChangeRequestIndexManager indexManager;
+    private final JobLock jobLock;
+    private final boolean enabled;
+    private final int batchSize;
+
+    @Autowired
+    public ChangeRequestArchiveJob(ChangeRequestRepo changeRequestRepo, ChangeRequestIndexManager indexManager, JobLock jobLock,
+                                   @Value("${changeservice.archive.enabled:false}") boolean enabled,
+                                   @Value("${changeservice.archive.batch-size:1000}") int batchSize)
+        {
+        this.changeRequestRepo = changeRequestRepo;
+        this.indexManager = indexManager;
+        this.jobLock = jobLock;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        }
+
+    @Scheduled(cron = "${changeservice.archive.cron:-}")
+    public void archive()
+        {
+        if (!enabled) {
+            log.warn("Change request archival is scheduled but changeservice.archive.enabled is off, nothing archived");
+            return;
+        }
+        //One instance archives at a time, and never while the rollups are being rebuilt from both collections
+        if (!jobLock.runExclusively(DailyChangeRollupRebuildJob.LOCK, this::archiveNow)) {
+            log.info("Another instance is archiving or rebuilding the daily change rollups, skipping this archival");
+        }
+        }
+
+    private void archiveNow()
+        {
+        log.info("Archiving change requests");
+        long start = System.currentTimeMillis();
+        indexManager.ensureArchiveIndexes();
+        //Change requests only move between collections, so the rollups and application versions stay as they are
+        long archived = changeRequestRepo.archive(batchSize);
+        log.info("Archived {} change requests in {} ms", archived, System.currentTimeMillis() - start);
+        }
+    }
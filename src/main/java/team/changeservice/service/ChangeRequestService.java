@@ -1,27 +1,63 @@
 package team.changeservice.service;
 
+import com.mongodb.WriteConcern;
+import team.changeservice.model.ApplicationVersion;
+import team.changeservice.model.BulkStoreResult;
 import team.changeservice.model.ChangeFailureRate;
 import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.HierarchyChangeFailureRate;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ChangeRequestService
     {
         ChangeRequest store(ChangeRequest changeRequest);
 
+        BulkStoreResult storeAll(List<ChangeRequest> changeRequests);
+
+        //Written in unordered bulk writes of up to chunkSize change requests each
+        BulkStoreResult storeAll(List<ChangeRequest> changeRequests, WriteConcern writeConcern, int chunkSize);
+
         Optional<ChangeRequest> get(String id);
 
-        List<ChangeRequest> list();
+        //Empty for an application that hasn't been written to since versions were introduced
+        Optional<ApplicationVersion> getApplicationVersion(String applicationId);
+
+        ChangeRequestPage list(String cursor, Integer limit, ChangeRequestFields fields);
         
         String delete(String id);
+
+        long deleteAll(Collection<String> ids);
+
+        //Deletes change requests closed on or after closedFrom and before closedTo, any of the criteria can be null
+        long deleteMatching(String applicationId, String source, Date closedFrom, Date closedTo);
         
-        List<ChangeRequest> listAllForApplication(String applicationId);
+        ChangeRequestPage listForApplication(String applicationId, String cursor, Integer limit, ChangeRequestFields fields);
 
-        List<ChangeRequest> listAllForHierarchy(String applicationId);
+        ChangeRequestPage listForHierarchy(String applicationId, String cursor, Integer limit, ChangeRequestFields fields);
 
-        List<ChangeRequest> listAllForApplication(String applicationId, Date reportingDate);
+        ChangeRequestPage listForApplication(String applicationId, Date reportingDate, String cursor, Integer limit, ChangeRequestFields fields);
         
+        // The streams below hold an open Mongo cursor and must be closed by the caller
+        Stream<ChangeRequest> streamAll(ChangeRequestFields fields);
+
+        Stream<ChangeRequest> streamForApplication(String applicationId, ChangeRequestFields fields);
+
+        Stream<ChangeRequest> streamForHierarchy(String applicationId, ChangeRequestFields fields);
+
+        Stream<ChangeRequest> streamForApplication(String applicationId, Date reportingDate, ChangeRequestFields fields);
+
         ChangeFailureRate calculateChangeFailureRate(String applicationId, Date reportingDate);
+
+        List<ChangeFailureRate> calculateChangeFailureRates(Collection<String> applicationIds, Date reportingDate);
+
+        HierarchyChangeFailureRate calculateHierarchyChangeFailureRate(String applicationId, Date reportingDate);
+
+        List<ChangeFailureRate> calculateChangeFailureRateSeries(String applicationId, Date fromDate, Date toDate);
     }
@@ -1,37 +1,105 @@
 package team.changeservice.service;
 
+import com.mongodb.WriteConcern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.stereotype.Service;
 import team.changeservice.hierarchy.repo.HierarchyClient;
+import team.changeservice.model.ApplicationVersion;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeCounts;
 import team.changeservice.model.ChangeFailureRate;
 import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestCursor;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.ChangeRequestWriteResult;
 import team.changeservice.model.DORALevel;
+import team.changeservice.model.DailyChangeRollup;
+import team.changeservice.model.HierarchyChangeFailureRate;
+import team.changeservice.model.WriteStatus;
+import team.changeservice.repo.ApplicationVersionRepo;
 import team.changeservice.repo.ChangeRequestRepo;
+import team.changeservice.repo.DailyChangeRollupRepo;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
-public class ChangeRequestServiceImpl implements ChangeRequestService
+public class ChangeRequestServiceImpl implements ChangeRequestService, DisposableBean
     {
     private static final Logger log = LoggerFactory.getLogger(ChangeRequestServiceImpl.class);
+    static final int CFR_WINDOW_DAYS = 90;
 
     private final ChangeRequestRepo changeRequestRepo;
+    private final DailyChangeRollupRepo dailyChangeRollupRepo;
+    private final ApplicationVersionRepo applicationVersionRepo;
     private final HierarchyClient hierarchyClient;
+    private final ReadRouting readRouting;
+    private final int bulkChunkSize;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final Duration hierarchyCfrMaxTime;
+    private final int hierarchyCfrSliceSize;
+    private final ExecutorService hierarchyCfrExecutor;
 
     @Autowired
-    public ChangeRequestServiceImpl(ChangeRequestRepo changeRequestRepo, HierarchyClient hierarchyClient)
+    public ChangeRequestServiceImpl(ChangeRequestRepo changeRequestRepo, DailyChangeRollupRepo dailyChangeRollupRepo, ApplicationVersionRepo applicationVersionRepo, HierarchyClient hierarchyClient, ReadRouting readRouting,
+                                    @Value("${changeservice.bulk.chunk-size:1000}") int bulkChunkSize,
+                                    @Value("${changeservice.page.default-size:100}") int defaultPageSize,
+                                    @Value("${changeservice.page.max-size:1000}") int maxPageSize,
+                                    @Value("${changeservice.cfr.hierarchy.max-time:2s}") Duration hierarchyCfrMaxTime,
+                                    @Value("${changeservice.cfr.hierarchy.slice-size:25}") int hierarchyCfrSliceSize,
+                                    @Value("${changeservice.cfr.hierarchy.parallelism:4}") int hierarchyCfrParallelism)
         {
         this.changeRequestRepo = changeRequestRepo;
+        this.dailyChangeRollupRepo = dailyChangeRollupRepo;
+        this.applicationVersionRepo = applicationVersionRepo;
         this.hierarchyClient = hierarchyClient;
+        this.readRouting = readRouting;
+        this.bulkChunkSize = bulkChunkSize;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.hierarchyCfrMaxTime = hierarchyCfrMaxTime;
+        this.hierarchyCfrSliceSize = hierarchyCfrSliceSize;
+        AtomicInteger threads = new AtomicInteger();
+        this.hierarchyCfrExecutor = Executors.newFixedThreadPool(hierarchyCfrParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "hierarchy-cfr-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         }
 
-    private DORALevel findDORAPerfLevel(BigDecimal cfrPercent){
+    @Override
+    public void destroy()
+        {
+        hierarchyCfrExecutor.shutdownNow();
+        }
+
+    static DORALevel findDORAPerfLevel(BigDecimal cfrPercent){
         if(cfrPercent.compareTo(new BigDecimal("0.15")) <= 0){
             return DORALevel.ELITE;
         } else {
@@ -43,80 +111,398 @@ public class ChangeRequestServiceImpl implements ChangeRequestService
     public ChangeRequest store(ChangeRequest changeRequest)
         {
         log.info("Storing change request with id {}", changeRequest.getChangeRequestId());
-        return changeRequestRepo.save(changeRequest);
+        ChangeRequestWriteResult result = storeChunk(Collections.singletonList(changeRequest), null).get(0);
+        if (result.getStatus() == WriteStatus.FAILED) {
+            throw new DataIntegrityViolationException(result.getError());
+        }
+        return changeRequest;
+        }
+
+    @Override
+    public BulkStoreResult storeAll(List<ChangeRequest> changeRequests)
+        {
+        return storeAll(changeRequests, null, bulkChunkSize);
+        }
+
+    @Override
+    public BulkStoreResult storeAll(List<ChangeRequest> changeRequests, WriteConcern writeConcern, int chunkSize)
+        {
+        log.info("Bulk storing {} change requests in chunks of {}", changeRequests.size(), chunkSize);
+        List<ChangeRequestWriteResult> results = new ArrayList<>(changeRequests.size());
+        List<ChangeRequest> chunk = new ArrayList<>(Math.min(chunkSize, changeRequests.size()));
+        Set<String> chunkIds = new HashSet<>();
+        for (ChangeRequest changeRequest : changeRequests) {
+            //A change request sent twice ends the chunk, so the later version is written after the earlier one rather than
+            //racing it in the same unordered bulk write, and the rollups back out the earlier version rather than what was stored before it
+            if (chunk.size() == chunkSize || !chunkIds.add(changeRequest.getChangeRequestId())) {
+                results.addAll(storeChunk(chunk, writeConcern));
+                chunk = new ArrayList<>(Math.min(chunkSize, changeRequests.size()));
+                chunkIds.clear();
+                chunkIds.add(changeRequest.getChangeRequestId());
+            }
+            chunk.add(changeRequest);
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(storeChunk(chunk, writeConcern));
+        }
+        BulkStoreResult result = new BulkStoreResult(results);
+        log.info("Bulk stored {} change requests, {} written and {} unchanged", changeRequests.size(), result.getInserted() + result.getReplaced(), result.getUnchanged());
+        return result;
+        }
+
+    private List<ChangeRequestWriteResult> storeChunk(List<ChangeRequest> chunk, WriteConcern writeConcern)
+        {
+        List<String> ids = chunk.stream().map(ChangeRequest::getChangeRequestId).collect(Collectors.toList());
+        Map<String, ChangeRequestState> stored = changeRequestRepo.findStates(ids).stream()
+                .collect(Collectors.toMap(ChangeRequestState::getChangeRequestId, Function.identity()));
+
+        //Exporters resend recent change requests on every sync, only write the ones whose content has changed
+        ChangeRequestWriteResult[] results = new ChangeRequestWriteResult[chunk.size()];
+        Map<String, String> latestHashes = new HashMap<>();
+        stored.forEach((id, state) -> latestHashes.put(id, state.getContentHash()));
+        List<Integer> changedIndexes = new ArrayList<>();
+        List<ChangeRequestState> changedStates = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            ChangeRequestState state = ChangeRequestState.of(chunk.get(i));
+            String previousHash = latestHashes.put(state.getChangeRequestId(), state.getContentHash());
+            if (state.getContentHash().equals(previousHash)) {
+                results[i] = new ChangeRequestWriteResult(state.getChangeRequestId(), WriteStatus.UNCHANGED, null);
+            } else {
+                changedIndexes.add(i);
+                changedStates.add(state);
+            }
+        }
+
+        //Fence the days the writes touch, so a rollup rebuild running meanwhile leaves them to us
+        List<ChangeRequestState> changing = new ArrayList<>(changedStates);
+        changedStates.forEach(state -> Optional.ofNullable(stored.get(state.getChangeRequestId())).ifPresent(changing::add));
+        dailyChangeRollupRepo.beginChanges(changing);
+
+        //An upsert can move a change to another day or flip its failed flag, so back out what was stored before
+        List<ChangeRequestState> removed = new ArrayList<>();
+        List<ChangeRequestState> added = new ArrayList<>();
+        try {
+            List<ChangeRequestWriteResult> written = changeRequestRepo.bulkUpsert(changedIndexes.stream().map(chunk::get).collect(Collectors.toList()), writeConcern);
+            for (int i = 0; i < changedIndexes.size(); i++) {
+                results[changedIndexes.get(i)] = written.get(i);
+                if (written.get(i).getStatus() == WriteStatus.FAILED) {
+                    continue;
+                }
+                ChangeRequestState state = changedStates.get(i);
+                ChangeRequestState previous = stored.put(state.getChangeRequestId(), state);
+                if (previous != null) {
+                    removed.add(previous);
+                }
+                added.add(state);
+            }
+        } finally {
+            dailyChangeRollupRepo.endChanges(changing, removed, added);
+        }
+        //After the writes, so a reader who sees the new version also sees what changed
+        Set<String> applicationIds = new LinkedHashSet<>();
+        removed.forEach(state -> applicationIds.add(state.getApplicationId()));
+        added.forEach(state -> applicationIds.add(state.getApplicationId()));
+        applicationVersionRepo.bump(applicationIds);
+        return Arrays.asList(results);
         }
 
     @Override
     public Optional<ChangeRequest> get(String id)
         {
         log.info("Getting change request with id {}", id);
-        return changeRequestRepo.findById(id);
+        return changeRequestRepo.findById(id).or(() -> changeRequestRepo.findArchivedById(id));
         }
 
     @Override
-    public List<ChangeRequest> list()
+    public Optional<ApplicationVersion> getApplicationVersion(String applicationId)
         {
-        log.info("List all change requests");
-        return changeRequestRepo.findAll();
+        return applicationVersionRepo.findById(applicationId);
+        }
+
+    @Override
+    public ChangeRequestPage list(String cursor, Integer limit, ChangeRequestFields fields)
+        {
+        log.info("List change requests after cursor {}", cursor);
+        ChangeRequestCursor after = ChangeRequestCursor.decode(cursor);
+        return readRouting.read("list", () -> changeRequestRepo.findPage(null, null, null, after, pageSize(limit), fields));
         }
 
     @Override
     public String delete(String id)
         {
         log.info("Deleting change request with id {}", id);
-        Optional<ChangeRequest> changeRequest = get(id);
-        changeRequest.ifPresent(changeRequestRepo::delete);
+        //Not fenced like other writes: a rebuild recounts a day whose version moves after it set it, so it can't keep a count that
+        //already left this change request out and have it subtracted again
+        ChangeRequestState removed = changeRequestRepo.findAndRemoveState(id);
+        if (removed != null) {
+            dailyChangeRollupRepo.applyChanges(Collections.singletonList(removed), Collections.emptyList());
+            applicationVersionRepo.bump(Collections.singletonList(removed.getApplicationId()));
+        }
         return id;
         }
 
     @Override
-    public List<ChangeRequest> listAllForApplication(String applicationId)
+    public long deleteAll(Collection<String> ids)
+        {
+        log.info("Deleting {} change requests by id", ids.size());
+        return delete(ChangeRequestFilter.ofIds(ids));
+        }
+
+    @Override
+    public long deleteMatching(String applicationId, String source, Date closedFrom, Date closedTo)
+        {
+        log.info("Deleting change requests for application {} from source {} closed between {} and {}", applicationId, source, closedFrom, closedTo);
+        return delete(ChangeRequestFilter.of(applicationId, source, closedFrom, closedTo));
+        }
+
+    //Deletes with a single deleteMany per collection without reading what goes first. The rollups of an application are then recounted
+    //over the deleted range; deletes by id or by source alone could have touched any application and day, so theirs are left to the
+    //next rebuild.
+    private long delete(ChangeRequestFilter filter)
+        {
+        long deleted = changeRequestRepo.deleteMatching(filter);
+        if (deleted > 0) {
+            String applicationId = filter.getApplicationId();
+            if (applicationId != null) {
+                dailyChangeRollupRepo.recountDays(applicationId, filter.getClosedFrom(), filter.getClosedTo());
+                applicationVersionRepo.bump(Collections.singletonList(applicationId));
+            } else {
+                log.info("Daily change rollups are left to the next rebuild after deleting change requests by id or source");
+            }
+        }
+        log.info("Deleted {} change requests", deleted);
+        return deleted;
+        }
+
+    @Override
+    public ChangeRequestPage listForApplication(String applicationId, String cursor, Integer limit, ChangeRequestFields fields)
+        {
+        log.info("Listing change requests for applicationId {} after cursor {}", applicationId, cursor);
+        ChangeRequestCursor after = ChangeRequestCursor.decode(cursor);
+        return readRouting.read("listForApplication", () -> changeRequestRepo.findPage(Collections.singletonList(applicationId), null, null, after, pageSize(limit), fields));
+        }
+
+    @Override
+    public ChangeRequestPage listForHierarchy(String applicationId, String cursor, Integer limit, ChangeRequestFields fields)
+        {
+        log.info("Listing change requests in the hierarchy starting at applicationId {} after cursor {}", applicationId, cursor);
+        ChangeRequestCursor after = ChangeRequestCursor.decode(cursor);
+        Collection<String> appIds = hierarchyClient.findChildIds(applicationId);
+        return readRouting.read("listForHierarchy", () -> changeRequestRepo.findPage(appIds, null, null, after, pageSize(limit), fields));
+        }
+
+    @Override
+    public ChangeRequestPage listForApplication(String applicationId, Date reportingDate, String cursor, Integer limit, ChangeRequestFields fields)
+        {
+        log.info("Listing change requests for applicationId {}, and reporting date {} after cursor {}", applicationId, reportingDate, cursor);
+        ChangeRequestCursor after = ChangeRequestCursor.decode(cursor);
+        return readRouting.read("listForApplication", () -> changeRequestRepo.findPage(Collections.singletonList(applicationId), getStartDate(reportingDate, 0), getEndDate(reportingDate), after, pageSize(limit), fields));
+        }
+
+    @Override
+    public Stream<ChangeRequest> streamAll(ChangeRequestFields fields)
         {
-        log.info("Listing all change requests for applicationId {}", applicationId);
-        return changeRequestRepo.findByApplicationId(applicationId);
+        log.info("Streaming all change requests");
+        return readRouting.read("streamAll", () -> changeRequestRepo.stream(null, null, null, fields).stream());
         }
 
     @Override
-    public List<ChangeRequest> listAllForHierarchy(String applicationId)
+    public Stream<ChangeRequest> streamForApplication(String applicationId, ChangeRequestFields fields)
         {
-        log.info("Listing all change requests in the hierarchy starting at applicationId {}", applicationId);
+        log.info("Streaming change requests for applicationId {}", applicationId);
+        return readRouting.read("streamForApplication", () -> changeRequestRepo.stream(Collections.singletonList(applicationId), null, null, fields).stream());
+        }
+
+    @Override
+    public Stream<ChangeRequest> streamForHierarchy(String applicationId, ChangeRequestFields fields)
+        {
+        log.info("Streaming change requests in the hierarchy starting at applicationId {}", applicationId);
         Collection<String> appIds = hierarchyClient.findChildIds(applicationId);
-        return changeRequestRepo.findByApplicationIdInOrderByClosedDesc(appIds);
+        return readRouting.read("streamForHierarchy", () -> changeRequestRepo.stream(appIds, null, null, fields).stream());
         }
 
     @Override
-    public List<ChangeRequest> listAllForApplication(String applicationId, Date reportingDate)
+    public Stream<ChangeRequest> streamForApplication(String applicationId, Date reportingDate, ChangeRequestFields fields)
         {
-        log.info("Listing all change requests for applicationId {}, and reporting date {}", applicationId, reportingDate);
-        return changeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed(applicationId, getStartDate(reportingDate, 0), getEndDate(reportingDate));
+        log.info("Streaming change requests for applicationId {}, and reporting date {}", applicationId, reportingDate);
+        return readRouting.read("streamForApplication", () -> changeRequestRepo.stream(Collections.singletonList(applicationId), getStartDate(reportingDate, 0), getEndDate(reportingDate), fields).stream());
+        }
+
+    private int pageSize(Integer limit)
+        {
+        return limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
         }
 
     @Override
     public ChangeFailureRate calculateChangeFailureRate(String applicationId, Date reportingDate)
         {
         log.info("Calculating change failure rate for applicationId {}, and reporting date {}", applicationId, reportingDate);
-        Date startDate = getStartDate(reportingDate, 89);
-        Date endDate = getEndDate(reportingDate);
-        List<ChangeRequest> requests = changeRequestRepo
-                .findByApplicationIdAndClosedBetweenOrderByClosed(applicationId, startDate, endDate);
+        Date toDay = DailyChangeRollup.dayOf(reportingDate);
+        Date fromDay = getStartDate(toDay, CFR_WINDOW_DAYS - 1);
+        ChangeCounts counts = readRouting.read("calculateChangeFailureRate", () -> dailyChangeRollupRepo.sumChanges(applicationId, fromDay, toDay));
+        return toChangeFailureRate(applicationId, reportingDate, counts);
+        }
+
+    @Override
+    public List<ChangeFailureRate> calculateChangeFailureRates(Collection<String> applicationIds, Date reportingDate)
+        {
+        log.info("Calculating change failure rate for {} applications, and reporting date {}", applicationIds.size(), reportingDate);
+        Date toDay = DailyChangeRollup.dayOf(reportingDate);
+        Date fromDay = getStartDate(toDay, CFR_WINDOW_DAYS - 1);
+        Set<String> uniqueIds = new LinkedHashSet<>(applicationIds);
+        List<ChangeCounts> counts = readRouting.read("calculateChangeFailureRates", () -> dailyChangeRollupRepo.sumChanges(uniqueIds, fromDay, toDay));
+        return toChangeFailureRates(uniqueIds, reportingDate, counts);
+        }
+
+    @Override
+    public HierarchyChangeFailureRate calculateHierarchyChangeFailureRate(String applicationId, Date reportingDate)
+        {
+        log.info("Calculating change failure rate for the hierarchy starting at applicationId {}, and reporting date {}", applicationId, reportingDate);
+        Date toDay = DailyChangeRollup.dayOf(reportingDate);
+        Date fromDay = getStartDate(toDay, CFR_WINDOW_DAYS - 1);
+        Set<String> uniqueIds = new LinkedHashSet<>(hierarchyClient.findChildIds(applicationId));
+
+        //Sum the applications in slices side by side, so a slow one only costs its own slice. Whatever hasn't finished by the
+        //deadline is reported as timed out and left out of the hierarchy totals, only a hierarchy with nothing summed is a timeout.
+        long deadline = System.nanoTime() + hierarchyCfrMaxTime.toNanos();
+        Map<List<String>, Future<List<ChangeCounts>>> slices = new LinkedHashMap<>();
+        for (List<String> slice : slicesOf(uniqueIds)) {
+            slices.put(slice, hierarchyCfrExecutor.submit(() -> readRouting.read("calculateHierarchyChangeFailureRate",
+                    () -> dailyChangeRollupRepo.sumChanges(slice, fromDay, toDay, remainingBefore(deadline)))));
+        }
+        List<ChangeCounts> counts = new ArrayList<>();
+        Set<String> summedIds = new LinkedHashSet<>(uniqueIds);
+        List<String> timedOutIds = new ArrayList<>();
+        for (Map.Entry<List<String>, Future<List<ChangeCounts>>> slice : slices.entrySet()) {
+            try {
+                counts.addAll(slice.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                continue;
+            } catch (TimeoutException e) {
+                slice.getValue().cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                slice.getValue().cancel(true);
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof QueryTimeoutException)) {
+                    slices.values().forEach(future -> future.cancel(true));
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                }
+            }
+            timedOutIds.addAll(slice.getKey());
+            summedIds.removeAll(slice.getKey());
+        }
+        if (summedIds.isEmpty() && !timedOutIds.isEmpty()) {
+            throw new QueryTimeoutException("Summing changes for the " + timedOutIds.size() + " applications under " + applicationId + " took longer than " + hierarchyCfrMaxTime);
+        }
+        if (!timedOutIds.isEmpty()) {
+            log.warn("Change failure rate for the hierarchy starting at applicationId {} is missing {} of {} applications, they took longer than {}",
+                    applicationId, timedOutIds.size(), uniqueIds.size(), hierarchyCfrMaxTime);
+        }
+
+        int total = 0;
+        int failed = 0;
+        for (ChangeCounts count : counts) {
+            total += count.getTotal();
+            failed += count.getFailed();
+        }
+        ChangeFailureRate hierarchy = toChangeFailureRate(applicationId, reportingDate, new ChangeCounts(applicationId, total, failed));
+        return new HierarchyChangeFailureRate(hierarchy, toChangeFailureRates(summedIds, reportingDate, counts), timedOutIds);
+        }
+
+    private List<List<String>> slicesOf(Set<String> applicationIds)
+        {
+        List<String> ids = new ArrayList<>(applicationIds);
+        List<List<String>> slices = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += hierarchyCfrSliceSize) {
+            slices.add(ids.subList(from, Math.min(from + hierarchyCfrSliceSize, ids.size())));
+        }
+        return slices;
+        }
+
+    //A slice still queued when the budget runs out isn't started, a zero maxTime would mean no limit at all
+    private Duration remainingBefore(long deadline)
+        {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new QueryTimeoutException("No time left to sum changes");
+        }
+        return Duration.ofNanos(remaining);
+        }
+
+    private List<ChangeFailureRate> toChangeFailureRates(Set<String> applicationIds, Date reportingDate, List<ChangeCounts> counts)
+        {
+        Map<String, ChangeCounts> countsByApp = counts.stream()
+                .collect(Collectors.toMap(ChangeCounts::getApplicationId, Function.identity()));
+        List<ChangeFailureRate> rates = new ArrayList<>(applicationIds.size());
+        for (String applicationId : applicationIds) {
+            rates.add(toChangeFailureRate(applicationId, reportingDate, countsByApp.getOrDefault(applicationId, new ChangeCounts(applicationId, 0, 0))));
+        }
+        return rates;
+        }
+
+    @Override
+    public List<ChangeFailureRate> calculateChangeFailureRateSeries(String applicationId, Date fromDate, Date toDate)
+        {
+        log.info("Calculating change failure rate series for applicationId {}, from {} to {}", applicationId, fromDate, toDate);
+        LocalDate fromDay = DailyChangeRollup.dayOf(fromDate).toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+        LocalDate toDay = DailyChangeRollup.dayOf(toDate).toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+        if (toDay.isBefore(fromDay)) {
+            return Collections.emptyList();
+        }
+        LocalDate windowStart = fromDay.minusDays(CFR_WINDOW_DAYS - 1);
+        int span = (int) ChronoUnit.DAYS.between(windowStart, toDay) + 1;
+
+        //Read every day the series touches once, then slide a 90 day window across it
+        int[] totals = new int[span];
+        int[] failures = new int[span];
+        List<DailyChangeRollup> rollups = readRouting.read("calculateChangeFailureRateSeries", () -> dailyChangeRollupRepo.findDays(applicationId, toDate(windowStart), toDate(toDay)));
+        for (DailyChangeRollup rollup : rollups) {
+            int index = (int) ChronoUnit.DAYS.between(windowStart, rollup.getDay().toInstant().atZone(ZoneOffset.UTC).toLocalDate());
+            totals[index] += rollup.getTotal();
+            failures[index] += rollup.getFailed();
+        }
+
+        List<ChangeFailureRate> series = new ArrayList<>(span - CFR_WINDOW_DAYS + 1);
+        int total = 0;
+        int failed = 0;
+        for (int i = 0; i < span; i++) {
+            total += totals[i];
+            failed += failures[i];
+            if (i >= CFR_WINDOW_DAYS) {
+                total -= totals[i - CFR_WINDOW_DAYS];
+                failed -= failures[i - CFR_WINDOW_DAYS];
+            }
+            if (i >= CFR_WINDOW_DAYS - 1) {
+                series.add(toChangeFailureRate(applicationId, toDate(windowStart.plusDays(i)), new ChangeCounts(applicationId, total, failed)));
+            }
+        }
+        return series;
+        }
+
+    private static Date toDate(LocalDate day)
+        {
+        return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+        }
+
+    static ChangeFailureRate toChangeFailureRate(String applicationId, Date reportingDate, ChangeCounts counts)
+        {
         //No data, return unknown performance level
-        if(requests.size() == 0){
+        if(counts.getTotal() == 0){
             return new ChangeFailureRate(applicationId, reportingDate, 0.0,0, DORALevel.UNKNOWN);
         }
-        long failCount = requests.stream().filter(ChangeRequest::getFailed).count();
-        double rawCfr = (double) failCount  / requests.size();
+        double rawCfr = (double) counts.getFailed() / counts.getTotal();
         BigDecimal cfr = new BigDecimal(rawCfr).setScale(2, RoundingMode.HALF_UP);
         DORALevel doraLevel = findDORAPerfLevel(cfr);
-        return new ChangeFailureRate(applicationId, reportingDate, cfr.doubleValue(), requests.size(), doraLevel);
+        return new ChangeFailureRate(applicationId, reportingDate, cfr.doubleValue(), counts.getTotal(), doraLevel);
         }
 
-    private Date getStartDate(Date reportingDate, Integer minusDays)
+    static Date getStartDate(Date reportingDate, Integer minusDays)
         {
             ZonedDateTime startDate = ZonedDateTime.ofInstant(reportingDate.toInstant(), ZoneOffset.UTC).minusDays(minusDays);
             return Date.from(startDate.toInstant());
         }
     
-    private Date getEndDate(Date reportingDate)
+    static Date getEndDate(Date reportingDate)
         {
             return Date.from(ZonedDateTime.ofInstant(reportingDate.toInstant(), ZoneOffset.UTC).plusDays(1).toInstant());
         }
@@ -0,0 +1,68 @@
+package team.changeservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import team.changeservice.repo.ApplicationVersionRepo;
+import team.changeservice.repo.ChangeRequestRepo;
+import team.changeservice.repo.DailyChangeRollupRepo;
+import team.changeservice.repo.JobLock;
+
+@Component
+public class DailyChangeRollupRebuildJob
+    {
+    private static final Logger log = LoggerFactory.getLogger(DailyChangeRollupRebuildJob.class);
+    //Also held by archival, a change request moving to the archive while a rebuild reads both collections could be counted twice
+    static final String LOCK = "dailyChangeRollup";
+
+    private final ChangeRequestRepo changeRequestRepo;
+    private final DailyChangeRollupRepo dailyChangeRollupRepo;
+    private final ApplicationVersionRepo applicationVersionRepo;
+    private final JobLock jobLock;
+
+    @Autowired
+    public DailyChangeRollupRebuildJob(ChangeRequestRepo changeRequestRepo, DailyChangeRollupRepo dailyChangeRollupRepo, ApplicationVersionRepo applicationVersionRepo, JobLock jobLock)
+        {
+        this.changeRequestRepo = changeRequestRepo;
+        this.dailyChangeRollupRepo = dailyChangeRollupRepo;
+        this.applicationVersionRepo = applicationVersionRepo;
+        this.jobLock = jobLock;
+        }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfMissing()
+        {
+        //Every instance starts up with this check, only the one holding the lock looks and builds
+        boolean ran = jobLock.runExclusively(LOCK, () -> {
+            if (dailyChangeRollupRepo.count() == 0 && (changeRequestRepo.count() > 0 || changeRequestRepo.countArchived() > 0)) {
+                log.info("No daily change rollups found, building them from the change request collection and archive");
+                rebuildNow();
+            }
+        });
+        if (!ran) {
+            log.info("Another instance is rebuilding the daily change rollups or archiving, not checking for missing rollups");
+        }
+        }
+
+    @Scheduled(cron = "${changeservice.rollup.rebuild-cron:-}")
+    public void rebuild()
+        {
+        if (!jobLock.runExclusively(LOCK, this::rebuildNow)) {
+            log.info("Another instance is rebuilding the daily change rollups or archiving, skipping this rebuild");
+        }
+        }
+
+    private void rebuildNow()
+        {
+        log.info("Rebuilding daily change rollups");
+        long start = System.currentTimeMillis();
+        long rows = dailyChangeRollupRepo.rebuild();
+        //A rebuild can correct counts that drifted, so no client should keep a change failure rate worked out from the old ones
+        long versions = applicationVersionRepo.bumpAll();
+        log.info("Rebuilt {} daily change rollups in {} ms, {} application versions moved on", rows, System.currentTimeMillis() - start, versions);
+        }
+    }
@@ -0,0 +1,23 @@
+package team.changeservice.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+
+import java.util.Date;
+
+public interface ReactiveChangeRequestService
+    {
+        Mono<ChangeRequest> get(String id);
+
+        Flux<ChangeRequest> list();
+
+        Flux<ChangeRequest> listForApplication(String applicationId);
+
+        Flux<ChangeRequest> listForHierarchy(String applicationId);
+
+        Flux<ChangeRequest> listForApplication(String applicationId, Date reportingDate);
+
+        Mono<ChangeFailureRate> calculateChangeFailureRate(String applicationId, Date reportingDate);
+    }
@@ -0,0 +1,82 @@
+package team.changeservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.hierarchy.repo.ReactiveHierarchyClient;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.DailyChangeRollup;
+import team.changeservice.repo.ReactiveChangeRequestRepo;
+import team.changeservice.repo.ReactiveDailyChangeRollupRepo;
+
+import java.util.Collections;
+import java.util.Date;
+
+@Service
+public class ReactiveChangeRequestServiceImpl implements ReactiveChangeRequestService
+    {
+    private static final Logger log = LoggerFactory.getLogger(ReactiveChangeRequestServiceImpl.class);
+
+    private final ReactiveChangeRequestRepo changeRequestRepo;
+    private final ReactiveDailyChangeRollupRepo dailyChangeRollupRepo;
+    private final ReactiveHierarchyClient hierarchyClient;
+
+    @Autowired
+    public ReactiveChangeRequestServiceImpl(ReactiveChangeRequestRepo changeRequestRepo, ReactiveDailyChangeRollupRepo dailyChangeRollupRepo, ReactiveHierarchyClient hierarchyClient)
+        {
+        this.changeRequestRepo = changeRequestRepo;
+        this.dailyChangeRollupRepo = dailyChangeRollupRepo;
+        this.hierarchyClient = hierarchyClient;
+        }
+
+    @Override
+    public Mono<ChangeRequest> get(String id)
+        {
+        log.info("Getting change request with id {}", id);
+        return changeRequestRepo.findById(id).switchIfEmpty(Mono.defer(() -> changeRequestRepo.findArchivedById(id)));
+        }
+
+    @Override
+    public Flux<ChangeRequest> list()
+        {
+        log.info("Streaming all change requests");
+        return changeRequestRepo.stream(null, null, null);
+        }
+
+    @Override
+    public Flux<ChangeRequest> listForApplication(String applicationId)
+        {
+        log.info("Streaming change requests for applicationId {}", applicationId);
+        return changeRequestRepo.stream(Collections.singletonList(applicationId), null, null);
+        }
+
+    @Override
+    public Flux<ChangeRequest> listForHierarchy(String applicationId)
+        {
+        log.info("Streaming change requests in the hierarchy starting at applicationId {}", applicationId);
+        return hierarchyClient.findChildIds(applicationId)
+                .flatMapMany(appIds -> changeRequestRepo.stream(appIds, null, null));
+        }
+
+    @Override
+    public Flux<ChangeRequest> listForApplication(String applicationId, Date reportingDate)
+        {
+        log.info("Streaming change requests for applicationId {}, and reporting date {}", applicationId, reportingDate);
+        return changeRequestRepo.stream(Collections.singletonList(applicationId),
+                ChangeRequestServiceImpl.getStartDate(reportingDate, 0), ChangeRequestServiceImpl.getEndDate(reportingDate));
+        }
+
+    @Override
+    public Mono<ChangeFailureRate> calculateChangeFailureRate(String applicationId, Date reportingDate)
+        {
+        log.info("Calculating change failure rate for applicationId {}, and reporting date {}", applicationId, reportingDate);
+        Date toDay = DailyChangeRollup.dayOf(reportingDate);
+        Date fromDay = ChangeRequestServiceImpl.getStartDate(toDay, ChangeRequestServiceImpl.CFR_WINDOW_DAYS - 1);
+        return dailyChangeRollupRepo.sumChanges(applicationId, fromDay, toDay)
+                .map(counts -> ChangeRequestServiceImpl.toChangeFailureRate(applicationId, reportingDate, counts));
+        }
+    }
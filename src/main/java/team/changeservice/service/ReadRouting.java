@@ -0,0 +1,59 @@
+package team.changeservice.service;
+
+import com.mongodb.ReadPreference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import team.changeservice.repo.ReadRoutingMongoTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//Decides which ChangeRequestService operations read from secondaries. Only reporting reads can be routed: get, the application
+//version behind conditional requests and the reads a store makes before writing always go to the primary.
+@Component
+public class ReadRouting
+    {
+    static final Set<String> ROUTABLE_OPERATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "list", "listForApplication", "listForHierarchy", "streamAll", "streamForApplication", "streamForHierarchy",
+            "calculateChangeFailureRate", "calculateChangeFailureRates", "calculateHierarchyChangeFailureRate", "calculateChangeFailureRateSeries")));
+    //The server rejects a smaller bound, it can't tell lag apart from the secondaries' 10s heartbeats and idle writes
+    static final Duration MIN_MAX_STALENESS = Duration.ofSeconds(90);
+
+    private final Set<String> secondaryOperations;
+    private final ReadPreference secondaryPreferred;
+
+    @Autowired
+    public ReadRouting(@Value("${changeservice.read.secondary-operations:}") Set<String> secondaryOperations,
+                       @Value("${changeservice.read.max-staleness:90s}") Duration maxStaleness)
+        {
+        for (String operation : secondaryOperations) {
+            if (!ROUTABLE_OPERATIONS.contains(operation)) {
+                throw new IllegalArgumentException("changeservice.read.secondary-operations: " + operation + " can't be routed to secondaries, use one of " + ROUTABLE_OPERATIONS);
+            }
+        }
+        if (maxStaleness.compareTo(MIN_MAX_STALENESS) < 0) {
+            throw new IllegalArgumentException("changeservice.read.max-staleness must be at least " + MIN_MAX_STALENESS.getSeconds() + "s");
+        }
+        this.secondaryOperations = new HashSet<>(secondaryOperations);
+        this.secondaryPreferred = ReadPreference.secondaryPreferred(maxStaleness.getSeconds(), TimeUnit.SECONDS);
+        }
+
+    static ReadRouting primaryOnly()
+        {
+        return new ReadRouting(Collections.emptySet(), MIN_MAX_STALENESS);
+        }
+
+    <T> T read(String operation, Supplier<T> reads)
+        {
+        if (!secondaryOperations.contains(operation)) {
+            return reads.get();
+        }
+        return ReadRoutingMongoTemplate.readingFrom(secondaryPreferred, reads);
+        }
+    }
@@ -5,30 +5,61 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.util.NestedServletException;
+import team.changeservice.ingest.AsyncIngestService;
+import team.changeservice.ingest.ChangeRequestImporter;
+import team.changeservice.ingest.ImportFormat;
+import team.changeservice.ingest.IngestQueueFullException;
+import team.changeservice.model.ApplicationVersion;
+import team.changeservice.model.BulkStoreResult;
 import team.changeservice.model.ChangeFailureRate;
 import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestCursor;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.HierarchyChangeFailureRate;
+import team.changeservice.model.ImportRejection;
+import team.changeservice.model.ImportResult;
+import team.changeservice.model.IngestStatus;
+import team.changeservice.model.IngestTicket;
+import team.changeservice.model.InvalidCursorException;
+import team.changeservice.model.ChangeRequestWriteResult;
 import team.changeservice.model.DORALevel;
+import team.changeservice.model.WriteStatus;
 import team.changeservice.service.ChangeRequestService;
 
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -39,10 +70,15 @@ class ChangeRequestControllerV1Test
     @Autowired private MockMvc mockMvc;
     
     @MockBean private ChangeRequestService mockChangeRequestService;
+
+    @MockBean private AsyncIngestService mockAsyncIngestService;
+
+    @MockBean private ChangeRequestImporter mockChangeRequestImporter;
     
     @Test
     void store() throws Exception
         {
+        when(mockChangeRequestService.storeAll(anyList())).thenReturn(new BulkStoreResult(Collections.singletonList(new ChangeRequestWriteResult("cr11", WriteStatus.INSERTED, null))));
         mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
             .content(
                 "[" +
@@ -60,9 +96,150 @@ class ChangeRequestControllerV1Test
                 "]"
             ))
             .andExpect(status().isCreated());
-        verify(mockChangeRequestService, times(1)).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, times(1)).storeAll(anyList());
+        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        }
+
+    @Test
+    void storeFailsOnAFailedChangeRequest()
+        {
+        when(mockChangeRequestService.storeAll(anyList())).thenReturn(new BulkStoreResult(Collections.singletonList(new ChangeRequestWriteResult("cr11", WriteStatus.FAILED, "duplicate key"))));
+        NestedServletException thrown = assertThrows(NestedServletException.class, () -> mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
+            .content(SINGLE_CHANGE_REQUEST)));
+        assertThat(thrown.getCause() instanceof DataIntegrityViolationException, is(true));
         }
     
+    @Test
+    void storeAll() throws Exception
+        {
+        BulkStoreResult bulkStoreResult = new BulkStoreResult(Collections.singletonList(new ChangeRequestWriteResult("cr11", WriteStatus.INSERTED, null)));
+        when(mockChangeRequestService.storeAll(anyList())).thenReturn(bulkStoreResult);
+        MvcResult result = mockMvc.perform(post("/api/v1/changerequest/bulk").contentType(MediaType.APPLICATION_JSON)
+            .content(
+                "[" +
+                "{\n" +
+                "    \"changeRequestId\": \"cr11\",\n" +
+                "    \"description\": \"a description\",\n" +
+                "    \"applicationId\": \"a1\",\n" +
+                "    \"created\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"closed\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"started\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"finished\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"failed\": true,\n" +
+                "    \"source\": \"test\"\n" +
+                "}" +
+                "]"
+            ))
+            .andExpect(status().isOk()).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"inserted\":1,\"replaced\":0,\"unchanged\":0,\"failed\":0,\"results\":[{\"changeRequestId\":\"cr11\",\"status\":\"INSERTED\"}]}")));
+        verify(mockChangeRequestService, times(1)).storeAll(anyList());
+        }
+
+    private static final String SINGLE_CHANGE_REQUEST =
+                "[" +
+                "{\n" +
+                "    \"changeRequestId\": \"cr11\",\n" +
+                "    \"description\": \"a description\",\n" +
+                "    \"applicationId\": \"a1\",\n" +
+                "    \"created\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"closed\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"started\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"finished\": \"2020-11-30T22:00:00.000+00:00\",\n" +
+                "    \"failed\": true,\n" +
+                "    \"source\": \"test\"\n" +
+                "}" +
+                "]";
+
+    @Test
+    void storeAsync() throws Exception
+        {
+        Date submitted = Date.from(LocalDate.of(2020, 10, 10).atStartOfDay(ZoneId.of("UTC")).toInstant());
+        when(mockAsyncIngestService.getCapacity()).thenReturn(10);
+        when(mockAsyncIngestService.submit(anyList())).thenReturn(new IngestTicket("t1", IngestStatus.QUEUED, 1, 0, submitted, null, null));
+        MvcResult result = mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
+            .header("Prefer", "respond-async")
+            .content(SINGLE_CHANGE_REQUEST))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "http://localhost/api/v1/changerequest/ingest/t1"))
+            .andExpect(header().string("Preference-Applied", "respond-async"))
+            .andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"ticketId\":\"t1\",\"status\":\"QUEUED\",\"size\":1,\"written\":0,\"submitted\":\"2020-10-10T00:00:00.000+00:00\"}")));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
+        }
+
+    @Test
+    void storeAsyncAmongOtherPreferences() throws Exception
+        {
+        Date submitted = Date.from(LocalDate.of(2020, 10, 10).atStartOfDay(ZoneId.of("UTC")).toInstant());
+        when(mockAsyncIngestService.getCapacity()).thenReturn(10);
+        when(mockAsyncIngestService.submit(anyList())).thenReturn(new IngestTicket("t1", IngestStatus.QUEUED, 1, 0, submitted, null, null));
+        mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
+            .header("Prefer", "return=minimal; foo=\"a,b\"", "Respond-Async, wait=5")
+            .content(SINGLE_CHANGE_REQUEST))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Preference-Applied", "respond-async"));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
+        }
+
+    @Test
+    void storeWithOtherPreferencesIsNotQueued() throws Exception
+        {
+        when(mockChangeRequestService.storeAll(anyList())).thenReturn(new BulkStoreResult(Collections.singletonList(new ChangeRequestWriteResult("cr11", WriteStatus.INSERTED, null))));
+        mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
+            .header("Prefer", "return=minimal, foo=\"respond-async\"")
+            .content(SINGLE_CHANGE_REQUEST))
+            .andExpect(status().isCreated())
+            .andExpect(header().doesNotExist("Preference-Applied"));
+        verify(mockAsyncIngestService, never()).submit(anyList());
+        verify(mockChangeRequestService, times(1)).storeAll(anyList());
+        }
+
+    @Test
+    void storeAsyncQueueFull() throws Exception
+        {
+        when(mockAsyncIngestService.getCapacity()).thenReturn(10);
+        when(mockAsyncIngestService.submit(anyList())).thenThrow(new IngestQueueFullException(1, 0, Duration.ofSeconds(5)));
+        mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
+            .header("Prefer", "respond-async")
+            .content(SINGLE_CHANGE_REQUEST))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "5"));
+        }
+
+    @Test
+    void storeAsyncLargerThanQueue() throws Exception
+        {
+        when(mockAsyncIngestService.getCapacity()).thenReturn(0);
+        mockMvc.perform(post("/api/v1/changerequest").contentType(MediaType.APPLICATION_JSON)
+            .header("Prefer", "respond-async")
+            .content(SINGLE_CHANGE_REQUEST))
+            .andExpect(status().isPayloadTooLarge());
+        verify(mockAsyncIngestService, never()).submit(anyList());
+        }
+
+    @Test
+    void ingestStatus() throws Exception
+        {
+        when(mockAsyncIngestService.getTicket("t1")).thenReturn(Optional.empty());
+        mockMvc.perform(get("/api/v1/changerequest/ingest/t1"))
+            .andExpect(status().isNotFound());
+        }
+
+    @Test
+    void importCsv() throws Exception
+        {
+        ImportResult importResult = new ImportResult(2L, 1L, 0L, 0L, 0L, 1L, 1000L, Collections.singletonList(new ImportRejection(3L, "cr2", "Change Request: applicationId is mandatory")));
+        when(mockChangeRequestImporter.importChangeRequests(any(), eq(ImportFormat.CSV))).thenReturn(importResult);
+        MvcResult result = mockMvc.perform(post("/api/v1/changerequest/import").contentType("text/csv")
+            .content("changeRequestId,applicationId\ncr1,a1\ncr2,\n"))
+            .andExpect(status().isOk()).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"read\":2,\"inserted\":1,\"replaced\":0,\"unchanged\":0,\"failed\":0,\"rejected\":1,\"durationMillis\":1000,\"changeRequestsPerSecond\":2,\"rejections\":[{\"line\":3,\"changeRequestId\":\"cr2\",\"error\":\"Change Request: applicationId is mandatory\"}]}")));
+        verify(mockChangeRequestImporter, times(1)).importChangeRequests(any(), eq(ImportFormat.CSV));
+        }
+
     @Test
     void storeCheckValidationEmptyList() throws Exception
         {
@@ -71,7 +248,7 @@ class ChangeRequestControllerV1Test
                 "[]"
             ))
             .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
     
     @Test
@@ -93,7 +270,7 @@ class ChangeRequestControllerV1Test
                 "]"
             ))
             .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
 
     @Test
@@ -115,7 +292,7 @@ class ChangeRequestControllerV1Test
                 "]"
             ))
             .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
 
     @Test
@@ -137,7 +314,7 @@ class ChangeRequestControllerV1Test
                 "]"
             ))
             .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
 
     @Test
@@ -159,7 +336,7 @@ class ChangeRequestControllerV1Test
                 "]"
                 ))
                 .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
 
     @Test
@@ -181,7 +358,7 @@ class ChangeRequestControllerV1Test
                 "]"
                 ))
                 .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
 
     @Test
@@ -203,7 +380,7 @@ class ChangeRequestControllerV1Test
                     "]"
                 ))
                 .andExpect(status().is4xxClientError());
-        verify(mockChangeRequestService, never()).store(any(ChangeRequest.class));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
         }
 
     @Test
@@ -216,13 +393,112 @@ class ChangeRequestControllerV1Test
         ChangeRequest cr2 = new ChangeRequest("cr2", "change request 2", "a1", Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()),true, "test");
         crs.add(cr1);
         crs.add(cr2);
-        when(mockChangeRequestService.list()).thenReturn(crs);
+        when(mockChangeRequestService.list(null, null, ChangeRequestFields.ALL)).thenReturn(new ChangeRequestPage(crs, null));
         MvcResult result = mockMvc.perform(get("/api/v1/changerequest")
             .contentType(MediaType.APPLICATION_JSON))
             .andExpect(status().isOk()).andReturn();
         String content = result.getResponse().getContentAsString();
         assertThat(content, is(equalTo("[{\"changeRequestId\":\"cr1\",\"description\":\"change request 1\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"},{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}]")));
-        verify(mockChangeRequestService, times(1)).list();
+        assertThat(result.getResponse().getHeader("X-Next-Cursor"), is(nullValue()));
+        verify(mockChangeRequestService, times(1)).list(null, null, ChangeRequestFields.ALL);
+        }
+
+    @Test
+    void listPageWithCursor() throws Exception
+        {
+        ZonedDateTime reportingDate = LocalDate.of(2020, 10, 10).atStartOfDay(ZoneId.of("UTC"));
+        ChangeRequest cr2 = new ChangeRequest("cr2", "change request 2", "a1", Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()),true, "test");
+        String cursor = new ChangeRequestCursor(Date.from(reportingDate.toInstant()), "cr1").encode();
+        ChangeRequestCursor next = ChangeRequestCursor.after(cr2);
+        when(mockChangeRequestService.list(cursor, 1, ChangeRequestFields.ALL)).thenReturn(new ChangeRequestPage(Collections.singletonList(cr2), next));
+        MvcResult result = mockMvc.perform(get("/api/v1/changerequest")
+            .param("cursor", cursor)
+            .param("limit", "1")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk()).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("[{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}]")));
+        assertThat(result.getResponse().getHeader("X-Next-Cursor"), is(equalTo(next.encode())));
+        verify(mockChangeRequestService, times(1)).list(cursor, 1, ChangeRequestFields.ALL);
+        }
+
+    @Test
+    void listWithInvalidCursor() throws Exception
+        {
+        when(mockChangeRequestService.list("bad", null, ChangeRequestFields.ALL)).thenThrow(new InvalidCursorException("bad"));
+        mockMvc.perform(get("/api/v1/changerequest")
+            .param("cursor", "bad")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+        }
+
+    @Test
+    void listWithInvalidLimit() throws Exception
+        {
+        mockMvc.perform(get("/api/v1/changerequest")
+            .param("limit", "0")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+        verify(mockChangeRequestService, never()).list(any(), any(), any());
+        }
+
+    @Test
+    void listWithFields() throws Exception
+        {
+        ZonedDateTime reportingDate = LocalDate.of(2020, 10, 10).atStartOfDay(ZoneId.of("UTC"));
+        ChangeRequestFields fields = ChangeRequestFields.parse("applicationId,failed");
+        ChangeRequest cr1 = new ChangeRequest("cr1", null, "a1", null, null, null, Date.from(reportingDate.toInstant()), true, null);
+        when(mockChangeRequestService.list(null, null, fields)).thenReturn(new ChangeRequestPage(Collections.singletonList(cr1), null));
+        MvcResult result = mockMvc.perform(get("/api/v1/changerequest")
+            .param("fields", "applicationId,failed")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk()).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("[{\"changeRequestId\":\"cr1\",\"applicationId\":\"a1\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true}]")));
+        verify(mockChangeRequestService, times(1)).list(null, null, fields);
+        }
+
+    @Test
+    void listWithUnknownField() throws Exception
+        {
+        MvcResult result = mockMvc.perform(get("/api/v1/changerequest")
+            .param("fields", "applicationId,owner")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest()).andReturn();
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("Unknown change request field: owner, expected any of changeRequestId,description,applicationId,created,started,finished,closed,failed,source")));
+        verify(mockChangeRequestService, never()).list(any(), any(), any());
+        }
+
+    @Test
+    void streamAll() throws Exception
+        {
+        ZonedDateTime reportingDate = LocalDate.of(2020, 10, 10).atStartOfDay(ZoneId.of("UTC"));
+        ChangeRequest cr1 = new ChangeRequest("cr1", "change request 1", "a1", Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()),true, "test");
+        ChangeRequest cr2 = new ChangeRequest("cr2", "change request 2", "a1", Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()), Date.from(reportingDate.toInstant()),true, "test");
+        when(mockChangeRequestService.streamAll(ChangeRequestFields.ALL)).thenReturn(Stream.of(cr1, cr2));
+        MvcResult started = mockMvc.perform(get("/api/v1/changerequest")
+            .accept("application/x-ndjson"))
+            .andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson")).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"changeRequestId\":\"cr1\",\"description\":\"change request 1\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}\n{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}\n")));
+        verify(mockChangeRequestService, times(1)).streamAll(ChangeRequestFields.ALL);
+        verify(mockChangeRequestService, never()).list(any(), any(), any());
+        }
+
+    @Test
+    void streamForApp() throws Exception
+        {
+        when(mockChangeRequestService.streamForApplication("a1", ChangeRequestFields.ALL)).thenReturn(Stream.empty());
+        MvcResult started = mockMvc.perform(get("/api/v1/changerequest/application/a1")
+            .accept("application/x-ndjson"))
+            .andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk()).andReturn();
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("")));
+        verify(mockChangeRequestService, times(1)).streamForApplication("a1", ChangeRequestFields.ALL);
         }
 
     @Test
@@ -254,6 +530,38 @@ class ChangeRequestControllerV1Test
         verify(mockChangeRequestService, times(1)).delete("id123");
         }
 
+    @Test
+    void deleteAll() throws Exception
+        {
+        when(mockChangeRequestService.deleteAll(Arrays.asList("cr1", "cr2"))).thenReturn(2L);
+        MvcResult result = mockMvc.perform(post("/api/v1/changerequest/delete").contentType(MediaType.APPLICATION_JSON)
+            .content("[\"cr1\", \"cr2\"]"))
+            .andExpect(status().isOk()).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"deleted\":2}")));
+        }
+
+    @Test
+    void deleteMatching() throws Exception
+        {
+        Date from = Date.from(LocalDate.of(2021, 2, 1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        Date to = Date.from(LocalDate.of(2021, 3, 1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        when(mockChangeRequestService.deleteMatching("a1", "bad-source", from, to)).thenReturn(5L);
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/changerequest")
+            .param("applicationId", "a1").param("source", "bad-source").param("from", "2021-02-01").param("to", "2021-02-28"))
+            .andExpect(status().isOk()).andReturn();
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"deleted\":5}")));
+        }
+
+    @Test
+    void deleteMatchingNeedsApplicationOrSource() throws Exception
+        {
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/changerequest").param("from", "2021-02-01"))
+            .andExpect(status().isBadRequest());
+        verify(mockChangeRequestService, never()).deleteMatching(any(), any(), any(), any());
+        }
+
     @Test
     void listByApp() throws Exception
         {
@@ -265,14 +573,14 @@ class ChangeRequestControllerV1Test
         crs.add(cr1);
         crs.add(cr2);
 
-        when(mockChangeRequestService.listAllForApplication(appId)).thenReturn(crs);
+        when(mockChangeRequestService.listForApplication(appId, null, null, ChangeRequestFields.ALL)).thenReturn(new ChangeRequestPage(crs, null));
 
         MvcResult result = mockMvc.perform(get("/api/v1/changerequest/application/" + appId)
             .contentType(MediaType.APPLICATION_JSON))
             .andExpect(status().isOk()).andReturn();
         String content = result.getResponse().getContentAsString();
         assertThat(content, is(equalTo( "[{\"changeRequestId\":\"cr1\",\"description\":\"change request 1\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"},{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}]")));
-        verify(mockChangeRequestService, times(1)).listAllForApplication(appId);
+        verify(mockChangeRequestService, times(1)).listForApplication(appId, null, null, ChangeRequestFields.ALL);
         }
 
     @Test
@@ -286,14 +594,14 @@ class ChangeRequestControllerV1Test
         crs.add(cr1);
         crs.add(cr2);
 
-        when(mockChangeRequestService.listAllForHierarchy(appId)).thenReturn(crs);
+        when(mockChangeRequestService.listForHierarchy(appId, null, null, ChangeRequestFields.ALL)).thenReturn(new ChangeRequestPage(crs, null));
 
         MvcResult result = mockMvc.perform(get("/api/v1/changerequest/hierarchy/" + appId)
             .contentType(MediaType.APPLICATION_JSON))
             .andExpect(status().isOk()).andReturn();
         String content = result.getResponse().getContentAsString();
         assertThat(content, is(equalTo( "[{\"changeRequestId\":\"cr1\",\"description\":\"change request 1\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"},{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}]")));
-        verify(mockChangeRequestService, times(1)).listAllForHierarchy(appId);
+        verify(mockChangeRequestService, times(1)).listForHierarchy(appId, null, null, ChangeRequestFields.ALL);
         }
     
     @Test
@@ -308,7 +616,7 @@ class ChangeRequestControllerV1Test
         crs.add(cr1);
         crs.add(cr2);
         
-        when(mockChangeRequestService.listAllForApplication(appId, Date.from(reportingDate.toInstant()))).thenReturn(crs);
+        when(mockChangeRequestService.listForApplication(appId, Date.from(reportingDate.toInstant()), null, null, ChangeRequestFields.ALL)).thenReturn(new ChangeRequestPage(crs, null));
         
         MvcResult result = mockMvc.perform(get("/api/v1/changerequest/application/" + appId + "/date/" + dateIn)
             .contentType(MediaType.APPLICATION_JSON))
@@ -316,7 +624,7 @@ class ChangeRequestControllerV1Test
             .andReturn();
         
         String content = result.getResponse().getContentAsString();
-        verify(mockChangeRequestService, times(1)).listAllForApplication(appId, Date.from(reportingDate.toInstant()));
+        verify(mockChangeRequestService, times(1)).listForApplication(appId, Date.from(reportingDate.toInstant()), null, null, ChangeRequestFields.ALL);
         assertThat(content, is(equalTo("[{\"changeRequestId\":\"cr1\",\"description\":\"change request 1\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"},{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}]")));
         }
     
@@ -339,6 +647,158 @@ class ChangeRequestControllerV1Test
         verify(mockChangeRequestService, times(1)).calculateChangeFailureRate(appId, reportingDate);
         }
     
+    @Test
+    void calcCfrCarriesApplicationVersion() throws Exception
+        {
+        Date reportingDate = Date.from(LocalDate.of(2020, Month.OCTOBER, 3).atStartOfDay().toInstant(ZoneOffset.UTC));
+        Date lastModified = Date.from(LocalDateTime.of(2020, Month.OCTOBER, 4, 9, 30).toInstant(ZoneOffset.UTC));
+        when(mockChangeRequestService.getApplicationVersion("a1")).thenReturn(Optional.of(new ApplicationVersion("a1", 7, lastModified)));
+        when(mockChangeRequestService.calculateChangeFailureRate("a1", reportingDate)).thenReturn(new ChangeFailureRate("a1", reportingDate, 0.00, 4, DORALevel.ELITE));
+
+        mockMvc.perform(get("/api/v1/changerequest/application/a1/cfr/2020-10-03"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "W/\"7-cfr\""))
+            .andExpect(header().string("Last-Modified", "Sun, 04 Oct 2020 09:30:00 GMT"))
+            .andExpect(header().string("Cache-Control", "no-cache"));
+        }
+
+    @Test
+    void calcCfrNotModified() throws Exception
+        {
+        Date lastModified = Date.from(LocalDateTime.of(2020, Month.OCTOBER, 4, 9, 30).toInstant(ZoneOffset.UTC));
+        when(mockChangeRequestService.getApplicationVersion("a1")).thenReturn(Optional.of(new ApplicationVersion("a1", 7, lastModified)));
+
+        mockMvc.perform(get("/api/v1/changerequest/application/a1/cfr/2020-10-03")
+            .header("If-None-Match", "\"7-cfr\""))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+        verify(mockChangeRequestService, never()).calculateChangeFailureRate(any(), any());
+        }
+
+    @Test
+    void listByAppNotModifiedSince() throws Exception
+        {
+        Date lastModified = Date.from(LocalDateTime.of(2020, Month.OCTOBER, 4, 9, 30).toInstant(ZoneOffset.UTC));
+        when(mockChangeRequestService.getApplicationVersion("a1")).thenReturn(Optional.of(new ApplicationVersion("a1", 7, lastModified)));
+        when(mockChangeRequestService.listForApplication("a1", null, null, ChangeRequestFields.ALL)).thenReturn(new ChangeRequestPage(Collections.emptyList(), null));
+
+        mockMvc.perform(get("/api/v1/changerequest/application/a1")
+            .header("If-Modified-Since", "Sun, 04 Oct 2020 09:30:00 GMT"))
+            .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/v1/changerequest/application/a1")
+            .header("If-None-Match", "\"6-json\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "W/\"7-json\""));
+        verify(mockChangeRequestService, times(1)).listForApplication("a1", null, null, ChangeRequestFields.ALL);
+        }
+
+    @Test
+    void calcCfrBatch() throws Exception
+        {
+        LocalDateTime date = LocalDate.of(2020, Month.OCTOBER, 3).atStartOfDay();
+        Date reportingDate = Date.from(date.toInstant(ZoneOffset.UTC));
+        List<ChangeFailureRate> rates = new ArrayList<>();
+        rates.add(new ChangeFailureRate("a1", reportingDate, 0.00, 4, DORALevel.ELITE));
+        rates.add(new ChangeFailureRate("a2", reportingDate, 0.0, 0, DORALevel.UNKNOWN));
+        when(mockChangeRequestService.calculateChangeFailureRates(Arrays.asList("a1", "a2"), reportingDate)).thenReturn(rates);
+
+        MvcResult result = mockMvc.perform(post("/api/v1/changerequest/application/cfr")
+            .param("date", "2020-10-03")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[\"a1\", \"a2\"]"))
+            .andExpect(status().isOk()).andReturn();
+
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("[{\"applicationId\":\"a1\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":0.0,\"changeRequestCount\":4,\"doraLevel\":\"ELITE\"},{\"applicationId\":\"a2\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":0.0,\"changeRequestCount\":0,\"doraLevel\":\"UNKNOWN\"}]")));
+        verify(mockChangeRequestService, times(1)).calculateChangeFailureRates(Arrays.asList("a1", "a2"), reportingDate);
+        }
+
+    @Test
+    void calcCfrBatchEmptyList() throws Exception
+        {
+        mockMvc.perform(post("/api/v1/changerequest/application/cfr")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[]"))
+            .andExpect(status().isBadRequest());
+        verify(mockChangeRequestService, never()).calculateChangeFailureRates(anyList(), any(Date.class));
+        }
+
+    @Test
+    void calcCfrSeries() throws Exception
+        {
+        Date from = Date.from(LocalDate.of(2020, Month.OCTOBER, 3).atStartOfDay().toInstant(ZoneOffset.UTC));
+        Date to = Date.from(LocalDate.of(2020, Month.OCTOBER, 4).atStartOfDay().toInstant(ZoneOffset.UTC));
+        List<ChangeFailureRate> series = new ArrayList<>();
+        series.add(new ChangeFailureRate("a1", from, 0.25, 4, DORALevel.LOW));
+        series.add(new ChangeFailureRate("a1", to, 0.2, 5, DORALevel.LOW));
+        when(mockChangeRequestService.calculateChangeFailureRateSeries("a1", from, to)).thenReturn(series);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/changerequest/application/a1/cfr/series")
+            .param("from", "2020-10-03")
+            .param("to", "2020-10-04")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk()).andReturn();
+
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("[{\"applicationId\":\"a1\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":0.25,\"changeRequestCount\":4,\"doraLevel\":\"LOW\"},{\"applicationId\":\"a1\",\"reportingDate\":\"2020-10-04\",\"changeFailureRatePercent\":0.2,\"changeRequestCount\":5,\"doraLevel\":\"LOW\"}]")));
+        verify(mockChangeRequestService, times(1)).calculateChangeFailureRateSeries("a1", from, to);
+        }
+
+    @Test
+    void calcCfrSeriesRejectsBackwardsRange() throws Exception
+        {
+        mockMvc.perform(get("/api/v1/changerequest/application/a1/cfr/series")
+            .param("from", "2020-10-04")
+            .param("to", "2020-10-03")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+        verify(mockChangeRequestService, never()).calculateChangeFailureRateSeries(any(), any(), any());
+        }
+
+    @Test
+    void calcHierarchyCfr() throws Exception
+        {
+        Date reportingDate = Date.from(LocalDate.of(2020, Month.OCTOBER, 3).atStartOfDay().toInstant(ZoneOffset.UTC));
+        List<ChangeFailureRate> applications = new ArrayList<>();
+        applications.add(new ChangeFailureRate("a1", reportingDate, 0.0, 2, DORALevel.ELITE));
+        applications.add(new ChangeFailureRate("a2", reportingDate, 1.0, 2, DORALevel.LOW));
+        HierarchyChangeFailureRate cfr = new HierarchyChangeFailureRate(new ChangeFailureRate("a1", reportingDate, 0.5, 4, DORALevel.LOW), applications);
+        when(mockChangeRequestService.calculateHierarchyChangeFailureRate("a1", reportingDate)).thenReturn(cfr);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/changerequest/hierarchy/a1/cfr/2020-10-03")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk()).andReturn();
+
+        String content = result.getResponse().getContentAsString();
+        assertThat(content, is(equalTo("{\"hierarchy\":{\"applicationId\":\"a1\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":0.5,\"changeRequestCount\":4,\"doraLevel\":\"LOW\"},\"applications\":[{\"applicationId\":\"a1\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":0.0,\"changeRequestCount\":2,\"doraLevel\":\"ELITE\"},{\"applicationId\":\"a2\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":1.0,\"changeRequestCount\":2,\"doraLevel\":\"LOW\"}]}")));
+        verify(mockChangeRequestService, times(1)).calculateHierarchyChangeFailureRate("a1", reportingDate);
+        }
+
+    @Test
+    void calcHierarchyCfrListsApplicationsOverBudget() throws Exception
+        {
+        Date reportingDate = Date.from(LocalDate.of(2020, Month.OCTOBER, 3).atStartOfDay().toInstant(ZoneOffset.UTC));
+        List<ChangeFailureRate> applications = Collections.singletonList(new ChangeFailureRate("a1", reportingDate, 0.0, 2, DORALevel.ELITE));
+        HierarchyChangeFailureRate cfr = new HierarchyChangeFailureRate(new ChangeFailureRate("a1", reportingDate, 0.0, 2, DORALevel.ELITE), applications, Collections.singletonList("a2"));
+        when(mockChangeRequestService.calculateHierarchyChangeFailureRate("a1", reportingDate)).thenReturn(cfr);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/changerequest/hierarchy/a1/cfr/2020-10-03")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk()).andReturn();
+
+        assertThat(result.getResponse().getContentAsString(), endsWith(",\"timedOut\":[\"a2\"]}"));
+        }
+
+    @Test
+    void calcHierarchyCfrOverBudget() throws Exception
+        {
+        when(mockChangeRequestService.calculateHierarchyChangeFailureRate(eq("a1"), any(Date.class))).thenThrow(new QueryTimeoutException("too slow"));
+
+        mockMvc.perform(get("/api/v1/changerequest/hierarchy/a1/cfr")
+            .contentType(MediaType.APPLICATION_JSON))
+            .andExpect(status().isServiceUnavailable());
+        }
+
     @Test
     void calcCfrByDate() throws Exception
         {
@@ -0,0 +1,89 @@
+package team.changeservice.controller.v2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.DORALevel;
+import team.changeservice.service.ReactiveChangeRequestService;
+
+import java.time.*;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(ChangeRequestControllerV2.class)
+class ChangeRequestControllerV2Test
+    {
+
+    @Autowired private MockMvc mockMvc;
+
+    @MockBean private ReactiveChangeRequestService mockChangeRequestService;
+
+    private static final String CR1_JSON = "{\"changeRequestId\":\"cr1\",\"description\":\"change request 1\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}";
+    private static final String CR2_JSON = "{\"changeRequestId\":\"cr2\",\"description\":\"change request 2\",\"applicationId\":\"a1\",\"created\":\"2020-10-10T00:00:00.000+00:00\",\"started\":\"2020-10-10T00:00:00.000+00:00\",\"finished\":\"2020-10-10T00:00:00.000+00:00\",\"closed\":\"2020-10-10T00:00:00.000+00:00\",\"failed\":true,\"source\":\"test\"}";
+
+    private static Flux<ChangeRequest> changeRequests()
+        {
+        Date date = Date.from(LocalDate.of(2020, 10, 10).atStartOfDay(ZoneId.of("UTC")).toInstant());
+        ChangeRequest cr1 = new ChangeRequest("cr1", "change request 1", "a1", date, date, date, date, true, "test");
+        ChangeRequest cr2 = new ChangeRequest("cr2", "change request 2", "a1", date, date, date, date, true, "test");
+        return Flux.just(cr1, cr2);
+        }
+
+    @Test
+    void listAsNdjson() throws Exception
+        {
+        when(mockChangeRequestService.listForApplication("a1")).thenReturn(changeRequests());
+        MvcResult started = mockMvc.perform(get("/api/v2/changerequest/application/a1")
+            .accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk()).andReturn();
+        assertThat(result.getResponse().getContentAsString(), is(equalTo(CR1_JSON + "\n" + CR2_JSON + "\n")));
+        verify(mockChangeRequestService, times(1)).listForApplication("a1");
+        }
+
+    @Test
+    void listAsJsonArray() throws Exception
+        {
+        when(mockChangeRequestService.list()).thenReturn(changeRequests());
+        MvcResult started = mockMvc.perform(get("/api/v2/changerequest")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk()).andReturn();
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("[" + CR1_JSON + "," + CR2_JSON + "]")));
+        verify(mockChangeRequestService, times(1)).list();
+        }
+
+    @Test
+    void calcCfrByDate() throws Exception
+        {
+        Date reportingDate = Date.from(LocalDate.of(2020, Month.OCTOBER, 3).atStartOfDay().toInstant(ZoneOffset.UTC));
+        when(mockChangeRequestService.calculateChangeFailureRate("a1", reportingDate))
+            .thenReturn(Mono.just(new ChangeFailureRate("a1", reportingDate, 0.0, 4, DORALevel.ELITE)));
+        MvcResult started = mockMvc.perform(get("/api/v2/changerequest/application/a1/cfr/2020-10-03"))
+            .andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk()).andReturn();
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("{\"applicationId\":\"a1\",\"reportingDate\":\"2020-10-03\",\"changeFailureRatePercent\":0.0,\"changeRequestCount\":4,\"doraLevel\":\"ELITE\"}")));
+        }
+    }
@@ -0,0 +1,56 @@
+package team.changeservice.hierarchy.repo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.*;
+
+class CachingHierarchyClientTest
+    {
+    private HierarchyClient mockHierarchyClient;
+    private MeterRegistry meterRegistry;
+    private CachingHierarchyClient cachingHierarchyClient;
+
+    @BeforeEach
+    void setUp()
+        {
+        mockHierarchyClient = mock(HierarchyClient.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cachingHierarchyClient = new CachingHierarchyClient(mockHierarchyClient, meterRegistry, 100, Duration.ofHours(1), Duration.ofDays(7));
+        }
+
+    @Test
+    void checkChildIdsAreCached()
+        {
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Arrays.asList("a1", "a2"));
+
+        Collection<String> first = cachingHierarchyClient.findChildIds("a1");
+        Collection<String> second = cachingHierarchyClient.findChildIds("a1");
+
+        verify(mockHierarchyClient, times(1)).findChildIds("a1");
+        assertThat(first, contains("a1", "a2"));
+        assertThat(second, contains("a1", "a2"));
+        }
+
+    @Test
+    void checkCacheMetricsAreExported()
+        {
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Arrays.asList("a1", "a2"));
+
+        cachingHierarchyClient.findChildIds("a1");
+        cachingHierarchyClient.findChildIds("a1");
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "hierarchy").tag("result", "hit").functionCounter().count(), is(equalTo(1.0)));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "hierarchy").tag("result", "miss").functionCounter().count(), is(equalTo(1.0)));
+        }
+    }
@@ -0,0 +1,98 @@
+package team.changeservice.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestWriteResult;
+import team.changeservice.model.IngestStatus;
+import team.changeservice.model.IngestTicket;
+import team.changeservice.model.WriteStatus;
+import team.changeservice.service.ChangeRequestService;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncIngestServiceTest
+    {
+    private MeterRegistry meterRegistry;
+    private ChangeRequestService mockChangeRequestService;
+    private AsyncIngestService asyncIngestService;
+
+    @BeforeEach
+    void setUp()
+        {
+        meterRegistry = new SimpleMeterRegistry();
+        mockChangeRequestService = mock(ChangeRequestService.class);
+        asyncIngestService = new AsyncIngestService(mockChangeRequestService, meterRegistry, 3, 1000, Duration.ofSeconds(5), Duration.ofHours(1));
+        }
+
+    private static ChangeRequest changeRequest(String id)
+        {
+        Date now = new Date();
+        return new ChangeRequest(id, "change request " + id, "a1", now, now, now, now, false, "test");
+        }
+
+    private static BulkStoreResult inserted(List<ChangeRequest> changeRequests)
+        {
+        return new BulkStoreResult(changeRequests.stream()
+                .map(c -> new ChangeRequestWriteResult(c.getChangeRequestId(), WriteStatus.INSERTED, null))
+                .collect(Collectors.toList()));
+        }
+
+    @Test
+    void checkQueuedChangeRequestsAreWrittenOnShutdown() throws Exception
+        {
+        when(mockChangeRequestService.storeAll(anyList())).thenAnswer(invocation -> inserted(invocation.getArgument(0)));
+
+        IngestTicket ticket = asyncIngestService.submit(Arrays.asList(changeRequest("cr1"), changeRequest("cr2")));
+        asyncIngestService.destroy();
+
+        IngestTicket completed = asyncIngestService.getTicket(ticket.getTicketId()).orElseThrow(AssertionError::new);
+        assertThat(completed.getStatus(), is(equalTo(IngestStatus.COMPLETED)));
+        assertThat(completed.getWritten(), is(equalTo(2)));
+        assertThat(completed.getResult().getInserted(), is(equalTo(2)));
+        assertThat(meterRegistry.get("changeservice.ingest.drained").counter().count(), is(equalTo(2.0)));
+        }
+
+    @Test
+    void checkFullQueueIsRejected()
+        {
+        List<ChangeRequest> changeRequests = Arrays.asList(changeRequest("cr1"), changeRequest("cr2"), changeRequest("cr3"), changeRequest("cr4"));
+
+        IngestQueueFullException exception = assertThrows(IngestQueueFullException.class, () -> asyncIngestService.submit(changeRequests));
+
+        assertThat(exception.getRetryAfter(), is(equalTo(Duration.ofSeconds(5))));
+        assertThat(meterRegistry.get("changeservice.ingest.rejected").counter().count(), is(equalTo(4.0)));
+        verify(mockChangeRequestService, never()).storeAll(anyList());
+        }
+
+    @Test
+    void checkFailedWritesAreReportedOnTheTicket() throws Exception
+        {
+        when(mockChangeRequestService.storeAll(anyList())).thenThrow(new IllegalStateException("boom"));
+
+        IngestTicket ticket = asyncIngestService.submit(Collections.singletonList(changeRequest("cr1")));
+        asyncIngestService.destroy();
+
+        BulkStoreResult result = asyncIngestService.getTicket(ticket.getTicketId()).orElseThrow(AssertionError::new).getResult();
+        assertThat(result.getFailed(), is(equalTo(1)));
+        assertThat(result.getResults().get(0), is(equalTo(new ChangeRequestWriteResult("cr1", WriteStatus.FAILED, "boom"))));
+        }
+    }
@@ -0,0 +1,127 @@
+package team.changeservice.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.mongodb.WriteConcern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestWriteResult;
+import team.changeservice.model.ImportRejection;
+import team.changeservice.model.ImportResult;
+import team.changeservice.model.InvalidFieldsException;
+import team.changeservice.model.WriteStatus;
+import team.changeservice.service.ChangeRequestService;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChangeRequestImporterTest
+    {
+    private static final String DATES = "\"created\":\"2020-11-30T22:00:00.000+00:00\",\"started\":\"2020-11-30T22:00:00.000+00:00\","
+            + "\"finished\":\"2020-11-30T22:00:00.000+00:00\",\"closed\":\"2020-11-30T22:00:00.000+00:00\"";
+
+    private ChangeRequestService mockChangeRequestService;
+    private ChangeRequestImporter changeRequestImporter;
+
+    @BeforeEach
+    void setUp()
+        {
+        mockChangeRequestService = mock(ChangeRequestService.class);
+        when(mockChangeRequestService.storeAll(anyList(), eq(WriteConcern.MAJORITY), eq(2))).thenAnswer(invocation -> {
+            List<ChangeRequest> changeRequests = invocation.getArgument(0);
+            return new BulkStoreResult(changeRequests.stream()
+                    .map(c -> new ChangeRequestWriteResult(c.getChangeRequestId(), WriteStatus.INSERTED, null))
+                    .collect(Collectors.toList()));
+        });
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modules(new ParameterNamesModule()).build();
+        changeRequestImporter = new ChangeRequestImporter(mockChangeRequestService, objectMapper,
+                Validation.buildDefaultValidatorFactory().getValidator(), 2, "MAJORITY", 100);
+        }
+
+    private static InputStream input(String content)
+        {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+    @Test
+    void checkNdjsonIsWrittenInBatches() throws Exception
+        {
+        String ndjson = "{\"changeRequestId\":\"cr1\",\"applicationId\":\"a1\"," + DATES + ",\"failed\":true}\n"
+                + "{\"changeRequestId\":\"cr2\",\"applicationId\":\"a1\"," + DATES + ",\"failed\":false}\n"
+                + "\n"
+                + "{\"changeRequestId\":\"cr3\",\"applicationId\":\"a2\"," + DATES + ",\"failed\":false}\n";
+
+        ImportResult result = changeRequestImporter.importChangeRequests(input(ndjson), ImportFormat.NDJSON);
+
+        assertThat(result.getRead(), is(equalTo(3L)));
+        assertThat(result.getInserted(), is(equalTo(3L)));
+        assertThat(result.getRejected(), is(equalTo(0L)));
+        verify(mockChangeRequestService, times(2)).storeAll(anyList(), eq(WriteConcern.MAJORITY), eq(2));
+        }
+
+    @Test
+    void checkInvalidRowsAreRejectedWithTheirLine() throws Exception
+        {
+        String ndjson = "{\"changeRequestId\":\"cr1\",\"applicationId\":\"a1\"," + DATES + ",\"failed\":true}\n"
+                + "{not json\n"
+                + "{\"changeRequestId\":\"cr2\"," + DATES + ",\"failed\":false}\n";
+
+        ImportResult result = changeRequestImporter.importChangeRequests(input(ndjson), ImportFormat.NDJSON);
+
+        assertThat(result.getInserted(), is(equalTo(1L)));
+        assertThat(result.getRejected(), is(equalTo(2L)));
+        assertThat(result.getRejections().get(0).getLine(), is(equalTo(2L)));
+        assertThat(result.getRejections().get(1), is(equalTo(new ImportRejection(3L, "cr2", "Change Request: applicationId is mandatory"))));
+        }
+
+    @Test
+    void checkCsvIsMappedByHeader() throws Exception
+        {
+        String csv = "changeRequestId,description,applicationId,created,started,finished,closed,failed\n"
+                + "cr1,\"a description, with \"\"quotes\"\"\",a1,2020-11-30T22:00:00Z,2020-11-30T22:00:00Z,2020-11-30T22:00:00Z,2020-11-30T22:00:00Z,true\n"
+                + "cr2,,a1,2020-11-30T22:00:00Z\n";
+
+        ImportResult result = changeRequestImporter.importChangeRequests(input(csv), ImportFormat.CSV);
+
+        assertThat(result.getInserted(), is(equalTo(1L)));
+        assertThat(result.getRejections(), is(equalTo(Arrays.asList(new ImportRejection(3L, null, "Expected 8 columns, found 4")))));
+        Date date = Date.from(Instant.parse("2020-11-30T22:00:00Z"));
+        verify(mockChangeRequestService).storeAll(eq(Arrays.asList(new ChangeRequest("cr1", "a description, with \"quotes\"", "a1", date, date, date, date, true, null))),
+                eq(WriteConcern.MAJORITY), eq(2));
+        }
+
+    @Test
+    void checkCsvWithUnknownColumnIsRefused()
+        {
+        assertThrows(InvalidFieldsException.class,
+                () -> changeRequestImporter.importChangeRequests(input("changeRequestId,owner\ncr1,me\n"), ImportFormat.CSV));
+        }
+
+    @Test
+    void checkUnacknowledgedWriteConcernIsRefused()
+        {
+        assertThrows(IllegalArgumentException.class, () -> ChangeRequestImporter.writeConcern("UNACKNOWLEDGED"));
+        assertThrows(IllegalArgumentException.class, () -> ChangeRequestImporter.writeConcern("W7"));
+        }
+    }
@@ -0,0 +1,84 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.DORALevel;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class FastJsonModuleTest
+    {
+    private final List<Object> values = Arrays.asList(
+            new ChangeRequest("cr1", "change request 1", "a1", date("2021-02-04T10:00:00.123Z"), date("2020-02-29T23:59:59.999Z"),
+                    date("1970-01-01T00:00:00Z"), date("1969-12-31T23:59:59.999Z"), true, "test"),
+            new ChangeRequest("cr2", "", null, date("2000-03-01T00:00:00Z"), null, date("1600-01-01T12:00:00Z"), date("9999-12-31T23:59:59Z"), null, ""),
+            new ChangeRequest("cr3", null, "a3", date("1000-06-15T00:00:00Z"), null, null, null, false, null),
+            new ChangeFailureRate("a1", date("2020-10-03T00:00:00Z"), 0.0, 4, DORALevel.ELITE),
+            new ChangeFailureRate("", date("2024-12-31T00:00:00Z"), 12.5, 0, null),
+            new ChangeFailureRate("a2", null, null, null, DORALevel.LOW));
+
+    private static Date date(String instant)
+        {
+        return Date.from(Instant.parse(instant));
+        }
+
+    private static Jackson2ObjectMapperBuilder builder(JsonInclude.Include inclusion)
+        {
+        return Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(inclusion)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        }
+
+    private void assertSameAsDefault(Jackson2ObjectMapperBuilder builder) throws Exception
+        {
+        ObjectMapper jackson = builder.modules(new ParameterNamesModule()).build();
+        ObjectMapper fast = builder.modules(new ParameterNamesModule(), new FastJsonModule()).build();
+        for (Object value : values) {
+            assertThat(fast.writeValueAsString(value), is(equalTo(jackson.writeValueAsString(value))));
+        }
+        assertThat(fast.writeValueAsString(values), is(equalTo(jackson.writeValueAsString(values))));
+        }
+
+    @Test
+    void checkOutputMatchesDefaultSerializer() throws Exception
+        {
+        for (JsonInclude.Include inclusion : JsonInclude.Include.values()) {
+            if (inclusion != JsonInclude.Include.CUSTOM) {
+                assertSameAsDefault(builder(inclusion));
+            }
+        }
+        }
+
+    @Test
+    void checkOtherMapperSettingsFallBackToDefaultSerializer() throws Exception
+        {
+        assertSameAsDefault(builder(JsonInclude.Include.NON_EMPTY).timeZone(TimeZone.getTimeZone("Europe/London")));
+        assertSameAsDefault(builder(JsonInclude.Include.NON_EMPTY).featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        assertSameAsDefault(builder(JsonInclude.Include.NON_EMPTY).featuresToEnable(SerializationFeature.WRITE_ENUMS_USING_TO_STRING));
+        assertSameAsDefault(builder(JsonInclude.Include.NON_EMPTY).simpleDateFormat("dd/MM/yyyy"));
+        }
+
+    @Test
+    void checkServiceOutput() throws Exception
+        {
+        ObjectMapper fast = builder(JsonInclude.Include.NON_EMPTY).modules(new ParameterNamesModule(), new FastJsonModule()).build();
+
+        assertThat(fast.writeValueAsString(values.get(1)), is(equalTo("{\"changeRequestId\":\"cr2\",\"created\":\"2000-03-01T00:00:00.000+00:00\","
+                + "\"finished\":\"1600-01-01T12:00:00.000+00:00\",\"closed\":\"9999-12-31T23:59:59.000+00:00\"}")));
+        assertThat(fast.writeValueAsString(values.get(4)), is(equalTo("{\"reportingDate\":\"2024-12-31\",\"changeFailureRatePercent\":12.5,\"changeRequestCount\":0}")));
+        }
+    }
@@ -0,0 +1,84 @@
+package team.changeservice.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+import team.changeservice.model.ChangeRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class SizedJsonHttpMessageConverterTest
+    {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SizedJsonHttpMessageConverter converter = new SizedJsonHttpMessageConverter(objectMapper, DataSize.ofKilobytes(4));
+
+    //Keeps the Content-Length the headers held when the body was first asked for, which is when a servlet response commits them
+    private static class RecordingOutputMessage implements HttpOutputMessage
+        {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private Long committedContentLength;
+
+        @Override
+        public OutputStream getBody()
+            {
+            if (committedContentLength == null) {
+                committedContentLength = headers.getContentLength();
+            }
+            return body;
+            }
+
+        @Override
+        public HttpHeaders getHeaders()
+            {
+            return headers;
+            }
+        }
+
+    private static List<ChangeRequest> changeRequests(int count)
+        {
+        Date closed = new Date(1612432800000L);
+        List<ChangeRequest> changeRequests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            changeRequests.add(new ChangeRequest("cr" + i, "change request " + i, "a1", closed, closed, closed, closed, false, "test"));
+        }
+        return changeRequests;
+        }
+
+    @Test
+    public void smallResponsesAreSentWithTheirLength() throws Exception
+        {
+        List<ChangeRequest> changeRequests = changeRequests(2);
+        RecordingOutputMessage message = new RecordingOutputMessage();
+
+        converter.write(changeRequests, null, MediaType.APPLICATION_JSON, message);
+
+        byte[] expected = objectMapper.writeValueAsBytes(changeRequests);
+        assertThat(message.committedContentLength, is(equalTo((long) expected.length)));
+        assertThat(message.body.toString("UTF-8"), is(equalTo(new String(expected, "UTF-8"))));
+        }
+
+    @Test
+    public void responsesPastTheLimitAreStreamedWithoutALength() throws Exception
+        {
+        List<ChangeRequest> changeRequests = changeRequests(1000);
+        RecordingOutputMessage message = new RecordingOutputMessage();
+
+        converter.write(changeRequests, null, MediaType.APPLICATION_JSON, message);
+
+        assertThat(message.committedContentLength, is(equalTo(-1L)));
+        assertThat(message.headers.getContentLength(), is(equalTo(-1L)));
+        assertThat(message.body.toString("UTF-8"), is(equalTo(objectMapper.writeValueAsString(changeRequests))));
+        }
+    }
@@ -0,0 +1,114 @@
+package team.changeservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.service.ChangeRequestService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CallMetricsInterceptorTest
+    {
+    private MeterRegistry meterRegistry;
+    private ChangeRequestService mockChangeRequestService;
+    private ChangeRequestService timedChangeRequestService;
+
+    @BeforeEach
+    void setUp()
+        {
+        meterRegistry = new SimpleMeterRegistry();
+        meterRegistry.config().meterFilter(new ApplicationIdTagLimiter("changeservice.", 2));
+        mockChangeRequestService = mock(ChangeRequestService.class);
+        ProxyFactory proxyFactory = new ProxyFactory(mockChangeRequestService);
+        proxyFactory.setInterfaces(ChangeRequestService.class);
+        proxyFactory.addAdvice(new CallMetricsInterceptor(() -> meterRegistry, "changeservice.service", "ChangeRequestServiceImpl"));
+        timedChangeRequestService = (ChangeRequestService) proxyFactory.getProxy();
+        }
+
+    private static ChangeRequest changeRequest(String id, String applicationId)
+        {
+        Date now = new Date();
+        return new ChangeRequest(id, "change request " + id, applicationId, now, now, now, now, false, "test");
+        }
+
+    @Test
+    void checkCallsAreTimedByApplication()
+        {
+        when(mockChangeRequestService.listForApplication("a1", null, null, ChangeRequestFields.ALL))
+                .thenReturn(new ChangeRequestPage(Arrays.asList(changeRequest("cr1", "a1"), changeRequest("cr2", "a1")), null));
+
+        timedChangeRequestService.listForApplication("a1", null, null, ChangeRequestFields.ALL);
+        timedChangeRequestService.listForApplication("a1", null, null, ChangeRequestFields.ALL);
+
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "listForApplication").tag("applicationId", "a1")
+                .tag("exception", "none").timer().count(), is(equalTo(2L)));
+        assertThat(meterRegistry.get("changeservice.service.results").tag("method", "listForApplication").tag("applicationId", "a1")
+                .summary().totalAmount(), is(equalTo(4.0)));
+        }
+
+    @Test
+    void checkApplicationIdIsTakenFromTheChangeRequest()
+        {
+        ChangeRequest changeRequest = changeRequest("cr1", "a1");
+        when(mockChangeRequestService.store(changeRequest)).thenReturn(changeRequest);
+
+        timedChangeRequestService.store(changeRequest);
+        timedChangeRequestService.list(null, null, ChangeRequestFields.ALL);
+
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "store").tag("applicationId", "a1").timer().count(), is(equalTo(1L)));
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "list").tag("applicationId", "none").timer().count(), is(equalTo(1L)));
+        }
+
+    @Test
+    void checkFailuresAreTaggedWithTheException()
+        {
+        when(mockChangeRequestService.calculateChangeFailureRate("a1", null)).thenThrow(new IllegalStateException("boom"));
+
+        assertThrows(IllegalStateException.class, () -> timedChangeRequestService.calculateChangeFailureRate("a1", null));
+
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "calculateChangeFailureRate")
+                .tag("exception", "IllegalStateException").timer().count(), is(equalTo(1L)));
+        }
+
+    @Test
+    void checkStreamResultsAreCountedOnClose()
+        {
+        when(mockChangeRequestService.streamForApplication("a1", ChangeRequestFields.ALL)).thenReturn(Stream.of(changeRequest("cr1", "a1"), changeRequest("cr2", "a1")));
+
+        try (Stream<ChangeRequest> stream = timedChangeRequestService.streamForApplication("a1", ChangeRequestFields.ALL)) {
+            assertThat(stream.collect(Collectors.toList()).size(), is(equalTo(2)));
+        }
+
+        assertThat(meterRegistry.get("changeservice.service.results").tag("method", "streamForApplication").summary().totalAmount(), is(equalTo(2.0)));
+        }
+
+    @Test
+    void checkApplicationIdsBeyondTheLimitAreGrouped()
+        {
+        for (String applicationId : Arrays.asList("a1", "a2", "a3", "a4", "a1")) {
+            timedChangeRequestService.calculateChangeFailureRates(Collections.singletonList(applicationId), null);
+            timedChangeRequestService.listForHierarchy(applicationId, null, null, ChangeRequestFields.ALL);
+        }
+
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "listForHierarchy").tag("applicationId", "a1").timer().count(), is(equalTo(2L)));
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "listForHierarchy").tag("applicationId", "a2").timer().count(), is(equalTo(1L)));
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "listForHierarchy").tag("applicationId", "other").timer().count(), is(equalTo(2L)));
+        assertThat(meterRegistry.get("changeservice.service").tag("method", "calculateChangeFailureRates").tag("applicationId", "none").timer().count(), is(equalTo(5L)));
+        }
+    }
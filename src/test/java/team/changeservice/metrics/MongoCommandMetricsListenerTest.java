@@ -0,0 +1,70 @@
+package team.changeservice.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class MongoCommandMetricsListenerTest
+    {
+    private final ConnectionDescription connection = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress("localhost", 27017)));
+    private MeterRegistry meterRegistry;
+    private MongoCommandMetricsListener listener;
+
+    @BeforeEach
+    void setUp()
+        {
+        meterRegistry = new SimpleMeterRegistry();
+        listener = new MongoCommandMetricsListener(meterRegistry, Duration.ofMillis(100));
+        }
+
+    @Test
+    void checkCommandsAreTimedByCollection()
+        {
+        listener.commandStarted(new CommandStartedEvent(1, connection, "changeservice", "find",
+                BsonDocument.parse("{find: 'changeRequest', filter: {applicationId: 'a1'}}")));
+        listener.commandSucceeded(new CommandSucceededEvent(1, connection, "find", new BsonDocument(), TimeUnit.MILLISECONDS.toNanos(5)));
+        listener.commandStarted(new CommandStartedEvent(2, connection, "changeservice", "getMore",
+                BsonDocument.parse("{getMore: {$numberLong: '42'}, collection: 'changeRequest'}")));
+        listener.commandFailed(new CommandFailedEvent(2, connection, "getMore", TimeUnit.MILLISECONDS.toNanos(5), new RuntimeException()));
+
+        assertThat(meterRegistry.get("mongodb.driver.commands").tag("command", "find").tag("collection", "changeRequest")
+                .tag("status", "SUCCESS").timer().totalTime(TimeUnit.MILLISECONDS), is(equalTo(5.0)));
+        assertThat(meterRegistry.get("mongodb.driver.commands").tag("command", "getMore").tag("collection", "changeRequest")
+                .tag("status", "FAILED").timer().count(), is(equalTo(1L)));
+        }
+
+    @Test
+    void checkShapeHidesFilterValues()
+        {
+        BsonDocument command = BsonDocument.parse("{find: 'changeRequest', "
+                + "filter: {$and: [{applicationId: {$in: ['a1', 'a2']}}, {$or: [{closed: {$gt: 1}}, {_id: 'cr1'}]}]}, "
+                + "sort: {closed: 1, _id: 1}, limit: 101}");
+
+        assertThat(MongoCommandMetricsListener.shapeOf(command), is(equalTo(BsonDocument.parse(
+                "{filter: {$and: [{applicationId: {$in: '?'}}, {$or: [{closed: {$gt: '?'}}, {_id: '?'}]}]}, sort: {closed: 1, _id: 1}}"))));
+        }
+
+    @Test
+    void checkShapeOfWrites()
+        {
+        BsonDocument command = BsonDocument.parse("{update: 'dailyChangeRollup', updates: [{q: {_id: 'a1|2021-02-04'}, u: {$inc: {total: 1}}, upsert: true}]}");
+
+        assertThat(MongoCommandMetricsListener.shapeOf(command), is(equalTo(BsonDocument.parse("{updates: {q: {_id: '?'}}}"))));
+        }
+    }
@@ -0,0 +1,78 @@
+package team.changeservice.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class MongoPoolMetricsListenerTest
+    {
+    private final ServerId serverId = new ServerId(new ClusterId(), new ServerAddress("localhost", 27017));
+    private MeterRegistry meterRegistry;
+    private MongoPoolMetricsListener listener;
+
+    @BeforeEach
+    void setUp()
+        {
+        meterRegistry = new SimpleMeterRegistry();
+        listener = new MongoPoolMetricsListener(meterRegistry);
+        listener.connectionPoolCreated(new ConnectionPoolCreatedEvent(serverId, ConnectionPoolSettings.builder().build()));
+        }
+
+    private Timer waitTime()
+        {
+        return meterRegistry.get(MongoPoolMetricsListener.METRIC_PREFIX + "wait").timer();
+        }
+
+    private double gauge(String name)
+        {
+        return meterRegistry.get(MongoPoolMetricsListener.METRIC_PREFIX + name).gauge().value();
+        }
+
+    @Test
+    void checkCheckOutsFinishedOnAnotherThreadAreTimed()
+        {
+        //The reactive driver starts a checkout on the caller's thread and finishes it on one of its own
+        listener.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(serverId));
+        listener.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(serverId));
+        CompletableFuture.runAsync(() -> listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId)))).join();
+
+        assertThat(waitTime().count(), is(equalTo(1L)));
+        assertThat(gauge("waitqueuesize"), is(equalTo(1.0)));
+        assertThat(gauge("checkedout"), is(equalTo(1.0)));
+
+        CompletableFuture.runAsync(() -> listener.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(serverId, ConnectionCheckOutFailedEvent.Reason.TIMEOUT))).join();
+        listener.connectionCheckedIn(new ConnectionCheckedInEvent(new ConnectionId(serverId)));
+
+        assertThat(waitTime().count(), is(equalTo(2L)));
+        assertThat(gauge("waitqueuesize"), is(equalTo(0.0)));
+        assertThat(gauge("checkedout"), is(equalTo(0.0)));
+        }
+
+    @Test
+    void checkEveryCheckOutIsTimedOnce()
+        {
+        listener.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(serverId));
+        listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId)));
+        listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId)));
+
+        assertThat(waitTime().count(), is(equalTo(1L)));
+        }
+    }
@@ -0,0 +1,74 @@
+package team.changeservice.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import team.changeservice.MongoDBContainerTest;
+import team.changeservice.model.ApplicationVersion;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+class ApplicationVersionRepoTest extends MongoDBContainerTest
+    {
+
+    @Autowired
+    ApplicationVersionRepo repo;
+
+    @Autowired
+    DailyChangeRollupRepo rollupRepo;
+
+    @AfterEach
+    void tearDown()
+        {
+        repo.deleteAll();
+        rollupRepo.deleteAll();
+        }
+
+    @Test
+    public void bumpStartsAndAdvancesVersions()
+        {
+            repo.bump(Arrays.asList("a1", "a2"));
+            ApplicationVersion first = repo.findById("a1").orElseThrow();
+            repo.bump(Collections.singletonList("a1"));
+            ApplicationVersion second = repo.findById("a1").orElseThrow();
+
+            assertThat(first.getVersion(), is(equalTo(1L)));
+            assertThat(first.getLastModified(), is(notNullValue()));
+            assertThat(second.getVersion(), is(equalTo(2L)));
+            assertThat(second.getLastModified().getTime(), is(greaterThanOrEqualTo(first.getLastModified().getTime())));
+            assertThat(repo.findById("a2").orElseThrow().getVersion(), is(equalTo(1L)));
+            assertThat(repo.findById("a3").isPresent(), is(false));
+        }
+
+    @Test
+    public void bumpAllAdvancesEveryVersion()
+        {
+            repo.bump(Arrays.asList("a1", "a2"));
+
+            assertThat(repo.bumpAll(), is(equalTo(2L)));
+            assertThat(repo.findById("a1").orElseThrow().getVersion(), is(equalTo(2L)));
+            assertThat(repo.findById("a2").orElseThrow().getVersion(), is(equalTo(2L)));
+        }
+
+    @Test
+    public void bumpAllVersionsApplicationsThatOnlyHaveRollups()
+        {
+            repo.bump(Collections.singletonList("a1"));
+            rollupRepo.saveAll(Arrays.asList(
+                new DailyChangeRollup("a1|2021-02-04", "a1", new Date(1612396800000L), 1, 0),
+                new DailyChangeRollup("a2|2021-02-04", "a2", new Date(1612396800000L), 2, 1)));
+
+            assertThat(repo.bumpAll(), is(equalTo(2L)));
+            assertThat(repo.findById("a1").orElseThrow().getVersion(), is(equalTo(2L)));
+            assertThat(repo.findById("a2").orElseThrow().getVersion(), is(equalTo(1L)));
+        }
+    }
@@ -0,0 +1,204 @@
+package team.changeservice.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.test.context.TestPropertySource;
+import team.changeservice.MongoDBContainerTest;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.DailyChangeRollup;
+import team.changeservice.service.ReactiveChangeRequestServiceImpl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+//The properties configure the reactive repository the v2 API reads through, the other repositories are built by the test
+@TestPropertySource(properties = {"changeservice.archive.enabled=true", "changeservice.archive.horizon=30d"})
+class ChangeRequestArchiveTest extends MongoDBContainerTest
+    {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    ReactiveChangeRequestRepo reactiveRepo;
+
+    ChangeRequestRepoCustomImpl repo;
+
+    DailyChangeRollupRepoCustomImpl rollupRepo;
+
+    Date old1;
+
+    Date old2;
+
+    Date recent;
+
+    @BeforeEach
+    void setUp()
+        {
+            repo = new ChangeRequestRepoCustomImpl(mongoTemplate, true, Duration.ofDays(30));
+            rollupRepo = new DailyChangeRollupRepoCustomImpl(mongoTemplate, true);
+            Instant now = Instant.now();
+            old1 = Date.from(now.minus(100, ChronoUnit.DAYS));
+            old2 = Date.from(now.minus(60, ChronoUnit.DAYS));
+            recent = Date.from(now.minus(1, ChronoUnit.DAYS));
+            repo.bulkUpsert(Arrays.asList(
+                    changeRequest("cr1", "a1", old1, true),
+                    changeRequest("cr2", "a1", old2, false),
+                    changeRequest("cr3", "a1", recent, false),
+                    changeRequest("cr4", "a2", old2, false)), null);
+        }
+
+    @AfterEach
+    void tearDown()
+        {
+            mongoTemplate.dropCollection(ChangeRequest.class);
+            mongoTemplate.dropCollection(ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION);
+            mongoTemplate.dropCollection(DailyChangeRollup.class);
+        }
+
+    private static ChangeRequest changeRequest(String id, String applicationId, Date closed, boolean failed)
+        {
+            return new ChangeRequest(id, "change request " + id, applicationId, closed, closed, closed, closed, failed, "test");
+        }
+
+    private static List<String> idsOf(List<ChangeRequest> changeRequests)
+        {
+            return changeRequests.stream().map(ChangeRequest::getChangeRequestId).collect(Collectors.toList());
+        }
+
+    @Test
+    public void archiveMovesOnlyChangeRequestsClosedBeforeTheHorizon()
+        {
+            assertThat(repo.archive(1), is(equalTo(3L)));
+
+            assertThat(mongoTemplate.count(new Query(), ChangeRequest.class), is(equalTo(1L)));
+            assertThat(mongoTemplate.findById("cr3", ChangeRequest.class), is(notNullValue()));
+            assertThat(mongoTemplate.findById("cr1", ChangeRequest.class, ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION),
+                    is(equalTo(changeRequest("cr1", "a1", old1, true))));
+            assertThat(repo.findArchivedById("cr2").isPresent(), is(true));
+            assertThat(repo.archive(1), is(equalTo(0L)));
+        }
+
+    @Test
+    public void pagesAndStreamsSpanBothCollectionsInClosedOrder()
+        {
+            repo.archive(1000);
+
+            ChangeRequestPage first = repo.findPage(null, null, null, null, 2, ChangeRequestFields.ALL);
+            assertThat(idsOf(first.getChangeRequests()), is(equalTo(Arrays.asList("cr1", "cr2"))));
+            ChangeRequestPage second = repo.findPage(null, null, null, first.getNext(), 2, ChangeRequestFields.ALL);
+            assertThat(idsOf(second.getChangeRequests()), is(equalTo(Arrays.asList("cr4", "cr3"))));
+            assertThat(second.getNext(), is(nullValue()));
+
+            List<ChangeRequest> streamed = new ArrayList<>();
+            try (CloseableIterator<ChangeRequest> changeRequests = repo.stream(Collections.singletonList("a1"), null, null, ChangeRequestFields.ALL)) {
+                changeRequests.forEachRemaining(streamed::add);
+            }
+            assertThat(idsOf(streamed), is(equalTo(Arrays.asList("cr1", "cr2", "cr3"))));
+        }
+
+    @Test
+    public void recentRangesReadOnlyTheHotCollection()
+        {
+            repo.archive(1000);
+            //Put a change request in the archive that a recent range would match, it must not be looked for there
+            mongoTemplate.save(changeRequest("cr5", "a1", recent, false), ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION);
+
+            ChangeRequestPage page = repo.findPage(null, Date.from(Instant.now().minus(7, ChronoUnit.DAYS)), null, null, 10, ChangeRequestFields.ALL);
+
+            assertThat(idsOf(page.getChangeRequests()), is(equalTo(Collections.singletonList("cr3"))));
+        }
+
+    @Test
+    public void resentChangeRequestsMoveBackFromTheArchive()
+        {
+            repo.archive(1000);
+            List<ChangeRequestState> states = repo.findStates(Arrays.asList("cr1", "cr3"));
+            assertThat(states.size(), is(equalTo(2)));
+
+            repo.bulkUpsert(Collections.singletonList(changeRequest("cr1", "a1", old1, false)), null);
+
+            assertThat(mongoTemplate.findById("cr1", ChangeRequest.class).getFailed(), is(false));
+            assertThat(repo.findArchivedById("cr1").isPresent(), is(false));
+        }
+
+    @Test
+    public void deletesReachTheArchive()
+        {
+            repo.archive(1000);
+
+            assertThat(repo.findAndRemoveState("cr4"), is(notNullValue()));
+            assertThat(rollupRepo.countDays(ChangeRequestFilter.of("a1", null, null, null)).stream().mapToInt(DailyChangeRollup::getTotal).sum(), is(equalTo(3)));
+            assertThat(repo.deleteMatching(ChangeRequestFilter.of("a1", null, null, null)), is(equalTo(3L)));
+            assertThat(repo.findArchivedById("cr1").isPresent(), is(false));
+        }
+
+    @Test
+    public void rollupRebuildCountsArchivedChangeRequests()
+        {
+            repo.archive(1000);
+
+            rollupRepo.rebuild();
+
+            List<DailyChangeRollup> rollups = mongoTemplate.findAll(DailyChangeRollup.class);
+            assertThat(rollups.size(), is(equalTo(4)));
+            assertThat(rollups.stream().mapToInt(DailyChangeRollup::getTotal).sum(), is(equalTo(4)));
+            assertThat(rollups.stream().mapToInt(DailyChangeRollup::getFailed).sum(), is(equalTo(1)));
+        }
+
+    @Test
+    public void v2StreamsSpanBothCollectionsInClosedOrder()
+        {
+            repo.archive(1000);
+            ReactiveChangeRequestServiceImpl service = new ReactiveChangeRequestServiceImpl(reactiveRepo, null, null);
+
+            assertThat(idsOf(service.list().collectList().block()), is(equalTo(Arrays.asList("cr1", "cr2", "cr4", "cr3"))));
+            assertThat(idsOf(service.listForApplication("a1").collectList().block()), is(equalTo(Arrays.asList("cr1", "cr2", "cr3"))));
+            assertThat(idsOf(service.listForApplication("a2", old2).collectList().block()), is(equalTo(Collections.singletonList("cr4"))));
+        }
+
+    @Test
+    public void v2RecentRangesReadOnlyTheHotCollection()
+        {
+            repo.archive(1000);
+            mongoTemplate.save(changeRequest("cr5", "a1", recent, false), ChangeRequestRepoCustomImpl.ARCHIVE_COLLECTION);
+
+            List<ChangeRequest> streamed = reactiveRepo.stream(Collections.singletonList("a1"), Date.from(Instant.now().minus(7, ChronoUnit.DAYS)), null)
+                    .collectList().block();
+
+            assertThat(idsOf(streamed), is(equalTo(Collections.singletonList("cr3"))));
+        }
+
+    @Test
+    public void v2GetFindsArchivedChangeRequests()
+        {
+            repo.archive(1000);
+            ReactiveChangeRequestServiceImpl service = new ReactiveChangeRequestServiceImpl(reactiveRepo, null, null);
+
+            assertThat(service.get("cr1").block(), is(equalTo(changeRequest("cr1", "a1", old1, true))));
+            assertThat(service.get("cr3").block(), is(equalTo(changeRequest("cr3", "a1", recent, false))));
+            assertThat(service.get("cr6").block(), is(nullValue()));
+        }
+    }
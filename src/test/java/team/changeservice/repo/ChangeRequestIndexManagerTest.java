@@ -0,0 +1,55 @@
+package team.changeservice.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import team.changeservice.MongoDBContainerTest;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class ChangeRequestIndexManagerTest extends MongoDBContainerTest
+    {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    ChangeRequestIndexManager indexManager;
+
+    @BeforeEach
+    void setUp()
+        {
+            indexManager = new ChangeRequestIndexManager(mongoTemplate);
+            indexManager.ensureIndexes();
+        }
+
+    @AfterEach
+    void tearDown()
+        {
+            mongoTemplate.dropCollection(ChangeRequest.class);
+            mongoTemplate.dropCollection(DailyChangeRollup.class);
+        }
+
+    @Test
+    public void declaredIndexesArePresent()
+        {
+            List<Map<String, Object>> report = indexManager.indexReport();
+            assertThat(report.isEmpty(), is(false));
+            report.forEach(index -> assertThat(index.get("present"), is(equalTo(true))));
+        }
+
+    @Test
+    public void repoQueriesUseAnIndex()
+        {
+            List<Map<String, Object>> report = indexManager.queryPlanReport();
+            report.forEach(plan -> assertThat(plan.get("query").toString(), plan.get("collectionScan"), is(equalTo(false))));
+        }
+    }
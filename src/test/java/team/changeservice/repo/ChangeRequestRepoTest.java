@@ -1,17 +1,27 @@
 package team.changeservice.repo;
 
+import com.mongodb.WriteConcern;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.util.CloseableIterator;
 import team.changeservice.MongoDBContainerTest;
 import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.ChangeRequestWriteResult;
+import team.changeservice.model.WriteStatus;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -19,12 +29,17 @@ import java.util.Optional;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 class ChangeRequestRepoTest extends MongoDBContainerTest
     {
     
     @Autowired
     ChangeRequestRepo repo;
+
+    @Autowired
+    ReactiveChangeRequestRepo reactiveRepo;
     
     @BeforeEach
     void setUp()
@@ -77,4 +92,118 @@ class ChangeRequestRepoTest extends MongoDBContainerTest
             List<ChangeRequest> crs = repo.findByApplicationIdInOrderByClosedDesc(Arrays.asList("a1", "a2"));
             assertThat(crs.size(), is(equalTo(3)));
         }
-    }
\ No newline at end of file
+    
+    @Test
+    public void bulkUpsertReportsInsertedAndReplaced()
+        {
+            ChangeRequest replacement = new ChangeRequest("cr1", "change request 1 updated", "a1", Date.from(Instant.now()), Date.from(Instant.now()), Date.from(Instant.now()), Date.from(Instant.now()), false,"test");
+            ChangeRequest added = new ChangeRequest("cr5", "change request 5", "a1", Date.from(Instant.now()), Date.from(Instant.now()), Date.from(Instant.now()), Date.from(Instant.now()), false,"test");
+            List<ChangeRequestWriteResult> results = repo.bulkUpsert(Arrays.asList(replacement, added), WriteConcern.MAJORITY);
+            assertThat(results.get(0).getStatus(), is(equalTo(WriteStatus.REPLACED)));
+            assertThat(results.get(1).getStatus(), is(equalTo(WriteStatus.INSERTED)));
+            assertThat(repo.findById("cr1").get().getDescription(), is(equalTo("change request 1 updated")));
+            assertThat(repo.count(), is(equalTo(5L)));
+        }
+
+    @Test
+    public void findStatesForIds()
+        {
+            List<ChangeRequestState> states = repo.findStates(Arrays.asList("cr1", "cr3", "missing"));
+            assertThat(states.size(), is(equalTo(2)));
+            assertThat(states.get(0).getApplicationId(), is(notNullValue()));
+            assertThat(states.get(0).getFailed(), is(equalTo(true)));
+        }
+
+    @Test
+    public void findStatesReturnsContentHashWrittenByBulkUpsert()
+        {
+            ChangeRequest changeRequest = new ChangeRequest("cr6", "change request 6", "a1", Date.from(Instant.now()), Date.from(Instant.now()), Date.from(Instant.now()), Date.from(Instant.now()), false,"test");
+            repo.bulkUpsert(Collections.singletonList(changeRequest), null);
+            List<ChangeRequestState> states = repo.findStates(Collections.singletonList("cr6"));
+            assertThat(states.get(0), is(equalTo(ChangeRequestState.of(changeRequest))));
+            assertThat(repo.findById("cr6").get(), is(equalTo(changeRequest)));
+        }
+
+    @Test
+    public void findAndRemoveStateDeletesInOneCall()
+        {
+            ChangeRequestState removed = repo.findAndRemoveState("cr3");
+            assertThat(removed.getApplicationId(), is(equalTo("a2")));
+            assertThat(removed.getFailed(), is(equalTo(true)));
+            assertThat(repo.findById("cr3").isPresent(), is(false));
+            assertThat(repo.findAndRemoveState("cr3"), is(nullValue()));
+        }
+
+    @Test
+    public void deleteMatchingByIdsAndByApplication()
+        {
+            assertThat(repo.deleteMatching(ChangeRequestFilter.ofIds(Arrays.asList("cr1", "cr4", "missing"))), is(equalTo(2L)));
+            assertThat(repo.deleteMatching(ChangeRequestFilter.of("a2", "other", null, null)), is(equalTo(0L)));
+            assertThat(repo.deleteMatching(ChangeRequestFilter.of("a2", "test", null, Date.from(Instant.now().plusSeconds(60)))), is(equalTo(1L)));
+            assertThat(repo.count(), is(equalTo(1L)));
+        }
+
+    @Test
+    public void findPageWalksAllChangeRequestsInOrder()
+        {
+            Date closed = Date.from(Instant.parse("2021-02-04T10:00:00Z"));
+            repo.saveAll(Arrays.asList(
+                new ChangeRequest("p3", "page 3", "p", closed, closed, closed, closed, false, "test"),
+                new ChangeRequest("p1", "page 1", "p", closed, closed, closed, Date.from(Instant.parse("2021-02-03T10:00:00Z")), false, "test"),
+                new ChangeRequest("p2", "page 2", "p", closed, closed, closed, closed, false, "test")));
+
+            ChangeRequestPage first = repo.findPage(Collections.singletonList("p"), null, null, null, 2, ChangeRequestFields.ALL);
+            assertThat(first.getChangeRequests().size(), is(equalTo(2)));
+            assertThat(first.getChangeRequests().get(0).getChangeRequestId(), is(equalTo("p1")));
+            assertThat(first.getChangeRequests().get(1).getChangeRequestId(), is(equalTo("p2")));
+            assertThat(first.hasNext(), is(true));
+
+            ChangeRequestPage second = repo.findPage(Collections.singletonList("p"), null, null, first.getNext(), 2, ChangeRequestFields.ALL);
+            assertThat(second.getChangeRequests().size(), is(equalTo(1)));
+            assertThat(second.getChangeRequests().get(0).getChangeRequestId(), is(equalTo("p3")));
+            assertThat(second.hasNext(), is(false));
+        }
+
+    @Test
+    public void findPageForDateRange()
+        {
+            LocalDateTime startDateTime = LocalDate.now().atStartOfDay();
+            Date startDate = Date.from(startDateTime.toInstant(ZoneOffset.UTC));
+            Date endDate = Date.from(startDateTime.plusDays(1).toInstant(ZoneOffset.UTC));
+            ChangeRequestPage page = repo.findPage(Arrays.asList("a1", "a2"), startDate, endDate, null, 10, ChangeRequestFields.ALL);
+            assertThat(page.getChangeRequests().size(), is(equalTo(3)));
+            assertThat(page.hasNext(), is(false));
+        }
+
+    @Test
+    public void findPageFetchesOnlyRequestedFields()
+        {
+            ChangeRequestPage page = repo.findPage(Arrays.asList("a1", "a2"), null, null, null, 1, ChangeRequestFields.parse("applicationId,failed"));
+            ChangeRequest changeRequest = page.getChangeRequests().get(0);
+            assertThat(changeRequest.getChangeRequestId(), is(notNullValue()));
+            assertThat(changeRequest.getClosed(), is(notNullValue()));
+            assertThat(changeRequest.getApplicationId(), is(notNullValue()));
+            assertThat(changeRequest.getFailed(), is(notNullValue()));
+            assertThat(changeRequest.getDescription(), is(nullValue()));
+            assertThat(changeRequest.getSource(), is(nullValue()));
+            assertThat(page.hasNext(), is(true));
+        }
+
+    @Test
+    public void streamForApplications()
+        {
+            try (CloseableIterator<ChangeRequest> changeRequests = repo.stream(Arrays.asList("a1", "a2"), null, null, ChangeRequestFields.ALL)) {
+                List<String> ids = new ArrayList<>();
+                changeRequests.forEachRemaining(c -> ids.add(c.getChangeRequestId()));
+                assertThat(ids.size(), is(equalTo(3)));
+                assertThat(ids.contains("cr4"), is(false));
+            }
+        }
+
+    @Test
+    public void reactiveStreamForApplications()
+        {
+            List<ChangeRequest> crs = reactiveRepo.stream(Arrays.asList("a1", "a2"), null, null).collectList().block();
+            assertThat(crs.size(), is(equalTo(3)));
+        }
+    }
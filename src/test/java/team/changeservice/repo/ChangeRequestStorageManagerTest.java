@@ -0,0 +1,191 @@
+package team.changeservice.repo;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import team.changeservice.MongoDBContainerTest;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChangeRequestStorageManagerTest extends MongoDBContainerTest
+    {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    MongoTemplate compactTemplate;
+
+    JobLock jobLock;
+
+    ChangeRequest cr1;
+
+    ChangeRequest cr2;
+
+    @BeforeEach
+    void setUp()
+        {
+            MongoMappingContext context = new MongoMappingContext();
+            context.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+            context.afterPropertiesSet();
+            MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+            converter.setTypeMapper(new DefaultMongoTypeMapper(null));
+            converter.afterPropertiesSet();
+            compactTemplate = new MongoTemplate(mongoTemplate.getMongoDatabaseFactory(), converter);
+            jobLock = new JobLock(mongoTemplate, Duration.ofMinutes(1));
+
+            new ChangeRequestIndexManager(mongoTemplate).ensureIndexes();
+            Date closed = Date.from(Instant.parse("2021-02-04T10:00:00Z"));
+            cr1 = new ChangeRequest("cr1", "change request 1", "a1", closed, closed, closed, closed, true, "test");
+            cr2 = new ChangeRequest("cr2", "change request 2", "a2", closed, closed, closed, closed, false, null);
+            mongoTemplate.save(cr1);
+            mongoTemplate.save(cr2);
+        }
+
+    @AfterEach
+    void tearDown()
+        {
+            mongoTemplate.dropCollection(ChangeRequest.class);
+            mongoTemplate.dropCollection(DailyChangeRollup.class);
+            mongoTemplate.dropCollection(JobLock.COLLECTION);
+        }
+
+    private ChangeRequestStorageManager storageManager(MongoTemplate template, int migrationBatchSize)
+        {
+            return new ChangeRequestStorageManager(template, new ChangeRequestIndexManager(template), jobLock, 100, migrationBatchSize);
+        }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void reportComparesLayoutsOfStoredDocuments()
+        {
+            Map<String, Object> report = storageManager(mongoTemplate, 100).storageReport();
+
+            assertThat(report.get("layout"), is(equalTo("standard")));
+            assertThat(((Map<String, Object>) report.get("collection")).get("count"), is(equalTo(2)));
+            assertThat(((Map<String, Object>) report.get("documents")).get("standard"), is(equalTo(2L)));
+            assertThat(((Map<String, Object>) report.get("documents")).get("compact"), is(equalTo(0L)));
+            Map<String, Object> sample = (Map<String, Object>) report.get("sample");
+            assertThat(sample.get("documents"), is(equalTo(2L)));
+            assertThat((Long) sample.get("compactBytes"), is(lessThan((Long) sample.get("standardBytes"))));
+        }
+
+    @Test
+    public void migrateRenamesFieldsAndRebuildsIndexes()
+        {
+            ChangeRequestIndexManager compactIndexManager = new ChangeRequestIndexManager(compactTemplate);
+            ChangeRequestStorageManager compactStorageManager = new ChangeRequestStorageManager(compactTemplate, compactIndexManager, jobLock, 100, 1);
+            assertThat(compactStorageManager.isCompact(), is(true));
+
+            Map<String, Object> migrated = compactStorageManager.migrate();
+
+            assertThat(migrated.get("migrated"), is(equalTo(2L)));
+            assertThat(migrated.get("rebuiltIndexes"), is(equalTo(Arrays.asList("applicationId_closed_id", "closed_id"))));
+            Document stored = mongoTemplate.getCollection("changeRequest").find(new Document("_id", "cr1")).first();
+            assertThat(stored.containsKey("_class"), is(false));
+            assertThat(stored.get("a"), is(equalTo("a1")));
+            assertThat(compactTemplate.findById("cr1", ChangeRequest.class), is(equalTo(cr1)));
+            assertThat(compactTemplate.findById("cr2", ChangeRequest.class), is(equalTo(cr2)));
+            compactIndexManager.indexReport().forEach(index -> assertThat(index.get("present"), is(equalTo(true))));
+            compactIndexManager.queryPlanReport().forEach(plan -> assertThat(plan.get("query").toString(), plan.get("collectionScan"), is(equalTo(false))));
+
+            Map<String, Object> restored = storageManager(mongoTemplate, 1).migrate();
+
+            assertThat(restored.get("migrated"), is(equalTo(2L)));
+            assertThat(mongoTemplate.findById("cr1", ChangeRequest.class), is(equalTo(cr1)));
+        }
+
+    @Test
+    public void startingCompactMigratesStandardDocumentsFirst()
+        {
+            ChangeRequestStorageManager compactStorageManager = storageManager(compactTemplate, 1);
+            assertThat(compactStorageManager.countInOtherLayout(), is(equalTo(2L)));
+
+            compactStorageManager.afterSingletonsInstantiated();
+
+            assertThat(compactStorageManager.countInOtherLayout(), is(equalTo(0L)));
+            assertThat(compactTemplate.findById("cr1", ChangeRequest.class), is(equalTo(cr1)));
+        }
+
+    @Test
+    public void startingEnsuresIndexesOnTheMigratedLayout()
+        {
+            mongoTemplate.dropCollection(DailyChangeRollup.class);
+
+            storageManager(compactTemplate, 1).afterSingletonsInstantiated();
+
+            List<Map<String, Object>> report = new ChangeRequestIndexManager(compactTemplate).indexReport();
+            report.forEach(index -> assertThat(index.get("name").toString(), index.get("present"), is(equalTo(true))));
+        }
+
+    @Test
+    public void startingCompactIsRefusedWhileStandardDocumentsRemain()
+        {
+            //Another instance holds the migration lock, so nothing is moved
+            new JobLock(mongoTemplate, Duration.ofMinutes(1)).runExclusively(ChangeRequestStorageManager.LOCK, () -> {
+                ChangeRequestStorageManager compactStorageManager = storageManager(compactTemplate, 1);
+                assertThrows(IllegalStateException.class, compactStorageManager::afterSingletonsInstantiated);
+                assertThat(compactStorageManager.countInOtherLayout(), is(equalTo(2L)));
+            });
+        }
+
+    @Test
+    public void rollupsChangeFailureCountsAndResendsWorkOnACompactStore()
+        {
+            storageManager(compactTemplate, 1).afterSingletonsInstantiated();
+            ChangeRequestRepoCustomImpl repo = new ChangeRequestRepoCustomImpl(compactTemplate);
+            DailyChangeRollupRepoCustomImpl rollupRepo = new DailyChangeRollupRepoCustomImpl(compactTemplate);
+            Date day = Date.from(Instant.parse("2021-02-04T00:00:00Z"));
+            Date nextDay = Date.from(Instant.parse("2021-02-05T00:00:00Z"));
+
+            assertThat(rollupRepo.rebuild(), is(equalTo(2L)));
+            assertThat(rollupRepo.sumChanges("a1", day, day), is(equalTo(new ChangeCounts("a1", 1, 1))));
+
+            //Re-sending a change request backs out the stored state read back in the compact layout
+            Date closed = Date.from(Instant.parse("2021-02-05T10:00:00Z"));
+            ChangeRequest resent = new ChangeRequest("cr1", "change request 1", "a1", closed, closed, closed, closed, false, "test");
+            List<ChangeRequestState> stored = repo.findStates(Collections.singletonList("cr1"));
+            assertThat(stored.size(), is(equalTo(1)));
+            assertThat(stored.get(0).getApplicationId(), is(equalTo("a1")));
+            assertThat(stored.get(0).getClosed(), is(equalTo(cr1.getClosed())));
+            assertThat(stored.get(0).getFailed(), is(equalTo(true)));
+            List<ChangeRequestState> changing = new ArrayList<>(stored);
+            changing.add(ChangeRequestState.of(resent));
+            rollupRepo.beginChanges(changing);
+            repo.bulkUpsert(Collections.singletonList(resent), null);
+            rollupRepo.endChanges(changing, stored, Collections.singletonList(ChangeRequestState.of(resent)));
+
+            assertThat(rollupRepo.sumChanges("a1", day, day), is(equalTo(new ChangeCounts("a1", 0, 0))));
+            assertThat(rollupRepo.sumChanges("a1", day, nextDay), is(equalTo(new ChangeCounts("a1", 1, 0))));
+            assertThat(repo.findStates(Collections.singletonList("cr1")), is(equalTo(Collections.singletonList(ChangeRequestState.of(resent)))));
+
+            //A rebuild from the compact documents agrees with what the writes kept up
+            rollupRepo.rebuild();
+            assertThat(rollupRepo.sumChanges(Arrays.asList("a1", "a2"), day, nextDay),
+                    containsInAnyOrder(new ChangeCounts("a1", 1, 0), new ChangeCounts("a2", 1, 0)));
+        }
+    }
@@ -0,0 +1,218 @@
+package team.changeservice.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import team.changeservice.MongoDBContainerTest;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+class DailyChangeRollupRepoTest extends MongoDBContainerTest
+    {
+
+    @Autowired
+    DailyChangeRollupRepo rollupRepo;
+
+    @Autowired
+    ChangeRequestRepo changeRequestRepo;
+
+    @AfterEach
+    void tearDown()
+        {
+        rollupRepo.deleteAll();
+        changeRequestRepo.deleteAll();
+        }
+
+    private static Date dateOf(int month, int dayOfMonth, int hour)
+        {
+        return Date.from(LocalDateTime.of(2021, month, dayOfMonth, hour, 0).toInstant(ZoneOffset.UTC));
+        }
+
+    @Test
+    public void applyChangesAccumulatesPerDay()
+        {
+            rollupRepo.applyChanges(Collections.emptyList(), Arrays.asList(
+                new ChangeRequestState("cr1", "a1", dateOf(2, 4, 8), true),
+                new ChangeRequestState("cr2", "a1", dateOf(2, 4, 20), false),
+                new ChangeRequestState("cr3", "a1", dateOf(2, 5, 8), false),
+                new ChangeRequestState("cr4", "a2", dateOf(2, 4, 8), true)));
+
+            assertThat(rollupRepo.count(), is(equalTo(3L)));
+            ChangeCounts counts = rollupRepo.sumChanges("a1", dateOf(2, 4, 0), dateOf(2, 4, 0));
+            assertThat(counts.getTotal(), is(equalTo(2)));
+            assertThat(counts.getFailed(), is(equalTo(1)));
+        }
+
+    @Test
+    public void applyChangesBacksOutRemovedState()
+        {
+            ChangeRequestState before = new ChangeRequestState("cr1", "a1", dateOf(2, 4, 8), true);
+            ChangeRequestState after = new ChangeRequestState("cr1", "a1", dateOf(2, 6, 8), false);
+            rollupRepo.applyChanges(Collections.emptyList(), Collections.singletonList(before));
+            rollupRepo.applyChanges(Collections.singletonList(before), Collections.singletonList(after));
+
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 4, 0), dateOf(2, 4, 0)), is(equalTo(new ChangeCounts("a1", 0, 0))));
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a1", 1, 0))));
+        }
+
+    @Test
+    public void sumChangesForSeveralApplications()
+        {
+            rollupRepo.applyChanges(Collections.emptyList(), Arrays.asList(
+                new ChangeRequestState("cr1", "a1", dateOf(2, 4, 8), true),
+                new ChangeRequestState("cr2", "a2", dateOf(2, 4, 8), false),
+                new ChangeRequestState("cr3", "a2", dateOf(2, 5, 8), true),
+                new ChangeRequestState("cr4", "a3", dateOf(2, 4, 8), true)));
+
+            List<ChangeCounts> counts = rollupRepo.sumChanges(Arrays.asList("a1", "a2", "a4"), dateOf(2, 1, 0), dateOf(2, 28, 0));
+
+            assertThat(counts.size(), is(equalTo(2)));
+            assertThat(counts.contains(new ChangeCounts("a1", 1, 1)), is(true));
+            assertThat(counts.contains(new ChangeCounts("a2", 2, 1)), is(true));
+            assertThat(rollupRepo.sumChanges(Arrays.asList("a1", "a2", "a4"), dateOf(2, 1, 0), dateOf(2, 28, 0), Duration.ofSeconds(5)), is(equalTo(counts)));
+        }
+
+    @Test
+    public void findDaysInOrder()
+        {
+            rollupRepo.applyChanges(Collections.emptyList(), Arrays.asList(
+                new ChangeRequestState("cr1", "a1", dateOf(2, 6, 8), true),
+                new ChangeRequestState("cr2", "a1", dateOf(2, 4, 8), false),
+                new ChangeRequestState("cr3", "a1", dateOf(3, 1, 8), true),
+                new ChangeRequestState("cr4", "a2", dateOf(2, 5, 8), true)));
+
+            List<DailyChangeRollup> days = rollupRepo.findDays("a1", dateOf(2, 4, 0), dateOf(2, 28, 0));
+
+            assertThat(days.size(), is(equalTo(2)));
+            assertThat(days.get(0).getDay(), is(equalTo(dateOf(2, 4, 0))));
+            assertThat(days.get(1).getDay(), is(equalTo(dateOf(2, 6, 0))));
+        }
+
+    @Test
+    public void sumChangesWithNoData()
+        {
+            ChangeCounts counts = rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0));
+            assertThat(counts.getTotal(), is(equalTo(0)));
+            assertThat(counts.getFailed(), is(equalTo(0)));
+        }
+
+    @Test
+    public void rebuildFromChangeRequests()
+        {
+            changeRequestRepo.saveAll(Arrays.asList(
+                new ChangeRequest("cr1", "change request 1", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 8), dateOf(2, 4, 8), true, "test"),
+                new ChangeRequest("cr2", "change request 2", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 9), dateOf(2, 4, 9), false, "test"),
+                new ChangeRequest("cr3", "change request 3", "a1", dateOf(2, 6, 6), dateOf(2, 6, 6), dateOf(2, 6, 9), dateOf(2, 6, 9), false, "test")));
+
+            long rows = rollupRepo.rebuild();
+
+            assertThat(rows, is(equalTo(2L)));
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a1", 3, 1))));
+        }
+    
+    @Test
+    public void countDaysAndSubtractThem()
+        {
+            List<ChangeRequest> changeRequests = Arrays.asList(
+                new ChangeRequest("cr1", "change request 1", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 8), dateOf(2, 4, 8), true, "bad"),
+                new ChangeRequest("cr2", "change request 2", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 9), dateOf(2, 4, 9), false, "test"),
+                new ChangeRequest("cr3", "change request 3", "a1", dateOf(2, 6, 6), dateOf(2, 6, 6), dateOf(2, 6, 9), dateOf(2, 6, 9), false, "bad"));
+            changeRequestRepo.saveAll(changeRequests);
+            rollupRepo.rebuild();
+
+            List<DailyChangeRollup> removed = rollupRepo.countDays(ChangeRequestFilter.of("a1", "bad", null, null));
+            rollupRepo.subtract(removed);
+
+            assertThat(removed.size(), is(equalTo(2)));
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a1", 1, 0))));
+            assertThat(rollupRepo.countDays(ChangeRequestFilter.ofIds(Arrays.asList("cr1", "cr2"))),
+                is(equalTo(Collections.singletonList(new DailyChangeRollup("a1|2021-02-04", "a1", dateOf(2, 4, 0), 2, 1)))));
+        }
+
+    @Test
+    public void recountDaysAfterADeleteSetsOnlyTheApplicationsDaysInRange()
+        {
+            changeRequestRepo.saveAll(Arrays.asList(
+                new ChangeRequest("cr1", "change request 1", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 8), dateOf(2, 4, 8), true, "test"),
+                new ChangeRequest("cr2", "change request 2", "a1", dateOf(2, 6, 6), dateOf(2, 6, 6), dateOf(2, 6, 9), dateOf(2, 6, 9), false, "test")));
+            rollupRepo.saveAll(Arrays.asList(
+                new DailyChangeRollup("a1|2021-02-04", "a1", dateOf(2, 4, 0), 3, 2),
+                new DailyChangeRollup("a1|2021-02-05", "a1", dateOf(2, 5, 0), 2, 2),
+                new DailyChangeRollup("a1|2021-02-06", "a1", dateOf(2, 6, 0), 4, 0),
+                new DailyChangeRollup("a2|2021-02-05", "a2", dateOf(2, 5, 0), 2, 1)));
+
+            //The range is widened to whole days, so the 6th is left alone
+            long recounted = rollupRepo.recountDays("a1", dateOf(2, 4, 12), dateOf(2, 6, 0));
+
+            assertThat(recounted, is(equalTo(2L)));
+            assertThat(rollupRepo.findDays("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(Arrays.asList(
+                new DailyChangeRollup("a1|2021-02-04", "a1", dateOf(2, 4, 0), 1, 1),
+                new DailyChangeRollup("a1|2021-02-05", "a1", dateOf(2, 5, 0), 0, 0),
+                new DailyChangeRollup("a1|2021-02-06", "a1", dateOf(2, 6, 0), 4, 0)))));
+            assertThat(rollupRepo.sumChanges("a2", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a2", 2, 1))));
+        }
+
+    @Test
+    public void recountDaysLeavesDaysBeingWrittenToTheirWriter()
+        {
+            ChangeRequest cr1 = new ChangeRequest("cr1", "change request 1", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 8), dateOf(2, 4, 8), true, "test");
+            rollupRepo.applyChanges(Collections.emptyList(), Collections.singletonList(ChangeRequestState.of(cr1)));
+            List<ChangeRequestState> changing = Collections.singletonList(ChangeRequestState.of(cr1));
+            rollupRepo.beginChanges(changing);
+            changeRequestRepo.save(cr1);
+
+            assertThat(rollupRepo.recountDays("a1", null, null), is(equalTo(0L)));
+            rollupRepo.endChanges(changing, Collections.singletonList(ChangeRequestState.of(cr1)), changing);
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a1", 1, 1))));
+        }
+
+    @Test
+    public void rebuildCorrectsDriftAndRemovesEmptyDays()
+        {
+            changeRequestRepo.saveAll(Collections.singletonList(
+                new ChangeRequest("cr1", "change request 1", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 8), dateOf(2, 4, 8), true, "test")));
+            rollupRepo.saveAll(Arrays.asList(
+                new DailyChangeRollup("a1|2021-02-04", "a1", dateOf(2, 4, 0), 5, 0),
+                new DailyChangeRollup("a1|2021-02-05", "a1", dateOf(2, 5, 0), 2, 2)));
+
+            rollupRepo.rebuild();
+
+            assertThat(rollupRepo.findDays("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)),
+                is(equalTo(Collections.singletonList(new DailyChangeRollup("a1|2021-02-04", "a1", dateOf(2, 4, 0), 1, 1)))));
+        }
+
+    @Test
+    public void rebuildLeavesDaysBeingWrittenToTheirWriter()
+        {
+            ChangeRequest cr1 = new ChangeRequest("cr1", "change request 1", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 8), dateOf(2, 4, 8), true, "test");
+            ChangeRequest cr2 = new ChangeRequest("cr2", "change request 2", "a1", dateOf(2, 4, 6), dateOf(2, 4, 6), dateOf(2, 4, 9), dateOf(2, 4, 9), false, "test");
+            changeRequestRepo.save(cr1);
+            rollupRepo.applyChanges(Collections.emptyList(), Collections.singletonList(ChangeRequestState.of(cr1)));
+
+            //A writer stores cr2 while the rebuild runs, the rebuild sees it but the writer adds it to the rollup
+            List<ChangeRequestState> changing = Collections.singletonList(ChangeRequestState.of(cr2));
+            rollupRepo.beginChanges(changing);
+            changeRequestRepo.save(cr2);
+            rollupRepo.rebuild();
+            rollupRepo.endChanges(changing, Collections.emptyList(), changing);
+
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a1", 2, 1))));
+            rollupRepo.rebuild();
+            assertThat(rollupRepo.sumChanges("a1", dateOf(2, 1, 0), dateOf(2, 28, 0)), is(equalTo(new ChangeCounts("a1", 2, 1))));
+        }
+    }
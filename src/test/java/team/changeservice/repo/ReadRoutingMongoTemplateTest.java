@@ -0,0 +1,135 @@
+package team.changeservice.repo;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.util.CloseableIterator;
+import team.changeservice.MongoDBContainerTest;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.DailyChangeRollup;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class ReadRoutingMongoTemplateTest extends MongoDBContainerTest
+    {
+    private static final ReadPreference SECONDARY_PREFERRED = ReadPreference.secondaryPreferred(90, TimeUnit.SECONDS);
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    MongoClient capturingClient;
+
+    //Every command sent through the routing template, the read preference a read went out with is in its $readPreference
+    List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+
+    ReadRoutingMongoTemplate routingTemplate;
+
+    @BeforeEach
+    void setUp()
+        {
+            capturingClient = MongoClients.create(MongoClientSettings.builder()
+                    .applyConnectionString(new ConnectionString(mongoDBContainer.getReplicaSetUrl()))
+                    .addCommandListener(new CommandListener()
+                        {
+                        @Override
+                        public void commandStarted(CommandStartedEvent event)
+                            {
+                            commands.add(event.getCommand());
+                            }
+                        })
+                    .build());
+            routingTemplate = new ReadRoutingMongoTemplate(new SimpleMongoClientDatabaseFactory(capturingClient, mongoTemplate.getDb().getName()),
+                    mongoTemplate.getConverter());
+            Date closed = Date.from(Instant.parse("2021-02-04T10:00:00Z"));
+            mongoTemplate.save(new ChangeRequest("cr1", "change request 1", "a1", closed, closed, closed, closed, true, "test"));
+            mongoTemplate.save(new ChangeRequest("cr2", "change request 2", "a1", closed, closed, closed, closed, false, "test"));
+            new DailyChangeRollupRepoCustomImpl(mongoTemplate).rebuild();
+        }
+
+    @AfterEach
+    void tearDown()
+        {
+            mongoTemplate.dropCollection(ChangeRequest.class);
+            mongoTemplate.dropCollection(DailyChangeRollup.class);
+            capturingClient.close();
+        }
+
+    //The $readPreference of each command of the kind sent since the last call, null where none was sent
+    private List<BsonValue> sentReadPreferences(String commandName)
+        {
+            List<BsonValue> readPreferences = commands.stream().filter(command -> command.getFirstKey().equals(commandName))
+                    .map(command -> command.get("$readPreference")).collect(Collectors.toList());
+            commands.clear();
+            return readPreferences;
+        }
+
+    @Test
+    public void readsGoOutWithTheRoutedReadPreference()
+        {
+            ChangeRequestRepoCustomImpl changeRequests = new ChangeRequestRepoCustomImpl(routingTemplate);
+            DailyChangeRollupRepoCustomImpl rollups = new DailyChangeRollupRepoCustomImpl(routingTemplate);
+            Date day = Date.from(Instant.parse("2021-02-04T00:00:00Z"));
+            BsonValue secondaryPreferred = SECONDARY_PREFERRED.toDocument();
+
+            ReadRoutingMongoTemplate.readingFrom(SECONDARY_PREFERRED, () -> rollups.sumChanges(Collections.singletonList("a1"), day, day));
+            assertThat(sentReadPreferences("aggregate"), is(equalTo(Collections.singletonList(secondaryPreferred))));
+            ReadRoutingMongoTemplate.readingFrom(SECONDARY_PREFERRED, () -> changeRequests.findPage(Collections.singletonList("a1"), null, null, null, 10, ChangeRequestFields.ALL));
+            assertThat(sentReadPreferences("find"), is(equalTo(Collections.singletonList(secondaryPreferred))));
+            ReadRoutingMongoTemplate.readingFrom(SECONDARY_PREFERRED, () -> routingTemplate.findById("cr1", ChangeRequest.class));
+            assertThat(sentReadPreferences("find"), is(equalTo(Collections.singletonList(secondaryPreferred))));
+
+            //Outside readingFrom the same reads go to the primary. The test connects straight to the one member of its replica set, and the driver
+            //sends primary reads over such a connection as primaryPreferred, through a replica set connection it would send none
+            assertThat(ReadRoutingMongoTemplate.routedReadPreference(), is(nullValue()));
+            BsonValue primary = ReadPreference.primaryPreferred().toDocument();
+            rollups.sumChanges(Collections.singletonList("a1"), day, day);
+            assertThat(sentReadPreferences("aggregate"), is(equalTo(Collections.singletonList(primary))));
+            changeRequests.findPage(Collections.singletonList("a1"), null, null, null, 10, ChangeRequestFields.ALL);
+            assertThat(sentReadPreferences("find"), is(equalTo(Collections.singletonList(primary))));
+        }
+
+    @Test
+    public void routedReadsRunAgainstTheReplicaSet()
+        {
+            //The test replica set has no secondaries, secondaryPreferred falls back to its primary
+            ChangeRequestRepoCustomImpl changeRequests = new ChangeRequestRepoCustomImpl(routingTemplate);
+            DailyChangeRollupRepoCustomImpl rollups = new DailyChangeRollupRepoCustomImpl(routingTemplate);
+            Date day = Date.from(Instant.parse("2021-02-04T00:00:00Z"));
+
+            List<ChangeCounts> counts = ReadRoutingMongoTemplate.readingFrom(SECONDARY_PREFERRED,
+                    () -> rollups.sumChanges(Collections.singletonList("a1"), day, day));
+            CloseableIterator<ChangeRequest> stream = ReadRoutingMongoTemplate.readingFrom(SECONDARY_PREFERRED,
+                    () -> changeRequests.stream(Collections.singletonList("a1"), null, null, ChangeRequestFields.ALL));
+
+            assertThat(counts.get(0).getTotal(), is(equalTo(2)));
+            assertThat(counts.get(0).getFailed(), is(equalTo(1)));
+            //Consumed after the routing has ended, on the cursor it opened
+            assertThat(stream.stream().map(ChangeRequest::getChangeRequestId).collect(Collectors.toList()), is(equalTo(Arrays.asList("cr1", "cr2"))));
+        }
+    }
@@ -1,25 +1,49 @@
 package team.changeservice.service;
 
+import com.mongodb.ReadPreference;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import team.changeservice.hierarchy.repo.HierarchyClient;
+import team.changeservice.model.BulkStoreResult;
+import team.changeservice.model.ChangeCounts;
 import team.changeservice.model.ChangeFailureRate;
 import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.ChangeRequestCursor;
+import team.changeservice.model.ChangeRequestFields;
+import team.changeservice.model.ChangeRequestFilter;
+import team.changeservice.model.ChangeRequestPage;
+import team.changeservice.model.ChangeRequestState;
+import team.changeservice.model.ChangeRequestWriteResult;
 import team.changeservice.model.DORALevel;
+import team.changeservice.model.DailyChangeRollup;
+import team.changeservice.model.HierarchyChangeFailureRate;
+import team.changeservice.model.InvalidCursorException;
+import team.changeservice.model.WriteStatus;
+import team.changeservice.repo.ApplicationVersionRepo;
 import team.changeservice.repo.ChangeRequestRepo;
+import team.changeservice.repo.DailyChangeRollupRepo;
+import team.changeservice.repo.ReadRoutingMongoTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -31,6 +55,10 @@ class ChangeRequestServiceImplTest
     @Autowired
     private ChangeRequestRepo mockChangeRequestRepo;
     @Autowired
+    private DailyChangeRollupRepo mockDailyChangeRollupRepo;
+    @Autowired
+    private ApplicationVersionRepo mockApplicationVersionRepo;
+    @Autowired
     private HierarchyClient mockHierarchyClient;
 
     @TestConfiguration
@@ -39,11 +67,20 @@ class ChangeRequestServiceImplTest
         @MockBean
         private ChangeRequestRepo mockChangeRequestRepo;
         @MockBean
+        private DailyChangeRollupRepo mockDailyChangeRollupRepo;
+        @MockBean
+        private ApplicationVersionRepo mockApplicationVersionRepo;
+        @MockBean
         private HierarchyClient mockHierarchyClient;
         @Bean
+        public ReadRouting readRouting()
+            {
+            return new ReadRouting(Collections.singleton("calculateHierarchyChangeFailureRate"), Duration.ofSeconds(120));
+            }
+        @Bean
         public ChangeRequestService changeRequestService()
             {
-            return new ChangeRequestServiceImpl(mockChangeRequestRepo, mockHierarchyClient);
+            return new ChangeRequestServiceImpl(mockChangeRequestRepo, mockDailyChangeRollupRepo, mockApplicationVersionRepo, mockHierarchyClient, readRouting(), 2, 100, 1000, Duration.ofSeconds(2), 1, 2);
             }
         }
     
@@ -79,18 +116,22 @@ class ChangeRequestServiceImplTest
         ChangeRequest cr3 = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, f3);
         ChangeRequest cr4 = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, f4);
         ChangeRequest cr5 = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, f5);
-        return Arrays.asList(cr1, cr2, cr3, cr4, cr5);
+        return Arrays.asList(withId(cr1, "cr1"), withId(cr2, "cr2"), withId(cr3, "cr3"), withId(cr4, "cr4"), withId(cr5, "cr5"));
     }
 
+    private static ChangeRequest withId(ChangeRequest cr, String id)
+        {
+        return new ChangeRequest(id, cr.getDescription(), cr.getApplicationId(), cr.getCreated(), cr.getStarted(), cr.getFinished(), cr.getClosed(), cr.getFailed(), cr.getSource());
+        }
+
     @Test
     void checkCfrCalc()
         {
-        List<ChangeRequest> crs = setupChangeRequests(true, true, true, true, true);
-        when(mockChangeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class))).thenReturn(crs);
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(new ChangeCounts("a1", 5, 5));
 
         ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date());
 
-        verify(mockChangeRequestRepo, times(1)).findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class));
+        verify(mockDailyChangeRollupRepo, times(1)).sumChanges(eq("a1"), any(Date.class), any(Date.class));
         assertThat(cfr.getChangeFailureRatePercent(), is(equalTo(1.0)));
         assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.LOW)));
         }
@@ -98,11 +139,11 @@ class ChangeRequestServiceImplTest
     @Test
     void checkUnknownCfrLevel()
         {
-        when(mockChangeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class))).thenReturn(Collections.emptyList());
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(new ChangeCounts("a1", 0, 0));
 
         ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date());
 
-        verify(mockChangeRequestRepo, times(1)).findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class));
+        verify(mockDailyChangeRollupRepo, times(1)).sumChanges(eq("a1"), any(Date.class), any(Date.class));
         assertThat(cfr.getChangeFailureRatePercent(), is(equalTo(0.00)));
         assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.UNKNOWN)));
         }
@@ -110,12 +151,11 @@ class ChangeRequestServiceImplTest
     @Test
     void checkLowCfrLevel()
         {
-        List<ChangeRequest> crs = setupChangeRequests(true, true, true, true, true);
-        when(mockChangeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class))).thenReturn(crs);
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(new ChangeCounts("a1", 5, 5));
 
         ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date());
 
-        verify(mockChangeRequestRepo, times(1)).findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class));
+        verify(mockDailyChangeRollupRepo, times(1)).sumChanges(eq("a1"), any(Date.class), any(Date.class));
         assertThat(cfr.getChangeFailureRatePercent(), is(equalTo(1.00)));
         assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.LOW)));
         }
@@ -123,12 +163,11 @@ class ChangeRequestServiceImplTest
     @Test
     void checkEliteCfrLevel()
         {
-        List<ChangeRequest> crs = setupChangeRequests(false, false, false, false, false);
-        when(mockChangeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class))).thenReturn(crs);
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(new ChangeCounts("a1", 5, 0));
 
         ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date());
 
-        verify(mockChangeRequestRepo, times(1)).findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class));
+        verify(mockDailyChangeRollupRepo, times(1)).sumChanges(eq("a1"), any(Date.class), any(Date.class));
         assertThat(cfr.getChangeFailureRatePercent(), is(equalTo(0.00)));
         assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.ELITE)));
         }
@@ -136,24 +175,141 @@ class ChangeRequestServiceImplTest
     @Test
     void checkExactEliteCfrLevel()
         {
-        List<ChangeRequest> crs = new ArrayList<>();
-        for(int i = 0; i < 20; i++){
-            if(i < 3) {
-                crs.addAll(setupChangeRequests(true, true, true, true, true));
-            } else {
-                crs.addAll(setupChangeRequests(false, false, false, false, false));
-            }
-        }
-        assertThat(crs.size(), is(equalTo(100)));
-        when(mockChangeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class))).thenReturn(crs);
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(new ChangeCounts("a1", 100, 15));
 
         ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date());
 
-        verify(mockChangeRequestRepo, times(1)).findByApplicationIdAndClosedBetweenOrderByClosed(eq("a1"), any(Date.class), any(Date.class));
+        verify(mockDailyChangeRollupRepo, times(1)).sumChanges(eq("a1"), any(Date.class), any(Date.class));
         assertThat(cfr.getChangeFailureRatePercent(), is(equalTo(0.15)));
         assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.ELITE)));
         }
 
+    @Test
+    void checkBatchCfrCalc()
+        {
+        when(mockDailyChangeRollupRepo.sumChanges(anyCollection(), any(Date.class), any(Date.class)))
+            .thenReturn(Arrays.asList(new ChangeCounts("a2", 100, 15), new ChangeCounts("a1", 5, 5)));
+
+        List<ChangeFailureRate> rates = changeRequestService.calculateChangeFailureRates(Arrays.asList("a1", "a2", "a3", "a1"), new Date());
+
+        verify(mockDailyChangeRollupRepo, times(1)).sumChanges(anyCollection(), any(Date.class), any(Date.class));
+        assertThat(rates.size(), is(equalTo(3)));
+        assertThat(rates.get(0).getApplicationId(), is(equalTo("a1")));
+        assertThat(rates.get(0).getDoraLevel(), is(equalTo(DORALevel.LOW)));
+        assertThat(rates.get(1).getApplicationId(), is(equalTo("a2")));
+        assertThat(rates.get(1).getChangeFailureRatePercent(), is(equalTo(0.15)));
+        assertThat(rates.get(1).getDoraLevel(), is(equalTo(DORALevel.ELITE)));
+        assertThat(rates.get(2).getApplicationId(), is(equalTo("a3")));
+        assertThat(rates.get(2).getDoraLevel(), is(equalTo(DORALevel.UNKNOWN)));
+        }
+
+    @Test
+    void checkHierarchyCfrCalc()
+        {
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Arrays.asList("a1", "a2", "a3"));
+        stubHierarchyCounts(new ChangeCounts("a1", 10, 1), new ChangeCounts("a2", 10, 5));
+
+        HierarchyChangeFailureRate cfr = changeRequestService.calculateHierarchyChangeFailureRate("a1", new Date());
+
+        verify(mockHierarchyClient, times(1)).findChildIds("a1");
+        verify(mockDailyChangeRollupRepo, times(3)).sumChanges(anyCollection(), any(Date.class), any(Date.class), any(Duration.class));
+        assertThat(cfr.getTimedOut().isEmpty(), is(true));
+        assertThat(cfr.getHierarchy().getApplicationId(), is(equalTo("a1")));
+        assertThat(cfr.getHierarchy().getChangeRequestCount(), is(equalTo(20)));
+        assertThat(cfr.getHierarchy().getChangeFailureRatePercent(), is(equalTo(0.3)));
+        assertThat(cfr.getHierarchy().getDoraLevel(), is(equalTo(DORALevel.LOW)));
+        assertThat(cfr.getApplications().size(), is(equalTo(3)));
+        assertThat(cfr.getApplications().get(0).getDoraLevel(), is(equalTo(DORALevel.ELITE)));
+        assertThat(cfr.getApplications().get(1).getDoraLevel(), is(equalTo(DORALevel.LOW)));
+        assertThat(cfr.getApplications().get(2).getDoraLevel(), is(equalTo(DORALevel.UNKNOWN)));
+        }
+
+    //Answers each slice of the hierarchy with the counts of the applications in it, as the aggregation would
+    private void stubHierarchyCounts(ChangeCounts... counts)
+        {
+        when(mockDailyChangeRollupRepo.sumChanges(anyCollection(), any(Date.class), any(Date.class), any(Duration.class))).thenAnswer(invocation -> {
+            Collection<String> slice = invocation.getArgument(0);
+            return Arrays.stream(counts).filter(count -> slice.contains(count.getApplicationId())).collect(Collectors.toList());
+        });
+        }
+
+    @Test
+    void checkHierarchyCfrReportsApplicationsOverBudget()
+        {
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Arrays.asList("a1", "a2", "a3"));
+        stubHierarchyCounts(new ChangeCounts("a1", 10, 1), new ChangeCounts("a3", 10, 5));
+        when(mockDailyChangeRollupRepo.sumChanges(eq(Collections.singletonList("a2")), any(Date.class), any(Date.class), any(Duration.class)))
+            .thenThrow(new QueryTimeoutException("too slow"));
+
+        HierarchyChangeFailureRate cfr = changeRequestService.calculateHierarchyChangeFailureRate("a1", new Date());
+
+        assertThat(cfr.getTimedOut(), is(equalTo(Collections.singletonList("a2"))));
+        assertThat(cfr.getHierarchy().getChangeRequestCount(), is(equalTo(20)));
+        assertThat(cfr.getApplications().size(), is(equalTo(2)));
+        assertThat(cfr.getApplications().get(0).getApplicationId(), is(equalTo("a1")));
+        assertThat(cfr.getApplications().get(1).getApplicationId(), is(equalTo("a3")));
+        }
+
+    @Test
+    void checkHierarchyCfrTimesOutWhenNothingIsSummed()
+        {
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Arrays.asList("a1", "a2"));
+        when(mockDailyChangeRollupRepo.sumChanges(anyCollection(), any(Date.class), any(Date.class), any(Duration.class)))
+            .thenThrow(new QueryTimeoutException("too slow"));
+
+        assertThrows(QueryTimeoutException.class, () -> changeRequestService.calculateHierarchyChangeFailureRate("a1", new Date()));
+        }
+
+    @Test
+    void checkOnlyConfiguredOperationsReadFromSecondaries()
+        {
+        List<ReadPreference> readPreferences = new ArrayList<>();
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Collections.singletonList("a1"));
+        when(mockDailyChangeRollupRepo.sumChanges(anyCollection(), any(Date.class), any(Date.class), any(Duration.class))).thenAnswer(invocation -> {
+            readPreferences.add(ReadRoutingMongoTemplate.routedReadPreference());
+            return Collections.emptyList();
+        });
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenAnswer(invocation -> {
+            readPreferences.add(ReadRoutingMongoTemplate.routedReadPreference());
+            return new ChangeCounts("a1", 0, 0);
+        });
+
+        changeRequestService.calculateHierarchyChangeFailureRate("a1", new Date());
+        changeRequestService.calculateChangeFailureRate("a1", new Date());
+
+        assertThat(readPreferences, is(equalTo(Arrays.asList(ReadPreference.secondaryPreferred(120, TimeUnit.SECONDS), null))));
+        assertThat(ReadRoutingMongoTemplate.routedReadPreference(), is(nullValue()));
+        }
+
+    @Test
+    void checkReadRoutingRejectsOperationsThatMustReadThePrimary()
+        {
+        assertThrows(IllegalArgumentException.class, () -> new ReadRouting(Collections.singleton("get"), Duration.ofSeconds(90)));
+        assertThrows(IllegalArgumentException.class, () -> new ReadRouting(Collections.singleton("streamAll"), Duration.ofSeconds(30)));
+        }
+
+    @Test
+    void checkCfrSeriesSlidesWindow()
+        {
+        //One change on 1st Jan (failed) and one on 1st Feb (ok); 90 day windows ending 1st Jan to 2nd Apr 2021
+        when(mockDailyChangeRollupRepo.findDays(eq("a1"), any(Date.class), any(Date.class))).thenReturn(Arrays.asList(
+            new DailyChangeRollup("a1|2021-01-01", "a1", dateOf(2021, 1, 1, 0, 0, 0), 1, 1),
+            new DailyChangeRollup("a1|2021-02-01", "a1", dateOf(2021, 2, 1, 0, 0, 0), 1, 0)));
+
+        List<ChangeFailureRate> series = changeRequestService.calculateChangeFailureRateSeries("a1", dateOf(2021, 1, 1, 0, 0, 0), dateOf(2021, 4, 2, 0, 0, 0));
+
+        verify(mockDailyChangeRollupRepo, times(1)).findDays("a1", dateOf(2020, 10, 4, 0, 0, 0), dateOf(2021, 4, 2, 0, 0, 0));
+        assertThat(series.size(), is(equalTo(92)));
+        assertThat(series.get(0).getReportingDate(), is(equalTo(dateOf(2021, 1, 1, 0, 0, 0))));
+        assertThat(series.get(0).getChangeFailureRatePercent(), is(equalTo(1.0)));
+        assertThat(series.get(31).getChangeRequestCount(), is(equalTo(2)));
+        assertThat(series.get(31).getChangeFailureRatePercent(), is(equalTo(0.5)));
+        //1st Jan drops out of the window ending 31st Mar
+        assertThat(series.get(89).getChangeRequestCount(), is(equalTo(2)));
+        assertThat(series.get(90).getChangeRequestCount(), is(equalTo(1)));
+        assertThat(series.get(90).getDoraLevel(), is(equalTo(DORALevel.ELITE)));
+        }
+
     @Test
     void checkListAll()
         {
@@ -163,13 +319,12 @@ class ChangeRequestServiceImplTest
         changeRequests.add(cr1);
         changeRequests.add(cr2);
         String appId = "app1";
-        when(mockChangeRequestRepo.findByApplicationId
-            (appId))
-            .thenReturn(changeRequests);
+        when(mockChangeRequestRepo.findPage(Collections.singletonList(appId), null, null, null, 100, ChangeRequestFields.ALL))
+            .thenReturn(new ChangeRequestPage(changeRequests, null));
         
-        List<ChangeRequest> requests = changeRequestService.listAllForApplication(appId);
+        ChangeRequestPage page = changeRequestService.listForApplication(appId, null, null, ChangeRequestFields.ALL);
         
-        assertThat(requests.size(), equalTo(2));
+        assertThat(page.getChangeRequests().size(), equalTo(2));
         }
 
     @Test
@@ -181,15 +336,15 @@ class ChangeRequestServiceImplTest
         changeRequests.add(cr1);
         changeRequests.add(cr2);
         String appId = "app1";
-        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Arrays.asList("a1", "a2"));
-        when(mockChangeRequestRepo.findByApplicationIdInOrderByClosedDesc(anyCollection()))
-            .thenReturn(changeRequests);
+        when(mockHierarchyClient.findChildIds("app1")).thenReturn(Arrays.asList("a1", "a2"));
+        when(mockChangeRequestRepo.findPage(anyCollection(), isNull(), isNull(), isNull(), eq(100), eq(ChangeRequestFields.ALL)))
+            .thenReturn(new ChangeRequestPage(changeRequests, null));
 
-        List<ChangeRequest> crList = changeRequestService.listAllForHierarchy(appId);
+        ChangeRequestPage page = changeRequestService.listForHierarchy(appId, null, null, ChangeRequestFields.ALL);
         
         verify(mockHierarchyClient, times(1)).findChildIds("app1");
-        verify(mockChangeRequestRepo, times(1)).findByApplicationIdInOrderByClosedDesc(anyCollection());
-        assertThat(crList.size(), equalTo(2));
+        verify(mockChangeRequestRepo, times(1)).findPage(Arrays.asList("a1", "a2"), null, null, null, 100, ChangeRequestFields.ALL);
+        assertThat(page.getChangeRequests().size(), equalTo(2));
         }
 
     @Test
@@ -201,26 +356,224 @@ class ChangeRequestServiceImplTest
         changeRequests.add(d1);
         changeRequests.add(d2);
         String appId = "app1";
-        when(mockChangeRequestRepo.findByApplicationIdAndClosedBetweenOrderByClosed
-            (appId,
+        when(mockChangeRequestRepo.findPage
+            (Collections.singletonList(appId),
                 dateOf(2020, 3, 10, 0, 0, 0),
-                dateOf(2020, 3, 11, 0, 0, 0)))
-            .thenReturn(changeRequests);
+                dateOf(2020, 3, 11, 0, 0, 0),
+                null,
+                100,
+                ChangeRequestFields.ALL))
+            .thenReturn(new ChangeRequestPage(changeRequests, null));
 
-        List<ChangeRequest> crList = changeRequestService.listAllForApplication(appId, dateOf(2020, 3, 10, 0, 0, 0));
+        ChangeRequestPage page = changeRequestService.listForApplication(appId, dateOf(2020, 3, 10, 0, 0, 0), null, null, ChangeRequestFields.ALL);
 
-        assertThat(crList.size(), equalTo(2));
+        assertThat(page.getChangeRequests().size(), equalTo(2));
         }
 
     @Test
-    void checkDelete()
+    void checkListPassesCursorAndCapsLimit()
+        {
+        ChangeRequestCursor cursor = new ChangeRequestCursor(dateOf(2021, 2, 4, 10, 0, 0), "cr1");
+        when(mockChangeRequestRepo.findPage(null, null, null, cursor, 1000, ChangeRequestFields.ALL))
+            .thenReturn(new ChangeRequestPage(Collections.emptyList(), null));
+
+        ChangeRequestPage page = changeRequestService.list(cursor.encode(), 5000, ChangeRequestFields.ALL);
+
+        verify(mockChangeRequestRepo, times(1)).findPage(null, null, null, cursor, 1000, ChangeRequestFields.ALL);
+        assertThat(page.hasNext(), is(false));
+        }
+
+    @Test
+    void checkListRejectsInvalidCursor()
+        {
+        assertThrows(InvalidCursorException.class, () -> changeRequestService.list("not-a-cursor", null, ChangeRequestFields.ALL));
+        verify(mockChangeRequestRepo, never()).findPage(any(), any(), any(), any(), anyInt(), any());
+        }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkStreamClosesCursor()
         {
         ChangeRequest cr1 =  setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, true);
-        when(mockChangeRequestRepo.findById("id123"))
-            .thenReturn(Optional.of(cr1));
+        CloseableIterator<ChangeRequest> cursor = mock(CloseableIterator.class);
+        when(cursor.hasNext()).thenReturn(true, false);
+        when(cursor.next()).thenReturn(cr1);
+        when(cursor.stream()).thenCallRealMethod();
+        when(cursor.spliterator()).thenCallRealMethod();
+        when(mockChangeRequestRepo.stream(Collections.singletonList("a1"), null, null, ChangeRequestFields.ALL)).thenReturn(cursor);
+
+        try (Stream<ChangeRequest> stream = changeRequestService.streamForApplication("a1", ChangeRequestFields.ALL)) {
+            assertThat(stream.count(), is(equalTo(1L)));
+        }
+
+        verify(cursor, times(1)).close();
+        }
+
+    @Test
+    void checkDelete()
+        {
+        ChangeRequestState removed = ChangeRequestState.of(setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, true));
+        when(mockChangeRequestRepo.findAndRemoveState("id123"))
+            .thenReturn(removed);
         String id = changeRequestService.delete("id123");
         assertThat(id, is(equalTo("id123")));
-        verify(mockChangeRequestRepo, times(1)).findById("id123");
-        verify(mockChangeRequestRepo, times(1)).delete(cr1);
+        verify(mockChangeRequestRepo, never()).findById("id123");
+        verify(mockChangeRequestRepo, never()).findStates(anyCollection());
+        verify(mockDailyChangeRollupRepo, never()).beginChanges(anyCollection());
+        verify(mockDailyChangeRollupRepo, times(1)).applyChanges(Collections.singletonList(removed), Collections.emptyList());
+        verify(mockApplicationVersionRepo, times(1)).bump(Collections.singletonList("a1"));
+        }
+
+    @Test
+    void checkDeleteMatchingRecountsTheApplicationAfterwards()
+        {
+        ChangeRequestFilter filter = ChangeRequestFilter.of("a1", "test", null, null);
+        when(mockChangeRequestRepo.deleteMatching(filter)).thenReturn(3L);
+
+        long deleted = changeRequestService.deleteMatching("a1", "test", null, null);
+
+        assertThat(deleted, is(equalTo(3L)));
+        verify(mockDailyChangeRollupRepo, never()).countDays(any());
+        verify(mockDailyChangeRollupRepo, times(1)).recountDays("a1", null, null);
+        verify(mockApplicationVersionRepo, times(1)).bump(Collections.singletonList("a1"));
+        }
+
+    @Test
+    void checkDeleteByIdsLeavesRollupsToTheRebuild()
+        {
+        ChangeRequestFilter filter = ChangeRequestFilter.ofIds(Arrays.asList("cr1", "cr2"));
+        when(mockChangeRequestRepo.deleteMatching(filter)).thenReturn(2L);
+
+        long deleted = changeRequestService.deleteAll(Arrays.asList("cr1", "cr2"));
+
+        assertThat(deleted, is(equalTo(2L)));
+        verify(mockDailyChangeRollupRepo, never()).countDays(any());
+        verify(mockDailyChangeRollupRepo, never()).recountDays(any(), any(), any());
+        }
+    
+    @Test
+    void checkStoreAllInChunks()
+        {
+        List<ChangeRequest> crs = setupChangeRequests(true, false, true, false, true);
+        when(mockChangeRequestRepo.bulkUpsert(anyList(), isNull())).thenAnswer(invocation -> {
+            List<ChangeRequest> chunk = invocation.getArgument(0);
+            List<ChangeRequestWriteResult> results = new ArrayList<>();
+            chunk.forEach(c -> results.add(new ChangeRequestWriteResult(c.getChangeRequestId(), WriteStatus.INSERTED, null)));
+            return results;
+        });
+
+        BulkStoreResult result = changeRequestService.storeAll(crs);
+
+        verify(mockChangeRequestRepo, times(3)).bulkUpsert(anyList(), isNull());
+        verify(mockDailyChangeRollupRepo, times(3)).endChanges(anyCollection(), anyList(), anyList());
+        assertThat(result.getInserted(), is(equalTo(5)));
+        assertThat(result.getResults().size(), is(equalTo(5)));
+        }
+    
+    @Test
+    void checkStoreAllInChunksOfTheGivenSize()
+        {
+        List<ChangeRequest> crs = setupChangeRequests(true, false, true, false, true);
+        when(mockChangeRequestRepo.bulkUpsert(anyList(), isNull())).thenAnswer(invocation -> {
+            List<ChangeRequest> chunk = invocation.getArgument(0);
+            List<ChangeRequestWriteResult> results = new ArrayList<>();
+            chunk.forEach(c -> results.add(new ChangeRequestWriteResult(c.getChangeRequestId(), WriteStatus.INSERTED, null)));
+            return results;
+        });
+
+        BulkStoreResult result = changeRequestService.storeAll(crs, null, 5);
+
+        verify(mockChangeRequestRepo, times(1)).bulkUpsert(crs, null);
+        assertThat(result.getInserted(), is(equalTo(5)));
+        }
+
+    @Test
+    void checkDuplicateIdEndsTheChunk()
+        {
+        ChangeRequest first = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, true);
+        ChangeRequest other = withId(first, "cr2");
+        ChangeRequest second = setupChangeRequest(2021, 2021, 2, 2, 4, 5, 8, 10, 0, 0, false);
+        when(mockChangeRequestRepo.findStates(anyCollection())).thenReturn(Collections.emptyList());
+        when(mockChangeRequestRepo.findStates(Collections.singletonList("cr1"))).thenReturn(Collections.singletonList(ChangeRequestState.of(first)));
+        when(mockChangeRequestRepo.bulkUpsert(anyList(), isNull())).thenAnswer(invocation -> {
+            List<ChangeRequest> chunk = invocation.getArgument(0);
+            List<ChangeRequestWriteResult> results = new ArrayList<>();
+            chunk.forEach(c -> results.add(new ChangeRequestWriteResult(c.getChangeRequestId(), WriteStatus.INSERTED, null)));
+            return results;
+        });
+
+        BulkStoreResult result = changeRequestService.storeAll(Arrays.asList(first, other, second));
+
+        assertThat(result.getResults().size(), is(equalTo(3)));
+        verify(mockChangeRequestRepo, times(1)).bulkUpsert(Arrays.asList(first, other), null);
+        verify(mockChangeRequestRepo, times(1)).bulkUpsert(Collections.singletonList(second), null);
+        verify(mockDailyChangeRollupRepo, times(1)).endChanges(Arrays.asList(ChangeRequestState.of(first), ChangeRequestState.of(other)),
+                Collections.emptyList(), Arrays.asList(ChangeRequestState.of(first), ChangeRequestState.of(other)));
+        verify(mockDailyChangeRollupRepo, times(1)).endChanges(Arrays.asList(ChangeRequestState.of(second), ChangeRequestState.of(first)),
+                Collections.singletonList(ChangeRequestState.of(first)), Collections.singletonList(ChangeRequestState.of(second)));
+        }
+
+    @Test
+    void checkStoreMovesRollupWhenChangeIsUpdated()
+        {
+        ChangeRequest updated = setupChangeRequest(2021, 2021, 2, 2, 4, 5, 8, 10, 0, 0, false);
+        ChangeRequestState previous = new ChangeRequestState("cr1", "a1", dateOf(2021, 2, 4, 10, 0, 0), true);
+        when(mockChangeRequestRepo.findStates(anyCollection())).thenReturn(Collections.singletonList(previous));
+        when(mockChangeRequestRepo.bulkUpsert(anyList(), isNull())).thenReturn(Collections.singletonList(new ChangeRequestWriteResult("cr1", WriteStatus.REPLACED, null)));
+
+        ChangeRequest stored = changeRequestService.store(updated);
+
+        assertThat(stored, is(equalTo(updated)));
+        verify(mockDailyChangeRollupRepo, times(1)).beginChanges(Arrays.asList(ChangeRequestState.of(updated), previous));
+        verify(mockDailyChangeRollupRepo, times(1)).endChanges(Arrays.asList(ChangeRequestState.of(updated), previous),
+                Collections.singletonList(previous), Collections.singletonList(ChangeRequestState.of(updated)));
+        verify(mockApplicationVersionRepo, times(1)).bump(Collections.singleton("a1"));
+        }
+
+    @Test
+    void checkUnchangedChangeRequestsAreNotWritten()
+        {
+        ChangeRequest unchanged = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, true);
+        ChangeRequest updated = new ChangeRequest("cr2", "updated", "a1", unchanged.getCreated(), unchanged.getStarted(), unchanged.getFinished(), unchanged.getClosed(), false, "test");
+        ChangeRequestState previous = new ChangeRequestState("cr2", "a1", unchanged.getClosed(), false, "stale");
+        when(mockChangeRequestRepo.findStates(anyCollection())).thenReturn(Arrays.asList(ChangeRequestState.of(unchanged), previous));
+        when(mockChangeRequestRepo.bulkUpsert(Collections.singletonList(updated), null)).thenReturn(Collections.singletonList(new ChangeRequestWriteResult("cr2", WriteStatus.REPLACED, null)));
+
+        BulkStoreResult result = changeRequestService.storeAll(Arrays.asList(unchanged, updated));
+
+        assertThat(result.getUnchanged(), is(equalTo(1)));
+        assertThat(result.getReplaced(), is(equalTo(1)));
+        assertThat(result.getResults().get(0), is(equalTo(new ChangeRequestWriteResult(unchanged.getChangeRequestId(), WriteStatus.UNCHANGED, null))));
+        verify(mockChangeRequestRepo, times(1)).bulkUpsert(Collections.singletonList(updated), null);
+        verify(mockDailyChangeRollupRepo, times(1)).beginChanges(Arrays.asList(ChangeRequestState.of(updated), previous));
+        verify(mockDailyChangeRollupRepo, times(1)).endChanges(Arrays.asList(ChangeRequestState.of(updated), previous),
+                Collections.singletonList(previous), Collections.singletonList(ChangeRequestState.of(updated)));
+        verify(mockApplicationVersionRepo, times(1)).bump(Collections.singleton("a1"));
+        }
+
+    @Test
+    void checkFailedWriteIsNotRolledUp()
+        {
+        ChangeRequest cr1 = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, true);
+        when(mockChangeRequestRepo.bulkUpsert(anyList(), isNull())).thenReturn(Collections.singletonList(new ChangeRequestWriteResult("cr1", WriteStatus.FAILED, "write error")));
+
+        BulkStoreResult result = changeRequestService.storeAll(Collections.singletonList(cr1));
+
+        assertThat(result.getFailed(), is(equalTo(1)));
+        verify(mockDailyChangeRollupRepo, times(1)).endChanges(Collections.singletonList(ChangeRequestState.of(cr1)), Collections.emptyList(), Collections.emptyList());
+        verify(mockApplicationVersionRepo, times(1)).bump(Collections.emptySet());
+        }
+
+    @Test
+    void checkApplicationVersionsOfBothSidesOfAMoveAreBumped()
+        {
+        ChangeRequest moved = setupChangeRequest(2021, 2021, 2, 2, 4, 4, 8, 10, 0, 0, true);
+        ChangeRequestState previous = new ChangeRequestState("cr1", "a2", moved.getClosed(), true, "stale");
+        when(mockChangeRequestRepo.findStates(anyCollection())).thenReturn(Collections.singletonList(previous));
+        when(mockChangeRequestRepo.bulkUpsert(anyList(), isNull())).thenReturn(Collections.singletonList(new ChangeRequestWriteResult("cr1", WriteStatus.REPLACED, null)));
+
+        changeRequestService.store(moved);
+
+        verify(mockApplicationVersionRepo, times(1)).bump(new LinkedHashSet<>(Arrays.asList("a2", "a1")));
         }
     }
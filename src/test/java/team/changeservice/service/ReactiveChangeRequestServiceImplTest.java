@@ -0,0 +1,110 @@
+package team.changeservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import team.changeservice.hierarchy.repo.ReactiveHierarchyClient;
+import team.changeservice.model.ChangeCounts;
+import team.changeservice.model.ChangeFailureRate;
+import team.changeservice.model.ChangeRequest;
+import team.changeservice.model.DORALevel;
+import team.changeservice.repo.ReactiveChangeRequestRepo;
+import team.changeservice.repo.ReactiveDailyChangeRollupRepo;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ReactiveChangeRequestServiceImplTest
+    {
+    @Autowired
+    private ReactiveChangeRequestService changeRequestService;
+    @Autowired
+    private ReactiveChangeRequestRepo mockChangeRequestRepo;
+    @Autowired
+    private ReactiveDailyChangeRollupRepo mockDailyChangeRollupRepo;
+    @Autowired
+    private ReactiveHierarchyClient mockHierarchyClient;
+
+    @TestConfiguration
+    static class ReactiveChangeRequestServiceImplTestContextConfiguration
+        {
+        @MockBean
+        private ReactiveChangeRequestRepo mockChangeRequestRepo;
+        @MockBean
+        private ReactiveDailyChangeRollupRepo mockDailyChangeRollupRepo;
+        @MockBean
+        private ReactiveHierarchyClient mockHierarchyClient;
+        @Bean
+        public ReactiveChangeRequestService reactiveChangeRequestService()
+            {
+            return new ReactiveChangeRequestServiceImpl(mockChangeRequestRepo, mockDailyChangeRollupRepo, mockHierarchyClient);
+            }
+        }
+
+    private static ChangeRequest changeRequest(String id)
+        {
+        Date now = Date.from(Instant.now());
+        return new ChangeRequest(id, "change request " + id, "a1", now, now, now, now, true, "test");
+        }
+
+    @Test
+    void checkCfrCalc()
+        {
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(Mono.just(new ChangeCounts("a1", 100, 15)));
+
+        ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date()).block();
+
+        assertThat(cfr.getChangeFailureRatePercent(), is(equalTo(0.15)));
+        assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.ELITE)));
+        }
+
+    @Test
+    void checkUnknownCfrLevel()
+        {
+        when(mockDailyChangeRollupRepo.sumChanges(eq("a1"), any(Date.class), any(Date.class))).thenReturn(Mono.just(new ChangeCounts("a1", 0, 0)));
+
+        ChangeFailureRate cfr = changeRequestService.calculateChangeFailureRate("a1", new Date()).block();
+
+        assertThat(cfr.getDoraLevel(), is(equalTo(DORALevel.UNKNOWN)));
+        }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkListHierarchy()
+        {
+        Collection<String> appIds = Arrays.asList("a1", "a2");
+        when(mockHierarchyClient.findChildIds("a1")).thenReturn(Mono.just(appIds));
+        when(mockChangeRequestRepo.stream(appIds, null, null)).thenReturn(Flux.just(changeRequest("cr1"), changeRequest("cr2")));
+
+        List<ChangeRequest> changeRequests = changeRequestService.listForHierarchy("a1").collectList().block();
+
+        verify(mockHierarchyClient, times(1)).findChildIds("a1");
+        assertThat(changeRequests.size(), is(equalTo(2)));
+        }
+
+    @Test
+    void checkGet()
+        {
+        when(mockChangeRequestRepo.findById("cr1")).thenReturn(Mono.just(changeRequest("cr1")));
+
+        ChangeRequest changeRequest = changeRequestService.get("cr1").block();
+
+        assertThat(changeRequest.getChangeRequestId(), is(equalTo("cr1")));
+        }
+    }